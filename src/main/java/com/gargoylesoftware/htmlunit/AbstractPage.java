@@ -50,7 +50,9 @@ public class AbstractPage implements Page {
      */
     @Override
     public void cleanUp() {
-        if (getEnclosingWindow().getWebClient().getCache().getCachedResponse(webResponse_.getWebRequest()) == null) {
+        final Cache cache = getEnclosingWindow().getWebClient().getCache();
+        final WebRequest webRequest = webResponse_.getWebRequest();
+        if (cache.getCachedResponse(webRequest) == null && cache.getRevalidatableResponse(webRequest) == null) {
             webResponse_.cleanUp();
         }
     }
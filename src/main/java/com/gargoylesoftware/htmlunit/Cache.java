@@ -16,25 +16,39 @@ package com.gargoylesoftware.htmlunit;
 
 import java.io.Serializable;
 import java.net.URL;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.utils.DateUtils;
 
 import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
 import com.gargoylesoftware.htmlunit.util.HeaderUtils;
+import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
+import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
 
 /**
  * <p>Simple cache implementation which caches compiled JavaScript files and parsed CSS snippets. Caching
  * compiled JavaScript files avoids unnecessary web requests and additional compilation overhead, while
  * caching parsed CSS snippets avoids very expensive CSS parsing.</p>
  *
+ * <p>Lookups don't take a lock. All modifications, and applying the recorded accesses to the recency order,
+ * share one lock, because the cache keeps a single least recently used order to evict entries exactly by
+ * the entry and byte limits. Striping this lock would need one order and one share of the limits per stripe,
+ * which only approximates the eviction order. Readers take the lock only if many accesses are pending and
+ * no other reader is applying them already.</p>
+ *
  * @author Marc Guillemot
  * @author Daniel Gredler
  * @author Ahmed Ashour
@@ -46,6 +60,12 @@ public class Cache implements Serializable {
     /** The maximum size of the cache. */
     private int maxSize_ = 40;
 
+    /** The maximum number of content bytes kept by the cache; {@code 0} means no limit. */
+    private long maxBytes_;
+
+    /** The number of content bytes currently kept by the cache; only maintained if {@link #maxBytes_} is set. */
+    private long totalBytes_;
+
     private static final Pattern DATE_HEADER_PATTERN = Pattern.compile("-?\\d+");
     static final long DELAY = 10 * org.apache.commons.lang3.time.DateUtils.MILLIS_PER_MINUTE;
 
@@ -55,62 +75,85 @@ public class Cache implements Serializable {
      * {@link java.net.URL#hashCode()} method is synchronized, and b) the {@link java.net.URL#hashCode()}
      * method triggers DNS lookups of the URL hostnames' IPs. As of this writing, the HtmlUnit unit tests
      * run ~20% faster whey keying on strings rather than on {@link java.net.URL} instances.
+     *
+     * <p>Lookups are lock free; all modifications are done while holding the {@link #accessOrder_} lock.</p>
      */
-    private final Map<String, Entry> entries_ = Collections.synchronizedMap(new HashMap<String, Entry>(maxSize_));
+    private final Map<String, Entry> entries_ = new ConcurrentHashMap<>(maxSize_);
+
+    /**
+     * The same entries as {@link #entries_}, ordered from the least recently used to the most recently used one.
+     * Used as lock for all modifications; this allows eviction of the oldest entry in constant time.
+     */
+    private final LinkedHashMap<String, Entry> accessOrder_ = new LinkedHashMap<>(maxSize_, 0.75f, true);
+
+    /**
+     * The entries used since the last update of {@link #accessOrder_}. Lookups only add the entry here
+     * (without taking the lock); the accesses are applied to the order before the next modification
+     * or by one of the readers, if too many accesses are pending.
+     */
+    private final Queue<Entry> pendingAccesses_ = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAccessCount_ = new AtomicInteger();
+    private final AtomicBoolean drainingAccesses_ = new AtomicBoolean();
+
+    /** The number of pending accesses that makes a reader update the order. */
+    private static final int MAX_PENDING_ACCESSES = 64;
 
     /**
      * A cache entry.
      */
-    private static class Entry implements Comparable<Entry>, Serializable {
+    private static class Entry implements Serializable {
         private final String key_;
         private WebResponse response_;
         private Object value_;
-        private long lastAccess_;
         private long createdAt_;
+        private long bytes_ = -1;
 
         Entry(final String key, final WebResponse response, final Object value) {
             key_ = key;
             response_ = response;
             value_ = value;
             createdAt_ = System.currentTimeMillis();
-            lastAccess_ = createdAt_;
         }
 
         /**
-         * {@inheritDoc}
+         * Returns whether the stored response carries a validator (<tt>ETag</tt> or <tt>Last-Modified</tt>),
+         * allowing to revalidate the entry using a conditional request once it is no longer fresh.
+         * @return true if the entry can be revalidated
          */
-        @Override
-        public int compareTo(final Entry other) {
-            if (lastAccess_ < other.lastAccess_) {
-                return -1;
-            }
-            if (lastAccess_ == other.lastAccess_) {
-                return 0;
-            }
-            return 1;
+        boolean isRevalidatable() {
+            return response_ != null && hasValidator(response_);
         }
 
         /**
-         * {@inheritDoc}
+         * Restarts the freshness lifetime of this entry after the server confirmed
+         * (using a <tt>304 Not Modified</tt> response) that the stored content is still valid.
+         * @param notModifiedResponse the 304 response
+         * @param now the current time stamp
          */
-        @Override
-        public boolean equals(final Object obj) {
-            return obj instanceof Entry && lastAccess_ == ((Entry) obj).lastAccess_;
-        }
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public int hashCode() {
-            return ((Long) lastAccess_).hashCode();
+        void revalidated(final WebResponse notModifiedResponse, final long now) {
+            WebResponse original = response_;
+            if (original instanceof RevalidatedWebResponse) {
+                original = ((RevalidatedWebResponse) original).original_;
+            }
+            response_ = new RevalidatedWebResponse(original, notModifiedResponse);
+            createdAt_ = now;
         }
 
         /**
-         * Updates the last access date.
+         * Returns the number of content bytes held by this entry; computed lazily because
+         * this is only needed if the cache is bounded by size.
+         * @return the number of content bytes
          */
-        public void touch() {
-            lastAccess_ = System.currentTimeMillis();
+        long getBytes() {
+            if (bytes_ < 0) {
+                if (response_ == null) {
+                    bytes_ = 0;
+                }
+                else {
+                    bytes_ = Math.max(0, response_.getContentLength());
+                }
+            }
+            return bytes_;
         }
 
         /**
@@ -127,6 +170,11 @@ public class Cache implements Serializable {
          * @return freshnessLifetime
          */
         private boolean isStillFresh(final long now) {
+            if (HeaderUtils.containsNoCache(response_)) {
+                // has to be revalidated every time
+                return false;
+            }
+
             long freshnessLifetime = 0;
             if (!HeaderUtils.containsPrivate(response_) && HeaderUtils.containsSMaxage(response_)) {
                 // check s-maxage
@@ -144,12 +192,44 @@ public class Cache implements Serializable {
                 }
             }
             else {
-                return true;
+                // the heuristic of isCacheableContent(); responses only stored because
+                // of their validator have to be revalidated
+                final Date lastModified = parseDateHeader(response_, HttpHeader.LAST_MODIFIED);
+                return lastModified != null && createdAt_ - lastModified.getTime() > DELAY;
             }
             return now - createdAt_ < freshnessLifetime * org.apache.commons.lang3.time.DateUtils.MILLIS_PER_SECOND;
         }
     }
 
+    /**
+     * The stored response, with the caching related headers updated from the <tt>304 Not Modified</tt>
+     * response used to revalidate it (see RFC 7234, section 4.3.4).
+     */
+    private static final class RevalidatedWebResponse extends WebResponseWrapper {
+        private final WebResponse original_;
+        private final WebResponse notModifiedResponse_;
+
+        RevalidatedWebResponse(final WebResponse original, final WebResponse notModifiedResponse) {
+            super(original);
+            original_ = original;
+            notModifiedResponse_ = notModifiedResponse;
+        }
+
+        @Override
+        public String getResponseHeaderValue(final String headerName) {
+            if (HttpHeader.CACHE_CONTROL.equalsIgnoreCase(headerName)
+                    || HttpHeader.EXPIRES.equalsIgnoreCase(headerName)
+                    || HttpHeader.ETAG.equalsIgnoreCase(headerName)
+                    || HttpHeader.LAST_MODIFIED.equalsIgnoreCase(headerName)) {
+                final String value = notModifiedResponse_.getResponseHeaderValue(headerName);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return super.getResponseHeaderValue(headerName);
+        }
+    }
+
     /**
      * Caches the specified object, if the corresponding request and response objects indicate
      * that it is cacheable.
@@ -167,9 +247,7 @@ public class Cache implements Serializable {
                 return false;
             }
 
-            final Entry entry = new Entry(UrlUtils.normalize(url), response, toCache);
-            entries_.put(entry.key_, entry);
-            deleteOverflow();
+            put(new Entry(UrlUtils.normalize(url), response, toCache));
             return true;
         }
 
@@ -188,19 +266,72 @@ public class Cache implements Serializable {
      * @param styleSheet the parsed version of <tt>css</tt>
      */
     public void cache(final String css, final CSSStyleSheetImpl styleSheet) {
-        final Entry entry = new Entry(css, null, styleSheet);
-        entries_.put(entry.key_, entry);
-        deleteOverflow();
+        put(new Entry(css, null, styleSheet));
     }
 
     /**
-     * Truncates the cache to the maximal number of entries.
+     * Adds the specified response, which was stored at the specified time, to the cache without
+     * checking whether it is cacheable. This is meant for subclasses restoring responses from some persistent
+     * storage. Nothing is done if the cache already holds an entry for the request or if the response is
+     * neither fresh nor revalidatable anymore.
+     *
+     * @param request the request corresponding to the specified response
+     * @param response the response to restore
+     * @param storedAt the time stamp the response was originally cached
+     * @return whether the response was added to the cache
+     */
+    protected boolean restore(final WebRequest request, final WebResponse response, final long storedAt) {
+        final URL url = request.getUrl();
+        if (url == null) {
+            return false;
+        }
+
+        final Entry entry = new Entry(UrlUtils.normalize(url), response, null);
+        entry.createdAt_ = storedAt;
+        if (!entry.isStillFresh(getCurrentTimestamp()) && !entry.isRevalidatable()) {
+            return false;
+        }
+
+        synchronized (accessOrder_) {
+            if (entries_.containsKey(entry.key_)) {
+                return false;
+            }
+            put(entry);
+        }
+        return true;
+    }
+
+    private void put(final Entry entry) {
+        synchronized (accessOrder_) {
+            drainAccesses();
+            final Entry previous = accessOrder_.put(entry.key_, entry);
+            entries_.put(entry.key_, entry);
+            if (maxBytes_ > 0) {
+                if (previous != null) {
+                    totalBytes_ -= previous.getBytes();
+                }
+                totalBytes_ += entry.getBytes();
+            }
+            deleteOverflow();
+        }
+    }
+
+    /**
+     * Truncates the cache to the maximal number of entries and the maximal number of bytes.
+     * The least recently used entries are removed first.
      */
     protected void deleteOverflow() {
-        synchronized (entries_) {
-            while (entries_.size() > maxSize_) {
-                final Entry oldestEntry = Collections.min(entries_.values());
+        synchronized (accessOrder_) {
+            drainAccesses();
+            final Iterator<Entry> iter = accessOrder_.values().iterator();
+            while (iter.hasNext()
+                    && (accessOrder_.size() > maxSize_ || (maxBytes_ > 0 && totalBytes_ > maxBytes_))) {
+                final Entry oldestEntry = iter.next();
+                iter.remove();
                 entries_.remove(oldestEntry.key_);
+                if (maxBytes_ > 0) {
+                    totalBytes_ -= oldestEntry.getBytes();
+                }
                 if (oldestEntry.response_ != null) {
                     oldestEntry.response_.cleanUp();
                 }
@@ -208,6 +339,57 @@ public class Cache implements Serializable {
         }
     }
 
+    /**
+     * Removes the given entry if it is still part of the cache.
+     * @param entry the entry to remove
+     */
+    private void remove(final Entry entry) {
+        synchronized (accessOrder_) {
+            if (entries_.remove(entry.key_, entry)) {
+                accessOrder_.remove(entry.key_);
+                if (maxBytes_ > 0) {
+                    totalBytes_ -= entry.getBytes();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the given entry as the most recently used one. The access is only recorded, to not make
+     * the readers wait for each other; if too many accesses are pending, the current thread applies
+     * them unless another one is already doing so.
+     * @param entry the entry
+     */
+    private void touch(final Entry entry) {
+        pendingAccesses_.add(entry);
+        if (pendingAccessCount_.incrementAndGet() > MAX_PENDING_ACCESSES
+                && drainingAccesses_.compareAndSet(false, true)) {
+            try {
+                synchronized (accessOrder_) {
+                    drainAccesses();
+                }
+            }
+            finally {
+                drainingAccesses_.set(false);
+            }
+        }
+    }
+
+    /**
+     * Applies the recorded accesses to {@link #accessOrder_}; has to be called while holding its lock.
+     */
+    private void drainAccesses() {
+        Entry entry = pendingAccesses_.poll();
+        while (entry != null) {
+            pendingAccessCount_.decrementAndGet();
+            if (entries_.get(entry.key_) == entry) {
+                // access ordered map - get() moves the entry to the end
+                accessOrder_.get(entry.key_);
+            }
+            entry = pendingAccesses_.poll();
+        }
+    }
+
     /**
      * Determines if the specified response can be cached.
      *
@@ -217,7 +399,41 @@ public class Cache implements Serializable {
      */
     protected boolean isCacheable(final WebRequest request, final WebResponse response) {
         return HttpMethod.GET == response.getWebRequest().getHttpMethod()
-            && isCacheableContent(response);
+            && (isCacheableContent(response) || isRevalidatableSubresource(response));
+    }
+
+    /**
+     * <p>Determines if the specified response is a subresource (script, style sheet, image or font)
+     * that is not considered as cacheable by {@link #isCacheableContent(WebResponse)} but can be stored
+     * to be revalidated using a conditional request.</p>
+     *
+     * <p>This is the case for responses carrying a validator (<tt>ETag</tt> or <tt>Last-Modified</tt>)
+     * without an <tt>Expires</tt> date, that are not marked as <tt>no-store</tt> or <tt>private</tt>.
+     * Such a stored response is stale right away.</p>
+     *
+     * @param response the response to examine
+     * @return {@code true} if the response should be stored for revalidation
+     */
+    protected boolean isRevalidatableSubresource(final WebResponse response) {
+        if (!hasValidator(response)
+                || HeaderUtils.containsNoStore(response)
+                || HeaderUtils.containsPrivate(response)) {
+            return false;
+        }
+
+        if (!HeaderUtils.containsMaxAgeOrSMaxage(response)
+                && response.getResponseHeaderValue(HttpHeader.EXPIRES) != null) {
+            return false;
+        }
+
+        final String contentType = StringUtils.defaultString(response.getContentType()).toLowerCase(Locale.ROOT);
+        return contentType.contains("javascript")
+                || contentType.contains("ecmascript")
+                || MimeType.TEXT_CSS.equals(contentType)
+                || contentType.startsWith("image/")
+                || contentType.startsWith("font/")
+                || contentType.startsWith("application/font-")
+                || contentType.startsWith("application/x-font-");
     }
 
     /**
@@ -259,6 +475,16 @@ public class Cache implements Serializable {
                 || (expires == null && lastModified != null && now - lastModified.getTime() > DELAY);
     }
 
+    /**
+     * Returns whether the response carries a validator (<tt>ETag</tt> or <tt>Last-Modified</tt>).
+     * @param response the response
+     * @return whether the response can be revalidated
+     */
+    private static boolean hasValidator(final WebResponse response) {
+        return response.getResponseHeaderValue(HttpHeader.ETAG) != null
+                || response.getResponseHeaderValue(HttpHeader.LAST_MODIFIED) != null;
+    }
+
     /**
      * Gets the current time stamp. As method to allow overriding it, when simulating an other time.
      * @return the current time stamp
@@ -340,15 +566,93 @@ public class Cache implements Serializable {
         }
 
         if (cachedEntry.isStillFresh(getCurrentTimestamp())) {
-            synchronized (entries_) {
-                cachedEntry.touch();
-            }
+            touch(cachedEntry);
             return cachedEntry;
         }
-        entries_.remove(UrlUtils.normalize(url));
+        // stale entries are kept as long as they can be revalidated
+        if (!cachedEntry.isRevalidatable()) {
+            remove(cachedEntry);
+        }
         return null;
     }
 
+    private Entry getStaleCacheEntry(final WebRequest request) {
+        if (HttpMethod.GET != request.getHttpMethod()) {
+            return null;
+        }
+
+        final URL url = request.getUrl();
+        if (url == null) {
+            return null;
+        }
+
+        final Entry cachedEntry = entries_.get(UrlUtils.normalize(url));
+        if (cachedEntry == null || !cachedEntry.isRevalidatable()) {
+            return null;
+        }
+        return cachedEntry;
+    }
+
+    /**
+     * Returns the cached response corresponding to the specified request if this response is no longer
+     * fresh but carries a validator (<tt>ETag</tt> or <tt>Last-Modified</tt>). Such a response can be used to
+     * build a conditional request; if the server answers with <tt>304 Not Modified</tt>,
+     * {@link #revalidate(WebRequest, WebResponse)} makes the entry fresh again.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc7232">RFC 7232</a>
+     *
+     * @param request the request whose corresponding response is sought
+     * @return the stale cached response or {@code null}
+     */
+    public WebResponse getRevalidatableResponse(final WebRequest request) {
+        final Entry cachedEntry = getStaleCacheEntry(request);
+        if (cachedEntry == null || cachedEntry.isStillFresh(getCurrentTimestamp())) {
+            return null;
+        }
+        return cachedEntry.response_;
+    }
+
+    /**
+     * Removes the stale cached entry corresponding to the specified request; used if the server
+     * answered the conditional request with new content instead of <tt>304 Not Modified</tt>.
+     *
+     * @param request the (conditional) request
+     */
+    public void removeRevalidatableResponse(final WebRequest request) {
+        final Entry cachedEntry = getStaleCacheEntry(request);
+        if (cachedEntry != null && !cachedEntry.isStillFresh(getCurrentTimestamp())) {
+            remove(cachedEntry);
+            if (cachedEntry.response_ != null) {
+                cachedEntry.response_.cleanUp();
+            }
+        }
+    }
+
+    /**
+     * Marks the cached entry corresponding to the specified request as validated by the server;
+     * the entry is fresh again afterwards.
+     *
+     * @param request the (conditional) request
+     * @param notModifiedResponse the <tt>304 Not Modified</tt> response received from the server
+     * @return the cached response to be used instead of the 304 response or {@code null} if
+     *         the entry is no longer part of the cache
+     */
+    public WebResponse revalidate(final WebRequest request, final WebResponse notModifiedResponse) {
+        final Entry cachedEntry = getStaleCacheEntry(request);
+        if (cachedEntry == null) {
+            return null;
+        }
+
+        synchronized (accessOrder_) {
+            if (entries_.get(cachedEntry.key_) != cachedEntry) {
+                return null;
+            }
+            cachedEntry.revalidated(notModifiedResponse, getCurrentTimestamp());
+            touch(cachedEntry);
+            return cachedEntry.response_;
+        }
+    }
+
     /**
      * Returns the cached parsed version of the specified CSS snippet. If there is no
      * corresponding cached stylesheet, this method returns {@code null}.
@@ -361,9 +665,7 @@ public class Cache implements Serializable {
         if (cachedEntry == null) {
             return null;
         }
-        synchronized (entries_) {
-            cachedEntry.touch();
-        }
+        touch(cachedEntry);
         return (CSSStyleSheetImpl) cachedEntry.value_;
     }
 
@@ -387,8 +689,55 @@ public class Cache implements Serializable {
         if (maxSize < 0) {
             throw new IllegalArgumentException("Illegal value for maxSize: " + maxSize);
         }
-        maxSize_ = maxSize;
-        deleteOverflow();
+        synchronized (accessOrder_) {
+            maxSize_ = maxSize;
+            deleteOverflow();
+        }
+    }
+
+    /**
+     * Returns the maximum number of content bytes (as reported by {@link DownloadedContent#length()})
+     * kept by the cache. The default is <tt>0</tt>, meaning that only the number of entries is limited.
+     *
+     * @return the cache's maximum number of bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes_;
+    }
+
+    /**
+     * Sets the maximum number of content bytes (as reported by {@link DownloadedContent#length()})
+     * kept by the cache. If the limit is exceeded, the least recently used entries are removed.
+     * The default is <tt>0</tt>, meaning that only the number of entries is limited.
+     *
+     * @param maxBytes the cache's maximum number of bytes (must be &gt;= 0)
+     */
+    public void setMaxBytes(final long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Illegal value for maxBytes: " + maxBytes);
+        }
+        synchronized (accessOrder_) {
+            maxBytes_ = maxBytes;
+            totalBytes_ = 0;
+            if (maxBytes_ > 0) {
+                for (final Entry entry : accessOrder_.values()) {
+                    totalBytes_ += entry.getBytes();
+                }
+            }
+            deleteOverflow();
+        }
+    }
+
+    /**
+     * Returns the number of content bytes currently kept by the cache. This is only tracked
+     * if a limit was set using {@link #setMaxBytes(long)}, otherwise <tt>0</tt> is returned.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        synchronized (accessOrder_) {
+            return totalBytes_;
+        }
     }
 
     /**
@@ -404,13 +753,16 @@ public class Cache implements Serializable {
      * Clears the cache.
      */
     public void clear() {
-        synchronized (entries_) {
-            for (final Entry entry : entries_.values()) {
+        synchronized (accessOrder_) {
+            for (final Entry entry : accessOrder_.values()) {
                 if (entry.response_ != null) {
                     entry.response_.cleanUp();
                 }
             }
+            drainAccesses();
+            accessOrder_.clear();
             entries_.clear();
+            totalBytes_ = 0;
         }
     }
 
@@ -418,15 +770,18 @@ public class Cache implements Serializable {
      * Removes outdated entries from the cache.
      */
     public void clearOutdated() {
-        synchronized (entries_) {
+        synchronized (accessOrder_) {
             final long now = getCurrentTimestamp();
 
-            final Iterator<Map.Entry<String, Entry>> iter = entries_.entrySet().iterator();
+            final Iterator<Entry> iter = accessOrder_.values().iterator();
             while (iter.hasNext()) {
-                final Map.Entry<String, Entry> entry = iter.next();
-                if (entry.getValue().response_ == null
-                        || !entry.getValue().isStillFresh(now)) {
+                final Entry entry = iter.next();
+                if (entry.response_ == null || !entry.isStillFresh(now)) {
                     iter.remove();
+                    entries_.remove(entry.key_);
+                    if (maxBytes_ > 0) {
+                        totalBytes_ -= entry.getBytes();
+                    }
                 }
             }
         }
@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.UrlUtils;
+
+/**
+ * <p>A {@link Cache} which additionally stores the cached responses (status, headers and content) in a directory
+ * on disk, allowing to reuse them after a restart of the JVM. Use {@link WebClient#setCache(Cache)} to
+ * install it.</p>
+ *
+ * <p>The content of the responses is stored in files named by the SHA-256 hash of the content, identical
+ * content is stored only once. The status and headers are kept in a memory-mapped, append-only index file.
+ * Responses are read back from disk lazily, when they are requested and not (or no longer) part of the
+ * in-memory cache; the usual freshness and revalidation rules of {@link Cache} apply to them.</p>
+ *
+ * <p>The directory can only be used by one instance at a time; parsed CSS and compiled JavaScript are only
+ * cached in memory.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DiskCache extends Cache implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(DiskCache.class);
+
+    private static final int MAGIC = 0x48554349; // HUCI
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_INDEX_SIZE = 1024 * 1024;
+
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String BODIES_DIRECTORY_NAME = "bodies";
+
+    private final File directory_;
+    private final File bodiesDirectory_;
+
+    /** The latest index record per normalized url. */
+    private transient Map<String, IndexRecord> records_ = new ConcurrentHashMap<>();
+
+    /** The responses already written to disk; a response is usually passed to the cache more than once. */
+    private transient Map<WebResponse, Boolean> storedResponses_ =
+            Collections.synchronizedMap(new WeakHashMap<WebResponse, Boolean>());
+
+    private transient FileChannel channel_;
+    private transient FileLock lock_;
+    private transient MappedByteBuffer index_;
+
+    /**
+     * One record of the index file; the record for an url replaces all previous records for the same url.
+     */
+    private static final class IndexRecord {
+        private final String key_;
+        private final long storedAt_;
+        private final int statusCode_;
+        private final String statusMessage_;
+        private final List<NameValuePair> headers_;
+        /** The hash of the content or an empty string if the url was removed from the cache. */
+        private final String contentHash_;
+
+        IndexRecord(final String key, final long storedAt, final int statusCode, final String statusMessage,
+                final List<NameValuePair> headers, final String contentHash) {
+            key_ = key;
+            storedAt_ = storedAt;
+            statusCode_ = statusCode;
+            statusMessage_ = statusMessage;
+            headers_ = headers;
+            contentHash_ = contentHash;
+        }
+
+        boolean isRemoved() {
+            return contentHash_.isEmpty();
+        }
+
+        byte[] toBytes() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeUTF(key_);
+                out.writeLong(storedAt_);
+                out.writeInt(statusCode_);
+                out.writeUTF(StringUtils.defaultString(statusMessage_));
+                out.writeInt(headers_.size());
+                for (final NameValuePair header : headers_) {
+                    out.writeUTF(header.getName());
+                    out.writeUTF(StringUtils.defaultString(header.getValue()));
+                }
+                out.writeUTF(contentHash_);
+            }
+            return bytes.toByteArray();
+        }
+
+        static IndexRecord fromBytes(final byte[] bytes) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                final String key = in.readUTF();
+                final long storedAt = in.readLong();
+                final int statusCode = in.readInt();
+                final String statusMessage = in.readUTF();
+                final int headerCount = in.readInt();
+                final List<NameValuePair> headers = new ArrayList<>(headerCount);
+                for (int i = 0; i < headerCount; i++) {
+                    headers.add(new NameValuePair(in.readUTF(), in.readUTF()));
+                }
+                final String contentHash = in.readUTF();
+                return new IndexRecord(key, storedAt, statusCode, statusMessage, headers, contentHash);
+            }
+        }
+    }
+
+    /**
+     * Creates a new cache using the specified directory, the directory is created if it does not exist.
+     * Responses stored there by a previous instance are available again.
+     *
+     * @param directory the directory to store the responses in
+     * @throws IOException if the directory can't be used
+     */
+    public DiskCache(final File directory) throws IOException {
+        directory_ = directory;
+        bodiesDirectory_ = new File(directory, BODIES_DIRECTORY_NAME);
+        FileUtils.forceMkdir(bodiesDirectory_);
+        openIndex();
+    }
+
+    /**
+     * Returns the directory used to store the responses.
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory_;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cacheable responses are additionally written to disk.
+     */
+    @Override
+    public boolean cacheIfPossible(final WebRequest request, final WebResponse response, final Object toCache) {
+        final boolean cached = super.cacheIfPossible(request, response, toCache);
+        // responses delivered from the cache are already on disk
+        if (cached && !(response instanceof WebResponseFromCache)
+                && storedResponses_.put(response, Boolean.TRUE) == null) {
+            try {
+                store(request, response);
+            }
+            catch (final IOException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn("Failed to store the response for '" + request.getUrl() + "' on disk", e);
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the response is not part of the in-memory cache, it is restored from disk.
+     */
+    @Override
+    public WebResponse getCachedResponse(final WebRequest request) {
+        final WebResponse response = super.getCachedResponse(request);
+        if (response == null && restoreFromDisk(request)) {
+            return super.getCachedResponse(request);
+        }
+        return response;
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the response is not part of the in-memory cache, it is restored from disk.
+     */
+    @Override
+    public WebResponse getRevalidatableResponse(final WebRequest request) {
+        final WebResponse response = super.getRevalidatableResponse(request);
+        if (response == null && restoreFromDisk(request)) {
+            return super.getRevalidatableResponse(request);
+        }
+        return response;
+    }
+
+    /**
+     * Removes all responses stored on disk and clears the in-memory cache.
+     * {@link #clear()} only clears the in-memory cache.
+     *
+     * @throws IOException in case of error
+     */
+    public void purge() throws IOException {
+        synchronized (this) {
+            clear();
+            records_.clear();
+            resetIndex();
+            FileUtils.cleanDirectory(bodiesDirectory_);
+        }
+    }
+
+    /**
+     * Flushes the index and releases the directory; the cache must not be used afterwards.
+     *
+     * @throws IOException in case of error
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (channel_ == null) {
+                return;
+            }
+            index_.force();
+            lock_.release();
+            channel_.close();
+            channel_ = null;
+            index_ = null;
+        }
+    }
+
+    private boolean restoreFromDisk(final WebRequest request) {
+        if (HttpMethod.GET != request.getHttpMethod()) {
+            return false;
+        }
+        final URL url = request.getUrl();
+        if (url == null) {
+            return false;
+        }
+
+        final IndexRecord record = records_.get(UrlUtils.normalize(url));
+        if (record == null) {
+            return false;
+        }
+
+        final File content = new File(bodiesDirectory_, record.contentHash_);
+        if (content.isFile()) {
+            final WebResponseData responseData = new WebResponseData(new DownloadedContent.OnFile(content, false),
+                    record.statusCode_, record.statusMessage_, record.headers_);
+            if (restore(request, new WebResponse(responseData, request, 0), record.storedAt_)) {
+                return true;
+            }
+        }
+
+        // outdated or incomplete; forget about it
+        try {
+            synchronized (this) {
+                if (records_.remove(record.key_, record)) {
+                    append(new IndexRecord(record.key_, getCurrentTimestamp(), 0, "",
+                            new ArrayList<NameValuePair>(), ""));
+                }
+            }
+        }
+        catch (final IOException e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Failed to update the cache index", e);
+            }
+        }
+        return false;
+    }
+
+    private void store(final WebRequest request, final WebResponse response) throws IOException {
+        final URL url = request.getUrl();
+        if (url == null) {
+            return;
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        final File tmp = File.createTempFile("htmlunit", ".tmp", bodiesDirectory_);
+        try {
+            try (InputStream in = response.getContentAsStream();
+                    OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp.toPath()), digest)) {
+                if (in != null) {
+                    IOUtils.copy(in, out);
+                }
+            }
+
+            final String contentHash = Hex.encodeHexString(digest.digest());
+            final File content = new File(bodiesDirectory_, contentHash);
+            if (!content.exists()) {
+                try {
+                    Files.move(tmp.toPath(), content.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (final FileAlreadyExistsException e) {
+                    // stored by another thread in the meantime; the name is the hash, the content is the same
+                }
+            }
+
+            final IndexRecord record = new IndexRecord(UrlUtils.normalize(url), getCurrentTimestamp(),
+                    response.getStatusCode(), response.getStatusMessage(),
+                    new ArrayList<>(response.getResponseHeaders()), contentHash);
+            synchronized (this) {
+                append(record);
+                records_.put(record.key_, record);
+            }
+        }
+        finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Custom deserialization logic; the index of the directory is read again. If the directory is still
+     * in use (e.g. by the instance this one was serialized from), the responses are only cached in memory.
+     * @param ois the stream from which to read the object
+     * @throws IOException if an IO error occurs
+     * @throws ClassNotFoundException if a class cannot be found
+     */
+    private void readObject(final ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        records_ = new ConcurrentHashMap<>();
+        storedResponses_ = Collections.synchronizedMap(new WeakHashMap<WebResponse, Boolean>());
+        try {
+            openIndex();
+        }
+        catch (final IOException | OverlappingFileLockException e) {
+            IOUtils.closeQuietly(channel_);
+            channel_ = null;
+            lock_ = null;
+            index_ = null;
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("The cache directory '" + directory_ + "' can't be used, responses are only cached in memory",
+                        e);
+            }
+        }
+    }
+
+    private void openIndex() throws IOException {
+        channel_ = FileChannel.open(new File(directory_, INDEX_FILE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock_ = channel_.tryLock();
+        if (lock_ == null) {
+            channel_.close();
+            throw new IOException("The cache directory '" + directory_ + "' is in use by another process");
+        }
+
+        final boolean isNew = channel_.size() < HEADER_SIZE;
+        index_ = channel_.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel_.size(), INITIAL_INDEX_SIZE));
+        if (isNew || index_.getInt(0) != MAGIC || index_.getInt(4) != VERSION) {
+            resetIndex();
+            return;
+        }
+
+        int superseded = 0;
+        index_.position(HEADER_SIZE);
+        while (index_.remaining() > 4) {
+            final int start = index_.position();
+            final int length = index_.getInt();
+            if (length <= 0 || length > index_.remaining()) {
+                index_.position(start);
+                break;
+            }
+            final byte[] bytes = new byte[length];
+            index_.get(bytes);
+            final IndexRecord record;
+            try {
+                record = IndexRecord.fromBytes(bytes);
+            }
+            catch (final IOException e) {
+                // truncated or damaged record, overwrite it
+                index_.position(start);
+                break;
+            }
+            final IndexRecord previous;
+            if (record.isRemoved()) {
+                previous = records_.remove(record.key_);
+                superseded++;
+            }
+            else {
+                previous = records_.put(record.key_, record);
+            }
+            if (previous != null) {
+                superseded++;
+            }
+        }
+        // clear everything after the last valid record
+        final int end = index_.position();
+        while (index_.hasRemaining()) {
+            index_.put((byte) 0);
+        }
+        index_.position(end);
+
+        if (superseded > records_.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the index with the current records only and deletes the content files no longer in use.
+     */
+    private void compact() throws IOException {
+        final List<IndexRecord> records = new ArrayList<>(records_.values());
+        resetIndex();
+        final Set<String> used = new HashSet<>();
+        for (final IndexRecord record : records) {
+            append(record);
+            used.add(record.contentHash_);
+        }
+
+        final File[] files = bodiesDirectory_.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!used.contains(file.getName())) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    private void resetIndex() {
+        index_.clear();
+        while (index_.hasRemaining()) {
+            index_.put((byte) 0);
+        }
+        index_.putInt(0, MAGIC);
+        index_.putInt(4, VERSION);
+        index_.position(HEADER_SIZE);
+    }
+
+    private void append(final IndexRecord record) throws IOException {
+        if (channel_ == null) {
+            throw new IOException("The cache is already closed");
+        }
+
+        final byte[] bytes = record.toBytes();
+        // keep at least one empty length field at the end
+        final int needed = bytes.length + 8;
+        if (index_.remaining() < needed) {
+            final int position = index_.position();
+            final long newSize = Math.max(2L * index_.capacity(), (long) position + needed);
+            index_ = channel_.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+            index_.position(position);
+        }
+        index_.putInt(bytes.length);
+        index_.put(bytes);
+    }
+}
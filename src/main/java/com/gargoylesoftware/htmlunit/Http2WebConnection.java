@@ -0,0 +1,631 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.URL_AUTH_CREDENTIALS;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+import com.gargoylesoftware.htmlunit.util.Cookie;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.UrlUtils;
+
+import okhttp3.Authenticator;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionSpec;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.Route;
+
+/**
+ * A {@link WebConnection} speaking HTTP/2, based on <a href="https://square.github.io/okhttp/">OkHttp</a>.
+ * OkHttp is an optional dependency; it has to be on the class path to use this connection:
+ * <pre>webClient.setWebConnection(new Http2WebConnection(webClient));</pre>
+ *
+ * <p>HTTPS connections negotiate HTTP/2 with ALPN and fall back to HTTP/1.1 if the server doesn't support it
+ * (ALPN needs Java 9 or later, or a Java 8 update providing it). Plain HTTP connections use HTTP/1.1, unless
+ * {@link #setH2cPriorKnowledge(boolean)} is set; then they speak HTTP/2 right away (h2c with prior knowledge),
+ * which the server has to support. The requests to one host are multiplexed over a single connection,
+ * {@link #getResponseAsync(WebRequest)} doesn't block a thread while waiting for the response.</p>
+ *
+ * <p>The timeout, the insecure SSL, SSL client certificate, SSL trust store, SSL protocol and cipher suite
+ * options of the {@link WebClientOptions} are supported, as well as HTTP and SOCKS proxies. Credentials are
+ * sent using basic authentication only. The local address and the virtual host are not supported.
+ * OkHttp asks for gzip only and decompresses the responses itself.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class Http2WebConnection implements WebConnection {
+
+    private static final Log LOG = LogFactory.getLog(Http2WebConnection.class);
+
+    private static final MediaType URL_ENCODED = MediaType.parse(URLEncodedUtils.CONTENT_TYPE);
+
+    private final WebClient webClient_;
+    private final WebClientOptions usedOptions_ = new WebClientOptions();
+    private boolean h2cPriorKnowledge_;
+
+    /** The client, built with the current options. */
+    private OkHttpClient httpClient_;
+    /** The client for plain HTTP if h2c is used, sharing the connection pool of {@link #httpClient_}. */
+    private OkHttpClient h2cHttpClient_;
+
+    /**
+     * Creates a new HTTP/2 web connection instance.
+     * @param webClient the WebClient that is using this connection
+     */
+    public Http2WebConnection(final WebClient webClient) {
+        webClient_ = webClient;
+    }
+
+    /**
+     * Sets whether plain HTTP requests use HTTP/2 without negotiation (h2c with prior knowledge).
+     * Only servers supporting this can be reached over plain HTTP then.
+     * @param h2cPriorKnowledge whether to use h2c
+     */
+    public synchronized void setH2cPriorKnowledge(final boolean h2cPriorKnowledge) {
+        h2cPriorKnowledge_ = h2cPriorKnowledge;
+    }
+
+    /**
+     * Returns whether plain HTTP requests use HTTP/2 without negotiation (h2c with prior knowledge).
+     * @return whether h2c is used
+     */
+    public synchronized boolean isH2cPriorKnowledge() {
+        return h2cPriorKnowledge_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebResponse getResponse(final WebRequest request) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        try (Response response = newCall(request).execute()) {
+            return makeWebResponse(response, request, startTime);
+        }
+    }
+
+    /**
+     * Sends the request without waiting for the response. Unlike the default implementation no thread
+     * is blocked while waiting; the response is read on a thread of OkHttp's dispatcher.
+     * Cancelling the returned future cancels the call.
+     * @param request the request
+     * @return the future response, completed exceptionally if the request failed
+     */
+    @Override
+    public CompletableFuture<WebResponse> getResponseAsync(final WebRequest request) {
+        final CompletableFuture<WebResponse> future = new CompletableFuture<>();
+        final long startTime = System.currentTimeMillis();
+        final Call call;
+        try {
+            call = newCall(request);
+        }
+        catch (final IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call failedCall, final IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(final Call respondedCall, final Response response) {
+                try (Response r = response) {
+                    future.complete(makeWebResponse(r, request, startTime));
+                }
+                catch (final IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    private Call newCall(final WebRequest request) throws IOException {
+        final Request httpRequest = makeRequest(request);
+        return getHttpClient(request).newCall(httpRequest);
+    }
+
+    /**
+     * Returns the client for the specified request. The client is only rebuilt if the options changed;
+     * the clients for h2c and for the proxy of a request share its connection pool and dispatcher.
+     */
+    private synchronized OkHttpClient getHttpClient(final WebRequest request) {
+        if (httpClient_ == null || optionsChanged()) {
+            if (httpClient_ != null) {
+                httpClient_.connectionPool().evictAll();
+            }
+            httpClient_ = createHttpClientBuilder().build();
+            h2cHttpClient_ = null;
+        }
+
+        OkHttpClient client = httpClient_;
+        if (h2cPriorKnowledge_ && "http".equals(request.getUrl().getProtocol())) {
+            if (h2cHttpClient_ == null) {
+                h2cHttpClient_ = httpClient_.newBuilder()
+                        .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                        .build();
+            }
+            client = h2cHttpClient_;
+        }
+
+        if (request.getProxyHost() != null) {
+            final Proxy.Type type = request.isSocksProxy() ? Proxy.Type.SOCKS : Proxy.Type.HTTP;
+            final InetSocketAddress address =
+                    InetSocketAddress.createUnresolved(request.getProxyHost(), request.getProxyPort());
+            client = client.newBuilder().proxy(new Proxy(type, address)).build();
+        }
+        return client;
+    }
+
+    private boolean optionsChanged() {
+        final WebClientOptions options = webClient_.getOptions();
+        return options.getTimeout() != usedOptions_.getTimeout()
+                || options.isUseInsecureSSL() != usedOptions_.isUseInsecureSSL()
+                || options.getSSLClientCertificateStore() != usedOptions_.getSSLClientCertificateStore()
+                || options.getSSLTrustStore() != usedOptions_.getSSLTrustStore()
+                || options.getSSLClientCipherSuites() != usedOptions_.getSSLClientCipherSuites()
+                || options.getSSLClientProtocols() != usedOptions_.getSSLClientProtocols();
+    }
+
+    /**
+     * Creates the builder of the client used by this connection, configured with the current options.
+     * Extensions may override this method in order to customize the client.
+     * @return the builder
+     */
+    protected OkHttpClient.Builder createHttpClientBuilder() {
+        final WebClientOptions options = webClient_.getOptions();
+        final int timeout = options.getTimeout();
+
+        // the WebClient follows the redirects itself
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .proxy(Proxy.NO_PROXY)
+                .authenticator(new CredentialsAuthenticator(false))
+                .proxyAuthenticator(new CredentialsAuthenticator(true))
+                .connectTimeout(timeout, TimeUnit.MILLISECONDS)
+                .readTimeout(timeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeout, TimeUnit.MILLISECONDS);
+        configureSSL(builder, options);
+
+        usedOptions_.setTimeout(timeout);
+        usedOptions_.setUseInsecureSSL(options.isUseInsecureSSL());
+        usedOptions_.setSSLClientCertificateStore(options.getSSLClientCertificateStore());
+        usedOptions_.setSSLTrustStore(options.getSSLTrustStore());
+        usedOptions_.setSSLClientCipherSuites(options.getSSLClientCipherSuites());
+        usedOptions_.setSSLClientProtocols(options.getSSLClientProtocols());
+        return builder;
+    }
+
+    private static void configureSSL(final OkHttpClient.Builder builder, final WebClientOptions options) {
+        try {
+            final boolean useInsecureSSL = options.isUseInsecureSSL();
+            final X509TrustManager trustManager;
+            final SSLContext sslContext;
+            if (useInsecureSSL) {
+                trustManager = new InsecureTrustManager();
+                String protocol = options.getSSLInsecureProtocol();
+                if (protocol == null) {
+                    protocol = "SSL";
+                }
+                sslContext = SSLContext.getInstance(protocol);
+                builder.hostnameVerifier((hostname, session) -> true);
+            }
+            else {
+                trustManager = getTrustManager(options.getSSLTrustStore());
+                sslContext = SSLContext.getInstance("TLS");
+            }
+            sslContext.init(getKeyManagers(options), new TrustManager[] {trustManager}, null);
+            builder.sslSocketFactory(sslContext.getSocketFactory(), trustManager);
+
+            final String[] protocols = options.getSSLClientProtocols();
+            final String[] cipherSuites = options.getSSLClientCipherSuites();
+            if (protocols != null || cipherSuites != null || useInsecureSSL) {
+                // insecure SSL accepts whatever the JVM supports
+                final ConnectionSpec.Builder spec = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS);
+                if (protocols != null) {
+                    spec.tlsVersions(protocols);
+                }
+                else if (useInsecureSSL) {
+                    spec.allEnabledTlsVersions();
+                }
+                if (cipherSuites != null) {
+                    spec.cipherSuites(cipherSuites);
+                }
+                else if (useInsecureSSL) {
+                    spec.allEnabledCipherSuites();
+                }
+                builder.connectionSpecs(Arrays.asList(spec.build(), ConnectionSpec.CLEARTEXT));
+            }
+        }
+        catch (final GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static X509TrustManager getTrustManager(final KeyStore trustStore) throws GeneralSecurityException {
+        final TrustManagerFactory trustManagerFactory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        // the default trust store is used if none is set
+        trustManagerFactory.init(trustStore);
+        for (final TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+            if (trustManager instanceof X509TrustManager) {
+                return (X509TrustManager) trustManager;
+            }
+        }
+        throw new IllegalStateException("No X509TrustManager available");
+    }
+
+    private static KeyManager[] getKeyManagers(final WebClientOptions options) throws GeneralSecurityException {
+        final KeyStore keyStore = options.getSSLClientCertificateStore();
+        if (keyStore == null) {
+            return null;
+        }
+        final KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, options.getSSLClientCertificatePassword());
+        return keyManagerFactory.getKeyManagers();
+    }
+
+    /**
+     * Creates the OkHttp request for the specified request.
+     * @param webRequest the request
+     * @return the OkHttp request
+     * @throws IOException if the URL is invalid
+     */
+    private Request makeRequest(final WebRequest webRequest) throws IOException {
+        final Charset charset = webRequest.getCharset();
+        // see HttpWebConnection.makeHttpMethod()
+        URL url = UrlUtils.encodeUrl(webRequest.getUrl(), false, charset);
+
+        final HttpMethod method = webRequest.getHttpMethod();
+        RequestBody body = null;
+        if (method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH) {
+            body = makeRequestBody(webRequest, charset);
+        }
+        else if (!webRequest.getRequestParameters().isEmpty()) {
+            // this is the case for GET as well as TRACE, DELETE, OPTIONS and HEAD
+            url = UrlUtils.getUrlWithNewQuery(url, formatParameters(webRequest.getRequestParameters(), charset));
+        }
+
+        final HttpUrl httpUrl = HttpUrl.get(url);
+        if (httpUrl == null) {
+            throw new IOException("Unable to create URI from URL: " + webRequest.getUrl().toExternalForm());
+        }
+
+        final Request.Builder builder = new Request.Builder()
+                .url(httpUrl)
+                .method(method.name(), body)
+                .header(HttpHeader.USER_AGENT, webClient_.getBrowserVersion().getUserAgent());
+        if (webClient_.getOptions().isDoNotTrackEnabled()) {
+            builder.header(HttpHeader.DNT, "1");
+        }
+
+        final Map<String, String> requestHeaders = webRequest.getAdditionalHeaders();
+        final Map<String, String> headers;
+        synchronized (requestHeaders) {
+            headers = new HashMap<>(requestHeaders);
+        }
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            final String name = header.getKey();
+            // the connection related headers are set by OkHttp,
+            // the encoding is left to OkHttp because it decompresses the response only if it asked for it
+            if (!HttpHeader.HOST.equalsIgnoreCase(name)
+                    && !HttpHeader.CONNECTION.equalsIgnoreCase(name)
+                    && !HttpHeader.CONTENT_LENGTH.equalsIgnoreCase(name)
+                    && !HttpHeader.ACCEPT_ENCODING.equalsIgnoreCase(name)
+                    && header.getValue() != null) {
+                builder.header(name, header.getValue());
+            }
+        }
+
+        if (!headers.containsKey(HttpHeader.COOKIE)) {
+            final String cookies = getCookieHeader(webRequest.getUrl());
+            if (cookies != null) {
+                builder.header(HttpHeader.COOKIE, cookies);
+            }
+        }
+
+        registerCredentials(webRequest);
+        return builder.build();
+    }
+
+    private static RequestBody makeRequestBody(final WebRequest webRequest, final Charset charset) {
+        if (FormEncodingType.MULTIPART == webRequest.getEncodingType()) {
+            final MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.FORM);
+            for (final NameValuePair pair : webRequest.getRequestParameters()) {
+                if (pair instanceof KeyDataPair) {
+                    addFilePart((KeyDataPair) pair, builder);
+                }
+                else {
+                    final MediaType textPlain = MediaType.parse(MimeType.TEXT_PLAIN + "; charset=" + charset.name());
+                    builder.addFormDataPart(pair.getName(), null,
+                            RequestBody.create(textPlain, pair.getValue().getBytes(charset)));
+                }
+            }
+            return builder.build();
+        }
+
+        if (webRequest.getEncodingType() == FormEncodingType.URL_ENCODED
+                && webRequest.getHttpMethod() == HttpMethod.POST) {
+            String body = webRequest.getRequestBody();
+            if (body == null) {
+                body = formatParameters(webRequest.getRequestParameters(), charset);
+            }
+            return RequestBody.create(URL_ENCODED, body.getBytes(charset));
+        }
+
+        // for instance a PUT or PATCH request
+        final String body = webRequest.getRequestBody();
+        if (body == null) {
+            return RequestBody.create(null, new byte[0]);
+        }
+        String contentType = webRequest.getAdditionalHeader(HttpHeader.CONTENT_TYPE);
+        if (contentType == null) {
+            contentType = MimeType.TEXT_PLAIN + "; charset=" + charset.name();
+        }
+        return RequestBody.create(MediaType.parse(contentType), body.getBytes(charset));
+    }
+
+    private static void addFilePart(final KeyDataPair pair, final MultipartBody.Builder builder) {
+        String mimeType = pair.getMimeType();
+        if (mimeType == null) {
+            mimeType = MimeType.APPLICATION_OCTET_STREAM;
+        }
+        final MediaType mediaType = MediaType.parse(mimeType);
+
+        String filename = pair.getFileName();
+        if (filename == null) {
+            filename = pair.getFile() == null ? pair.getValue() : pair.getFile().getName();
+        }
+
+        final RequestBody body;
+        if (pair.getData() != null) {
+            body = RequestBody.create(mediaType, pair.getData());
+        }
+        else if (pair.getFile() != null) {
+            body = RequestBody.create(mediaType, pair.getFile());
+        }
+        else {
+            body = RequestBody.create(mediaType, new byte[0]);
+        }
+        builder.addFormDataPart(pair.getName(), filename, body);
+    }
+
+    private static String formatParameters(final List<NameValuePair> pairs, final Charset charset) {
+        return URLEncodedUtils.format(Arrays.asList(NameValuePair.toHttpClient(pairs)), charset);
+    }
+
+    private String getCookieHeader(final URL url) {
+        final Set<Cookie> cookies = webClient_.getCookies(url);
+        if (cookies.isEmpty()) {
+            return null;
+        }
+        final StringBuilder header = new StringBuilder();
+        for (final Cookie cookie : cookies) {
+            if (header.length() > 0) {
+                header.append("; ");
+            }
+            header.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        return header.toString();
+    }
+
+    /**
+     * Stores the credentials of the request in the credentials provider of the web client,
+     * like {@link HttpWebConnection} does, where the {@link CredentialsAuthenticator} finds them.
+     */
+    private void registerCredentials(final WebRequest webRequest) {
+        final CredentialsProvider credentialsProvider = webClient_.getCredentialsProvider();
+        final URL url = webRequest.getUrl();
+
+        final Credentials urlCredentials = webRequest.getUrlCredentials();
+        if (urlCredentials != null && webClient_.getBrowserVersion().hasFeature(URL_AUTH_CREDENTIALS)) {
+            credentialsProvider.setCredentials(new AuthScope(url.getHost(), url.getPort()), urlCredentials);
+        }
+
+        final Credentials credentials = webRequest.getCredentials();
+        if (credentials != null) {
+            credentialsProvider.setCredentials(new AuthScope(url.getHost(), url.getPort()), credentials);
+        }
+    }
+
+    private WebResponse makeWebResponse(final Response response, final WebRequest request, final long startTime)
+            throws IOException {
+        final DownloadedContent content;
+        try (ResponseBody body = response.body()) {
+            if (body == null) {
+                content = new DownloadedContent.InMemory(null);
+            }
+            else {
+                content = HttpWebConnection.downloadContent(body.byteStream(),
+                        webClient_.getOptions().getMaxInMemory());
+            }
+        }
+        final long loadTime = System.currentTimeMillis() - startTime;
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(response.protocol() + " response " + response.code() + " for " + request.getUrl());
+        }
+
+        final Headers responseHeaders = response.headers();
+        final List<NameValuePair> headers = new ArrayList<>(responseHeaders.size());
+        for (int i = 0; i < responseHeaders.size(); i++) {
+            headers.add(new NameValuePair(responseHeaders.name(i), responseHeaders.value(i)));
+        }
+        for (final String cookie : response.headers("Set-Cookie")) {
+            webClient_.addCookie(cookie, request.getUrl(), this);
+        }
+
+        // HTTP/2 has no reason phrase
+        String statusMessage = response.message();
+        if (statusMessage == null) {
+            statusMessage = "Unknown status message";
+        }
+        final WebResponseData responseData = new WebResponseData(content, response.code(), statusMessage, headers);
+        return new WebResponse(responseData, request, loadTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() {
+        if (httpClient_ != null) {
+            httpClient_.dispatcher().executorService().shutdown();
+            httpClient_.connectionPool().evictAll();
+            httpClient_ = null;
+            h2cHttpClient_ = null;
+        }
+    }
+
+    /**
+     * Answers the authentication challenges of servers and proxies with basic authentication,
+     * using the credentials provider of the web client.
+     */
+    private final class CredentialsAuthenticator implements Authenticator {
+        private final boolean proxy_;
+
+        CredentialsAuthenticator(final boolean proxy) {
+            proxy_ = proxy;
+        }
+
+        @Override
+        public Request authenticate(final Route route, final Response response) {
+            final String header = proxy_ ? "Proxy-Authorization" : "Authorization";
+            if (response.request().header(header) != null) {
+                // the credentials were rejected, give up
+                return null;
+            }
+
+            final AuthScope authScope;
+            if (proxy_) {
+                final InetSocketAddress address = (InetSocketAddress) route.proxy().address();
+                authScope = new AuthScope(address.getHostString(), address.getPort());
+            }
+            else {
+                final HttpUrl url = response.request().url();
+                authScope = new AuthScope(url.host(), url.port());
+            }
+
+            final Credentials credentials = webClient_.getCredentialsProvider().getCredentials(authScope);
+            if (credentials == null || credentials.getUserPrincipal() == null) {
+                return null;
+            }
+            final String password = credentials.getPassword() == null ? "" : credentials.getPassword();
+            return response.request().newBuilder()
+                    .header(header, okhttp3.Credentials.basic(credentials.getUserPrincipal().getName(), password))
+                    .build();
+        }
+    }
+
+    /**
+     * A trust manager trusting all servers, used for insecure SSL.
+     */
+    private static final class InsecureTrustManager extends X509ExtendedTrustManager {
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType,
+                final SSLEngine engine) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType,
+                final SSLEngine engine) {
+            // Everyone is trusted!
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
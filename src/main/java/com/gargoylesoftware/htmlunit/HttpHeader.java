@@ -41,6 +41,15 @@ public final class HttpHeader {
     /** Expires. */
     public static final String EXPIRES = "Expires";
 
+    /** ETag. */
+    public static final String ETAG = "ETag";
+
+    /** If-None-Match. */
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    /** If-Modified-Since. */
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
     /** Accept. */
     public static final String ACCEPT = "Accept";
     /** Accept-LC. */
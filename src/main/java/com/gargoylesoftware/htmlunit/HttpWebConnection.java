@@ -34,7 +34,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
@@ -101,6 +100,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpProcessorBuilder;
 import org.apache.http.protocol.RequestContent;
 import org.apache.http.protocol.RequestTargetHost;
@@ -120,6 +120,10 @@ import com.gargoylesoftware.htmlunit.util.UrlUtils;
 /**
  * Default implementation of {@link WebConnection}, using the HttpClient library to perform HTTP requests.
  *
+ * <p>One HttpClient (and one connection pool) is shared by all threads using this connection; every request
+ * gets its own {@link HttpContext}. There is no state per thread, so requests can be made from any number of
+ * threads (including virtual threads) without collecting per-thread objects.</p>
+ *
  * @author <a href="mailto:mbowler@GargoyleSoftware.com">Mike Bowler</a>
  * @author Noboru Sinohara
  * @author David D. Kilzer
@@ -138,9 +142,14 @@ public class HttpWebConnection implements WebConnection {
 
     private static final String HACKED_COOKIE_POLICY = "mine";
 
-    // have one per thread because this is (re)configured for every call (see configureHttpProcessorBuilder)
-    // do not use a ThreadLocal because this in only accessed form this class
-    private final Map<Thread, HttpClientBuilder> httpClientBuilder_ = new WeakHashMap<>();
+    /** The context attribute holding the {@link HttpProcessor} of the current request. */
+    private static final String HTTP_PROCESSOR = "htmlunit.http.processor";
+
+    // shared by all threads, (re)configured and built only while holding the lock of this connection
+    private HttpClientBuilder httpClientBuilder_;
+
+    /** The client built from the builder; rebuilt only if the builder was reconfigured. */
+    private BuiltHttpClient httpClient_;
     private final WebClient webClient_;
 
     private String virtualHost_;
@@ -148,12 +157,9 @@ public class HttpWebConnection implements WebConnection {
     private final WebClientOptions usedOptions_;
     private PoolingHttpClientConnectionManager connectionManager_;
 
-    /** Authentication cache shared among all threads of a web client. */
+    /** Authentication cache shared among all requests of a web client. */
     private final AuthCache sharedAuthCache_ = new SynchronizedAuthCache();
 
-    /** Maintains a separate {@link HttpClientContext} object per HttpWebConnection and thread. */
-    private final Map<Thread, HttpClientContext> httpClientContextByThread_ = new WeakHashMap<>();
-
     /**
      * Creates a new HTTP web connection instance.
      * @param webClient the WebClient that is using this connection
@@ -169,12 +175,13 @@ public class HttpWebConnection implements WebConnection {
      */
     @Override
     public WebResponse getResponse(final WebRequest request) throws IOException {
-        final HttpClientBuilder builder = reconfigureHttpClientIfNeeded(getHttpClientBuilder());
+        final CloseableHttpClient httpClient = getHttpClient();
+        final HttpContext httpContext = createHttpContext();
 
         HttpUriRequest httpMethod = null;
         try {
             try {
-                httpMethod = makeHttpMethod(request, builder);
+                httpMethod = makeHttpMethod(request, httpContext);
             }
             catch (final URISyntaxException e) {
                 throw new IOException("Unable to create URI from URL: " + request.getUrl().toExternalForm()
@@ -183,20 +190,15 @@ public class HttpWebConnection implements WebConnection {
             final HttpHost hostConfiguration = getHostConfiguration(request);
             final long startTime = System.currentTimeMillis();
 
-            final HttpContext httpContext = getHttpContext();
             HttpResponse httpResponse = null;
             try {
-                try (CloseableHttpClient closeableHttpClient = builder.build()) {
-                    httpResponse = closeableHttpClient.execute(hostConfiguration, httpMethod, httpContext);
-                }
+                httpResponse = httpClient.execute(hostConfiguration, httpMethod, httpContext);
             }
             catch (final SSLPeerUnverifiedException s) {
                 // Try to use only SSLv3 instead
                 if (webClient_.getOptions().isUseInsecureSSL()) {
                     HtmlUnitSSLConnectionSocketFactory.setUseSSL3Only(httpContext, true);
-                    try (CloseableHttpClient closeableHttpClient = builder.build()) {
-                        httpResponse = closeableHttpClient.execute(hostConfiguration, httpMethod, httpContext);
-                    }
+                    httpResponse = httpClient.execute(hostConfiguration, httpMethod, httpContext);
                 }
                 else {
                     throw s;
@@ -207,7 +209,10 @@ public class HttpWebConnection implements WebConnection {
                 // Calling code may catch the StackOverflowError, but due to the leak, the httpClient_ may
                 // come out of connections and throw a ConnectionPoolTimeoutException.
                 // => best solution, discard the HttpClient instance.
-                httpClientBuilder_.remove(Thread.currentThread());
+                synchronized (this) {
+                    httpClientBuilder_ = null;
+                    httpClient_ = null;
+                }
                 throw e;
             }
 
@@ -241,29 +246,26 @@ public class HttpWebConnection implements WebConnection {
     }
 
     /**
-     * Returns the {@link HttpClientContext} for the current thread. Creates a new one if necessary.
+     * Creates the {@link HttpClientContext} for one request. The state shared between the requests
+     * (like the authentication cache) lives in this connection, not in the context.
      */
-    private synchronized HttpContext getHttpContext() {
-        HttpClientContext httpClientContext = httpClientContextByThread_.get(Thread.currentThread());
-        if (httpClientContext == null) {
-            httpClientContext = new HttpClientContext();
+    private HttpContext createHttpContext() {
+        final HttpClientContext httpClientContext = new HttpClientContext();
 
-            // set the shared authentication cache
-            httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
-
-            httpClientContextByThread_.put(Thread.currentThread(), httpClientContext);
-        }
+        // set the shared authentication cache
+        httpClientContext.setAttribute(HttpClientContext.AUTH_CACHE, sharedAuthCache_);
         return httpClientContext;
     }
 
-    private void setProxy(final HttpRequestBase httpRequest, final WebRequest webRequest) {
+    private void setProxy(final HttpRequestBase httpRequest, final WebRequest webRequest,
+            final HttpContext httpContext) {
         final InetAddress localAddress = webClient_.getOptions().getLocalAddress();
         final RequestConfig.Builder requestBuilder = createRequestConfigBuilder(getTimeout(), localAddress);
 
         if (webRequest.getProxyHost() != null) {
             final HttpHost proxy = new HttpHost(webRequest.getProxyHost(), webRequest.getProxyPort());
             if (webRequest.isSocksProxy()) {
-                SocksConnectionSocketFactory.setSocksProxy(getHttpContext(), proxy);
+                SocksConnectionSocketFactory.setSocksProxy(httpContext, proxy);
             }
             else {
                 requestBuilder.setProxy(proxy);
@@ -279,15 +281,14 @@ public class HttpWebConnection implements WebConnection {
     /**
      * Creates an <tt>HttpMethod</tt> instance according to the specified parameters.
      * @param webRequest the request
-     * @param httpClientBuilder the httpClientBuilder that will be configured
+     * @param httpContext the context the request will be executed with
      * @return the <tt>HttpMethod</tt> instance constructed according to the specified parameters
      * @throws IOException
      * @throws URISyntaxException
      */
-    private HttpUriRequest makeHttpMethod(final WebRequest webRequest, final HttpClientBuilder httpClientBuilder)
+    private HttpUriRequest makeHttpMethod(final WebRequest webRequest, final HttpContext httpContext)
         throws URISyntaxException {
 
-        final HttpContext httpContext = getHttpContext();
         final Charset charset = webRequest.getCharset();
         // Make sure that the URL is fully encoded. IE actually sends some Unicode chars in request
         // URLs; because of this we allow some Unicode chars in URLs. However, at this point we're
@@ -300,7 +301,7 @@ public class HttpWebConnection implements WebConnection {
             uri = URI.create(getVirtualHost());
         }
         final HttpRequestBase httpMethod = buildHttpMethod(webRequest.getHttpMethod(), uri);
-        setProxy(httpMethod, webRequest);
+        setProxy(httpMethod, webRequest, httpContext);
 
         if (!(httpMethod instanceof HttpEntityEnclosingRequest)) {
             // this is the case for GET as well as TRACE, DELETE, OPTIONS and HEAD
@@ -356,7 +357,8 @@ public class HttpWebConnection implements WebConnection {
             }
         }
 
-        configureHttpProcessorBuilder(httpClientBuilder, webRequest);
+        // the headers depend on the request, the processor of the (shared) client delegates to this one
+        httpContext.setAttribute(HTTP_PROCESSOR, createHttpProcessor(webRequest));
 
         // Tell the client where to get its credentials from
         // (it may have changed on the webClient since last call to getHttpClientFor(...))
@@ -380,8 +382,7 @@ public class HttpWebConnection implements WebConnection {
             // updating our client to keep the credentials for the next request
             credentialsProvider.setCredentials(authScope, requestCredentials);
         }
-        httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-        httpContext.removeAttribute(HttpClientContext.CREDS_PROVIDER);
+        httpContext.setAttribute(HttpClientContext.CREDS_PROVIDER, credentialsProvider);
         httpContext.removeAttribute(HttpClientContext.TARGET_AUTH_STATE);
         return httpMethod;
     }
@@ -513,11 +514,9 @@ public class HttpWebConnection implements WebConnection {
      *
      * @return the initialized HTTP client
      */
-    protected HttpClientBuilder getHttpClientBuilder() {
-        final Thread currentThread = Thread.currentThread();
-        HttpClientBuilder builder = httpClientBuilder_.get(currentThread);
-        if (builder == null) {
-            builder = createHttpClientBuilder();
+    protected synchronized HttpClientBuilder getHttpClientBuilder() {
+        if (httpClientBuilder_ == null) {
+            final HttpClientBuilder builder = createHttpClientBuilder();
 
             // this factory is required later
             // to be sure this is done, we do it outside the createHttpClient() call
@@ -528,10 +527,11 @@ public class HttpWebConnection implements WebConnection {
 
             builder.setDefaultCookieStore(new HtmlUnitCookieStore(webClient_.getCookieManager()));
             builder.setUserAgent(webClient_.getBrowserVersion().getUserAgent());
-            httpClientBuilder_.put(currentThread, builder);
+            builder.setHttpProcessor(new RequestHttpProcessor());
+            httpClientBuilder_ = builder;
         }
 
-        return builder;
+        return httpClientBuilder_;
     }
 
     /**
@@ -570,7 +570,6 @@ public class HttpWebConnection implements WebConnection {
 
         builder.setDefaultSocketConfig(createSocketConfigBuilder(timeout).build());
 
-        getHttpContext().removeAttribute(HttpClientContext.REQUEST_CONFIG);
         usedOptions_.setTimeout(timeout);
     }
 
@@ -594,12 +593,30 @@ public class HttpWebConnection implements WebConnection {
         return socketBuilder;
     }
 
+    /**
+     * Returns the client used for all requests. The client is built once, it is only rebuilt if the builder
+     * had to be reconfigured or the connection manager was replaced. The lock is held only while
+     * (re)configuring, the requests are executed concurrently.
+     */
+    private synchronized CloseableHttpClient getHttpClient() {
+        final HttpClientBuilder builder = getHttpClientBuilder();
+        final boolean reconfigured = reconfigureHttpClientIfNeeded(builder);
+
+        if (reconfigured || httpClient_ == null || httpClient_.builder_ != builder
+                || httpClient_.connectionManager_ != connectionManager_) {
+            httpClient_ = new BuiltHttpClient(builder, connectionManager_, builder.build());
+        }
+        return httpClient_.httpClient_;
+    }
+
     /**
      * React on changes that may have occurred on the WebClient settings.
      * Registering as a listener would be probably better.
+     * @return whether the builder was changed
      */
-    private HttpClientBuilder reconfigureHttpClientIfNeeded(final HttpClientBuilder httpClientBuilder) {
+    private boolean reconfigureHttpClientIfNeeded(final HttpClientBuilder httpClientBuilder) {
         final WebClientOptions options = webClient_.getOptions();
+        boolean reconfigured = false;
 
         // register new SSL factory only if settings have changed
         if (options.isUseInsecureSSL() != usedOptions_.isUseInsecureSSL()
@@ -609,6 +626,7 @@ public class HttpWebConnection implements WebConnection {
                 || options.getSSLClientProtocols() != usedOptions_.getSSLClientProtocols()
                 || options.getProxyConfig() != usedOptions_.getProxyConfig()) {
             configureHttpsScheme(httpClientBuilder);
+            reconfigured = true;
 
             if (connectionManager_ != null) {
                 connectionManager_.shutdown();
@@ -619,6 +637,7 @@ public class HttpWebConnection implements WebConnection {
         final int timeout = getTimeout();
         if (timeout != usedOptions_.getTimeout()) {
             configureTimeout(httpClientBuilder, timeout);
+            reconfigured = true;
         }
 
         if (connectionManager_ == null) {
@@ -626,7 +645,7 @@ public class HttpWebConnection implements WebConnection {
         }
         httpClientBuilder.setConnectionManager(connectionManager_);
 
-        return httpClientBuilder;
+        return reconfigured;
     }
 
     private void configureHttpsScheme(final HttpClientBuilder builder) {
@@ -645,7 +664,7 @@ public class HttpWebConnection implements WebConnection {
         usedOptions_.setProxyConfig(options.getProxyConfig());
     }
 
-    private void configureHttpProcessorBuilder(final HttpClientBuilder builder, final WebRequest webRequest) {
+    private HttpProcessor createHttpProcessor(final WebRequest webRequest) {
         final HttpProcessorBuilder b = HttpProcessorBuilder.create();
         for (final HttpRequestInterceptor i : getHttpRequestInterceptors(webRequest)) {
             b.add(i);
@@ -660,7 +679,47 @@ public class HttpWebConnection implements WebConnection {
         b.add(new RequestAcceptEncoding());
         b.add(new RequestAuthCache());
         b.add(new ResponseProcessCookies());
-        builder.setHttpProcessor(b.build());
+        return b.build();
+    }
+
+    /**
+     * The processor of the built clients. The request headers are added by the processor created for
+     * every request (see {@link #createHttpProcessor(WebRequest)}), stored in the context of the request;
+     * this way the clients don't depend on the request and can be reused.
+     */
+    private static final class RequestHttpProcessor implements HttpProcessor {
+
+        @Override
+        public void process(final HttpRequest request, final HttpContext context)
+                throws HttpException, IOException {
+            getHttpProcessor(context).process(request, context);
+        }
+
+        @Override
+        public void process(final HttpResponse response, final HttpContext context)
+                throws HttpException, IOException {
+            getHttpProcessor(context).process(response, context);
+        }
+
+        private static HttpProcessor getHttpProcessor(final HttpContext context) {
+            return (HttpProcessor) context.getAttribute(HTTP_PROCESSOR);
+        }
+    }
+
+    /**
+     * A client together with the builder and the connection manager it was built with.
+     */
+    private static final class BuiltHttpClient {
+        private final HttpClientBuilder builder_;
+        private final PoolingHttpClientConnectionManager connectionManager_;
+        private final CloseableHttpClient httpClient_;
+
+        BuiltHttpClient(final HttpClientBuilder builder, final PoolingHttpClientConnectionManager connectionManager,
+                final CloseableHttpClient httpClient) {
+            builder_ = builder;
+            connectionManager_ = connectionManager;
+            httpClient_ = httpClient;
+        }
     }
 
     /**
@@ -1012,8 +1071,9 @@ public class HttpWebConnection implements WebConnection {
      * {@inheritDoc}
      */
     @Override
-    public void close() {
-        httpClientBuilder_.clear();
+    public synchronized void close() {
+        httpClientBuilder_ = null;
+        httpClient_ = null;
 
         if (connectionManager_ != null) {
             connectionManager_.shutdown();
@@ -14,12 +14,15 @@
  */
 package com.gargoylesoftware.htmlunit;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.xpath.XPathContext;
 import org.w3c.dom.CDATASection;
 import org.w3c.dom.Comment;
 import org.w3c.dom.DOMException;
@@ -55,6 +58,9 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     private final WebResponse webResponse_;
     private WebWindow enclosingWindow_;
     private final WebClient webClient_;
+    private transient int domChangeCount_;
+    private transient XPathContext xpathContext_;
+    private transient int xpathContextChangeCount_;
 
     /**
      * Creates an instance of SgmlPage.
@@ -74,7 +80,9 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
      */
     @Override
     public void cleanUp() {
-        if (getWebClient().getCache().getCachedResponse(webResponse_.getWebRequest()) == null) {
+        final Cache cache = getWebClient().getCache();
+        final WebRequest webRequest = webResponse_.getWebRequest();
+        if (cache.getCachedResponse(webRequest) == null && cache.getRevalidatableResponse(webRequest) == null) {
             webResponse_.cleanUp();
         }
     }
@@ -203,6 +211,58 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
         return (DomElement) childNode;
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns a counter incremented whenever a node of this page is added or removed, an attribute is added
+     * or removed or some character data is changed. Data derived from the DOM can be reused as long as
+     * the counter doesn't change.
+     * @return the counter
+     */
+    public int getDomChangeCount() {
+        return domChangeCount_;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Increments the {@link #getDomChangeCount() DOM change counter}.
+     */
+    public void notifyDomChanged() {
+        domChangeCount_++;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Removes the XPath context cached for this page and returns it. The cached context is dropped
+     * if the DOM was changed since it was cached.
+     * @return the cached context or {@code null}
+     */
+    public synchronized XPathContext takeXPathContext() {
+        final XPathContext context = xpathContext_;
+        xpathContext_ = null;
+        if (context == null || xpathContextChangeCount_ != domChangeCount_) {
+            return null;
+        }
+        return context;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Caches the XPath context (and the DTM built by it) for the next XPath evaluation.
+     * @param context the context
+     * @param domChangeCount the {@link #getDomChangeCount() DOM change counter} when the context was created
+     *        or taken from the cache; the context is not cached if the DOM was changed since then
+     */
+    public synchronized void cacheXPathContext(final XPathContext context, final int domChangeCount) {
+        if (domChangeCount == domChangeCount_) {
+            xpathContext_ = context;
+            xpathContextChangeCount_ = domChangeCount;
+        }
+    }
+
     /**
      * Creates a clone of this instance.
      * @return a clone of this instance
@@ -211,6 +271,7 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
     protected SgmlPage clone() {
         try {
             final SgmlPage result = (SgmlPage) super.clone();
+            result.xpathContext_ = null;
             return result;
         }
         catch (final CloneNotSupportedException e) {
@@ -230,6 +291,17 @@ public abstract class SgmlPage extends DomNode implements Page, Document, Docume
         return documentElement.asXml();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void asXml(final Writer writer) throws IOException {
+        final DomElement documentElement = getDocumentElement();
+        if (documentElement != null) {
+            documentElement.asXml(writer);
+        }
+    }
+
     /**
      * Returns {@code true} if this page has case-sensitive tag names, {@code false} otherwise. In general,
      * XML has case-sensitive tag names, and HTML doesn't. This is especially important during XPath matching.
@@ -47,7 +47,10 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.lang3.StringUtils;
@@ -79,6 +82,7 @@ import com.gargoylesoftware.htmlunit.javascript.AbstractJavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.DefaultJavaScriptErrorListener;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptErrorListener;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptClock;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.host.Location;
 import com.gargoylesoftware.htmlunit.javascript.host.Window;
@@ -94,6 +98,7 @@ import com.gargoylesoftware.htmlunit.util.MimeType;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
 import com.gargoylesoftware.htmlunit.util.TextUtils;
 import com.gargoylesoftware.htmlunit.util.UrlUtils;
+import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
 import com.gargoylesoftware.htmlunit.webstart.WebStartHandler;
 
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
@@ -180,6 +185,8 @@ public class WebClient implements Serializable, AutoCloseable {
     private CSSErrorHandler cssErrorHandler_ = new DefaultCssErrorHandler();
     private OnbeforeunloadHandler onbeforeunloadHandler_;
     private Cache cache_ = new Cache();
+    private transient Map<String, Preload> preloads_ = new HashMap<>();
+    private JavaScriptClock javaScriptClock_ = new JavaScriptClock();
 
     /** target "_blank". */
     private static final String TARGET_BLANK = "_blank";
@@ -1329,6 +1336,182 @@ public class WebClient implements Serializable, AutoCloseable {
         }
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Starts loading the response for the specified GET request in the background (using the
+     * {@link WebConnectionExecutor}). A later {@link #loadWebResponse(WebRequest)} for the same URL with
+     * the same headers uses this response instead of making the request again.
+     *
+     * <p>The background thread only sends a private copy of the request through the {@link WebConnection};
+     * the copy is prepared (url encoding, proxy, default headers) by the calling thread. Everything else
+     * happens when the response is used: the cache is updated and redirects are followed by the thread
+     * loading the response, exactly as for responses not preloaded. Preloads never used are discarded
+     * without touching the cache. Nothing is preloaded if the cache already holds a response for the URL.</p>
+     *
+     * @param webRequest the request
+     * @see WebClientOptions#setPreloadEnabled(boolean)
+     */
+    public void preloadWebResponse(final WebRequest webRequest) {
+        final String protocol = webRequest.getUrl().getProtocol();
+        if (!"http".equals(protocol) && !"https".equals(protocol)) {
+            return;
+        }
+
+        final Preload preload;
+        try {
+            final WebRequest request = Preload.copy(webRequest);
+            prepareWebRequest(request);
+            if (getCache().getCachedResponse(request) != null
+                    || getCache().getRevalidatableResponse(request) != null) {
+                return;
+            }
+            preload = new Preload(webRequest, request);
+        }
+        catch (final IOException e) {
+            return;
+        }
+
+        synchronized (preloads_) {
+            if (preloads_.containsKey(preload.key_)) {
+                return;
+            }
+            preloads_.put(preload.key_, preload);
+        }
+
+        final WebConnection webConnection = getWebConnection();
+        try {
+            WebConnectionExecutor.getExecutor().execute(() -> {
+                try {
+                    preload.response_.complete(webConnection.getResponse(preload.request_));
+                }
+                catch (final Throwable e) {
+                    preload.response_.completeExceptionally(e);
+                }
+            });
+        }
+        catch (final RuntimeException e) {
+            discardPreloadedWebResponse(webRequest);
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Discards the response preloaded for the specified request if it was not used.
+     *
+     * @param webRequest the request passed to {@link #preloadWebResponse(WebRequest)}
+     */
+    public void discardPreloadedWebResponse(final WebRequest webRequest) {
+        Preload preload = null;
+        synchronized (preloads_) {
+            for (final Iterator<Preload> iter = preloads_.values().iterator(); iter.hasNext();) {
+                final Preload candidate = iter.next();
+                if (candidate.source_ == webRequest) {
+                    iter.remove();
+                    preload = candidate;
+                    break;
+                }
+            }
+        }
+        if (preload != null) {
+            preload.response_.thenAccept(WebResponse::cleanUp);
+        }
+    }
+
+    /**
+     * Returns the preloaded response for the prepared request, if there is one for the same URL and headers.
+     * If the preload failed, {@code null} is returned; the request is made again to report the error
+     * the usual way.
+     * @param webRequest the request, already prepared by {@link #prepareWebRequest(WebRequest)}
+     * @return the preloaded response or {@code null}
+     */
+    private WebResponse takePreloadedWebResponse(final WebRequest webRequest) {
+        final Preload preload;
+        synchronized (preloads_) {
+            if (preloads_.isEmpty()) {
+                return null;
+            }
+            final String key = Preload.getKey(webRequest.getUrl());
+            final Preload candidate = preloads_.get(key);
+            if (candidate == null || !candidate.matches(webRequest)) {
+                return null;
+            }
+            preload = preloads_.remove(key);
+        }
+
+        try {
+            return new WebResponseFromPreload(preload.response_.get(), webRequest);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            preload.response_.thenAccept(WebResponse::cleanUp);
+            return null;
+        }
+        catch (final ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A response loaded in the background for a private copy of the request.
+     */
+    private static final class Preload {
+        private final String key_;
+        private final WebRequest source_;
+        private final WebRequest request_;
+        private final CompletableFuture<WebResponse> response_ = new CompletableFuture<>();
+
+        Preload(final WebRequest source, final WebRequest request) {
+            key_ = getKey(request.getUrl());
+            source_ = source;
+            request_ = request;
+        }
+
+        static String getKey(final URL url) {
+            return url.toExternalForm();
+        }
+
+        static WebRequest copy(final WebRequest source) {
+            final WebRequest request = new WebRequest(source.getUrl(), HttpMethod.GET);
+            request.setAdditionalHeaders(new HashMap<>(source.getAdditionalHeaders()));
+            request.setCharset(source.getCharset());
+            request.setProxyHost(source.getProxyHost());
+            request.setProxyPort(source.getProxyPort());
+            request.setSocksProxy(source.isSocksProxy());
+            return request;
+        }
+
+        boolean matches(final WebRequest request) {
+            return request.getHttpMethod() == HttpMethod.GET
+                    && request.getRequestBody() == null
+                    && request.getRequestParameters().isEmpty()
+                    && request.getCredentials() == null
+                    && request_.getCharset().equals(request.getCharset())
+                    && Objects.equals(request_.getProxyHost(), request.getProxyHost())
+                    && request_.getProxyPort() == request.getProxyPort()
+                    && request_.isSocksProxy() == request.isSocksProxy()
+                    && request_.getAdditionalHeaders().equals(request.getAdditionalHeaders());
+        }
+    }
+
+    /**
+     * A preloaded response handed out for the request that asked for it.
+     */
+    private static final class WebResponseFromPreload extends WebResponseWrapper {
+        private final WebRequest request_;
+
+        WebResponseFromPreload(final WebResponse preloadedResponse, final WebRequest request) {
+            super(preloadedResponse);
+            request_ = request;
+        }
+
+        @Override
+        public WebRequest getWebRequest() {
+            return request_;
+        }
+    }
+
     /**
      * Loads a {@link WebResponse} from the server through the WebConnection.
      * @param webRequest the request
@@ -1347,57 +1530,13 @@ public class WebClient implements Serializable, AutoCloseable {
         WebAssert.notNull("method", method);
         WebAssert.notNull("parameters", parameters);
 
-        url = UrlUtils.encodeUrl(url, getBrowserVersion().hasFeature(URL_MINIMAL_QUERY_ENCODING),
-                                        webRequest.getCharset());
-        webRequest.setUrl(url);
+        prepareWebRequest(webRequest);
+        url = webRequest.getUrl();
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Load response for " + method + " " + url.toExternalForm());
         }
 
-        // If the request settings don't specify a custom proxy, use the default client proxy...
-        if (webRequest.getProxyHost() == null) {
-            final ProxyConfig proxyConfig = getOptions().getProxyConfig();
-            if (proxyConfig.getProxyAutoConfigUrl() != null) {
-                if (!UrlUtils.sameFile(new URL(proxyConfig.getProxyAutoConfigUrl()), url)) {
-                    String content = proxyConfig.getProxyAutoConfigContent();
-                    if (content == null) {
-                        content = getPage(proxyConfig.getProxyAutoConfigUrl())
-                            .getWebResponse().getContentAsString();
-                        proxyConfig.setProxyAutoConfigContent(content);
-                    }
-                    final String allValue = ProxyAutoConfig.evaluate(content, url);
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Proxy Auto-Config: value '" + allValue + "' for URL " + url);
-                    }
-                    String value = allValue.split(";")[0].trim();
-                    if (value.startsWith("PROXY")) {
-                        value = value.substring(6);
-                        final int colonIndex = value.indexOf(':');
-                        webRequest.setSocksProxy(false);
-                        webRequest.setProxyHost(value.substring(0, colonIndex));
-                        webRequest.setProxyPort(Integer.parseInt(value.substring(colonIndex + 1)));
-                    }
-                    else if (value.startsWith("SOCKS")) {
-                        value = value.substring(6);
-                        final int colonIndex = value.indexOf(':');
-                        webRequest.setSocksProxy(true);
-                        webRequest.setProxyHost(value.substring(0, colonIndex));
-                        webRequest.setProxyPort(Integer.parseInt(value.substring(colonIndex + 1)));
-                    }
-                }
-            }
-            // ...unless the host needs to bypass the configured client proxy!
-            else if (!proxyConfig.shouldBypassProxy(webRequest.getUrl().getHost())) {
-                webRequest.setProxyHost(proxyConfig.getProxyHost());
-                webRequest.setProxyPort(proxyConfig.getProxyPort());
-                webRequest.setSocksProxy(proxyConfig.isSocksProxy());
-            }
-        }
-
-        // Add the headers that are sent with every request.
-        addDefaultHeaders(webRequest);
-
         // Retrieve the response, either from the cache or from the server.
         final WebResponse fromCache = getCache().getCachedResponse(webRequest);
         final WebResponse webResponse;
@@ -1405,11 +1544,17 @@ public class WebClient implements Serializable, AutoCloseable {
             webResponse = new WebResponseFromCache(fromCache, webRequest);
         }
         else {
-            try {
-                webResponse = getWebConnection().getResponse(webRequest);
+            final WebResponse preloaded = takePreloadedWebResponse(webRequest);
+            if (preloaded != null) {
+                webResponse = preloaded;
             }
-            catch (final NoHttpResponseException e) {
-                return new WebResponse(responseDataNoHttpResponse_, webRequest, 0);
+            else {
+                try {
+                    webResponse = getResponseRevalidatingCache(webRequest);
+                }
+                catch (final NoHttpResponseException e) {
+                    return new WebResponse(responseDataNoHttpResponse_, webRequest, 0);
+                }
             }
         }
 
@@ -1479,12 +1624,118 @@ public class WebClient implements Serializable, AutoCloseable {
             }
         }
 
-        if (fromCache == null) {
+        if (!(webResponse instanceof WebResponseFromCache)) {
             getCache().cacheIfPossible(webRequest, webResponse, null);
         }
         return webResponse;
     }
 
+    /**
+     * Encodes the url of the request and sets the proxy and the headers sent with every request.
+     * @param webRequest the request to modify
+     * @throws IOException if the proxy auto-config can't be loaded
+     */
+    private void prepareWebRequest(final WebRequest webRequest) throws IOException {
+        final URL url = UrlUtils.encodeUrl(webRequest.getUrl(),
+                getBrowserVersion().hasFeature(URL_MINIMAL_QUERY_ENCODING), webRequest.getCharset());
+        webRequest.setUrl(url);
+
+        // If the request settings don't specify a custom proxy, use the default client proxy...
+        if (webRequest.getProxyHost() == null) {
+            final ProxyConfig proxyConfig = getOptions().getProxyConfig();
+            if (proxyConfig.getProxyAutoConfigUrl() != null) {
+                if (!UrlUtils.sameFile(new URL(proxyConfig.getProxyAutoConfigUrl()), url)) {
+                    String content = proxyConfig.getProxyAutoConfigContent();
+                    if (content == null) {
+                        content = getPage(proxyConfig.getProxyAutoConfigUrl())
+                            .getWebResponse().getContentAsString();
+                        proxyConfig.setProxyAutoConfigContent(content);
+                    }
+                    final String allValue = ProxyAutoConfig.evaluate(content, url);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Proxy Auto-Config: value '" + allValue + "' for URL " + url);
+                    }
+                    String value = allValue.split(";")[0].trim();
+                    if (value.startsWith("PROXY")) {
+                        value = value.substring(6);
+                        final int colonIndex = value.indexOf(':');
+                        webRequest.setSocksProxy(false);
+                        webRequest.setProxyHost(value.substring(0, colonIndex));
+                        webRequest.setProxyPort(Integer.parseInt(value.substring(colonIndex + 1)));
+                    }
+                    else if (value.startsWith("SOCKS")) {
+                        value = value.substring(6);
+                        final int colonIndex = value.indexOf(':');
+                        webRequest.setSocksProxy(true);
+                        webRequest.setProxyHost(value.substring(0, colonIndex));
+                        webRequest.setProxyPort(Integer.parseInt(value.substring(colonIndex + 1)));
+                    }
+                }
+            }
+            // ...unless the host needs to bypass the configured client proxy!
+            else if (!proxyConfig.shouldBypassProxy(webRequest.getUrl().getHost())) {
+                webRequest.setProxyHost(proxyConfig.getProxyHost());
+                webRequest.setProxyPort(proxyConfig.getProxyPort());
+                webRequest.setSocksProxy(proxyConfig.isSocksProxy());
+            }
+        }
+
+        // Add the headers that are sent with every request.
+        addDefaultHeaders(webRequest);
+    }
+
+    /**
+     * Retrieves the response from the server. If the cache holds a stale response carrying
+     * a validator, a conditional request (<tt>If-None-Match</tt> / <tt>If-Modified-Since</tt>) is sent
+     * and the cached content is used if the server answers with <tt>304 Not Modified</tt>.
+     * @param webRequest the request
+     * @return the response
+     * @throws IOException if an IO problem occurs
+     */
+    private WebResponse getResponseRevalidatingCache(final WebRequest webRequest) throws IOException {
+        final Cache cache = getCache();
+        final WebResponse stale = cache.getRevalidatableResponse(webRequest);
+        if (stale == null
+                || webRequest.isAdditionalHeader(HttpHeader.IF_NONE_MATCH)
+                || webRequest.isAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE)) {
+            // the caller asked for a conditional request on its own
+            return getWebConnection().getResponse(webRequest);
+        }
+
+        final String etag = stale.getResponseHeaderValue(HttpHeader.ETAG);
+        if (etag != null) {
+            webRequest.setAdditionalHeader(HttpHeader.IF_NONE_MATCH, etag);
+        }
+        final String lastModified = stale.getResponseHeaderValue(HttpHeader.LAST_MODIFIED);
+        if (lastModified != null) {
+            webRequest.setAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        final WebResponse webResponse;
+        try {
+            webResponse = getWebConnection().getResponse(webRequest);
+        }
+        finally {
+            webRequest.removeAdditionalHeader(HttpHeader.IF_NONE_MATCH);
+            webRequest.removeAdditionalHeader(HttpHeader.IF_MODIFIED_SINCE);
+        }
+
+        if (webResponse.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            final WebResponse revalidated = cache.revalidate(webRequest, webResponse);
+            webResponse.cleanUp();
+            if (revalidated != null) {
+                return new WebResponseFromCache(revalidated, webRequest);
+            }
+            // the stored response was evicted in the meantime, the 304 has nothing to refer to
+            return getWebConnection().getResponse(webRequest);
+        }
+        else {
+            // the stored response is outdated; the new one replaces it if cacheable
+            cache.removeRevalidatableResponse(webRequest);
+        }
+        return webResponse;
+    }
+
     /**
      * Adds the headers that are sent with every request to the specified {@link WebRequest} instance.
      * @param wrs the <tt>WebRequestSettings</tt> instance to modify
@@ -1806,6 +2057,25 @@ public class WebClient implements Serializable, AutoCloseable {
         cache_ = cache;
     }
 
+    /**
+     * Returns the clock used to schedule the JavaScript jobs.
+     * @return the clock
+     */
+    public JavaScriptClock getJavaScriptClock() {
+        return javaScriptClock_;
+    }
+
+    /**
+     * Sets the clock used to schedule the JavaScript jobs.
+     * @param javaScriptClock the new clock (must not be {@code null})
+     */
+    public void setJavaScriptClock(final JavaScriptClock javaScriptClock) {
+        if (javaScriptClock == null) {
+            throw new IllegalArgumentException("javaScriptClock should not be null!");
+        }
+        javaScriptClock_ = javaScriptClock;
+    }
+
     /**
      * Keeps track of the current window. Inspired by WebTest's logic to track the current response.
      */
@@ -1908,6 +2178,17 @@ public class WebClient implements Serializable, AutoCloseable {
      */
     @Override
     public void close() {
+        // stop the background jobs first, a job running while the windows are closed may
+        // add frames or windows; the unload handlers don't start the event loop again
+        if (scriptEngine_ != null) {
+            try {
+                scriptEngine_.stopEventLoop();
+            }
+            catch (final Exception e) {
+                LOG.error("Exception while stopping the event loop", e);
+            }
+        }
+
         // NB: this implementation is too simple as a new TopLevelWindow may be opened by
         // some JS script while we are closing the others
         final List<TopLevelWindow> topWindows = new ArrayList<>(topLevelWindows_);
@@ -1940,6 +2221,15 @@ public class WebClient implements Serializable, AutoCloseable {
             LOG.error("Exception while closing the connection", e);
         }
 
+        final List<Preload> preloads;
+        synchronized (preloads_) {
+            preloads = new ArrayList<>(preloads_.values());
+            preloads_.clear();
+        }
+        for (final Preload preload : preloads) {
+            preload.response_.thenAccept(WebResponse::cleanUp);
+        }
+
         cache_.clear();
     }
 
@@ -2087,6 +2377,7 @@ public class WebClient implements Serializable, AutoCloseable {
         scriptEngine_ = new JavaScriptEngine(this);
         jobManagers_ = Collections.synchronizedList(new ArrayList<WeakReference<JavaScriptJobManager>>());
         loadQueue_ = new ArrayList<>();
+        preloads_ = new HashMap<>();
 
         if (getBrowserVersion().hasFeature(JS_XML_SUPPORT_VIA_ACTIVEXOBJECT)) {
             initMSXMLActiveX();
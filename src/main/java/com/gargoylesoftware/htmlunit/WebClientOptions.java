@@ -30,6 +30,7 @@ import java.security.KeyStore;
 public class WebClientOptions implements Serializable {
 
     private boolean javaScriptEnabled_ = true;
+    private boolean javaScriptOptimized_;
     private boolean cssEnabled_ = true;
     private boolean printContentOnFailingStatusCode_ = true;
     private boolean throwExceptionOnFailingStatusCode_ = true;
@@ -56,6 +57,7 @@ public class WebClientOptions implements Serializable {
     private int historyPageCacheLimit_ = Integer.MAX_VALUE;
     private InetAddress localAddress_;
     private boolean downloadImages_;
+    private boolean preloadEnabled_;
     private int screenWidth_ = 1024;
     private int screenHeight_ = 768;
 
@@ -228,6 +230,28 @@ public class WebClientOptions implements Serializable {
         return javaScriptEnabled_;
     }
 
+    /**
+     * Enables/disables the compilation of JavaScript to JVM byte code. By default scripts are executed
+     * by the interpreter of Rhino; compiled scripts are usually several times faster but the compilation
+     * itself is more expensive, this pays off for CPU intensive scripts.
+     * The {@link WebClient#setJavaScriptTimeout(long) JavaScript timeout} is enforced in both modes.
+     * If a JavaScript debugger is in use, the interpreter is always used.
+     *
+     * @param enabled {@code true} to compile JavaScript to JVM byte code
+     */
+    public void setJavaScriptOptimized(final boolean enabled) {
+        javaScriptOptimized_ = enabled;
+    }
+
+    /**
+     * Returns {@code true} if JavaScript gets compiled to JVM byte code.
+     *
+     * @return {@code true} if JavaScript gets compiled to JVM byte code
+     */
+    public boolean isJavaScriptOptimized() {
+        return javaScriptOptimized_;
+    }
+
     /**
      * Enables/disables CSS support. By default, this property is enabled.
      * If disabled HtmlUnit will not download the linked css files and also
@@ -620,6 +644,24 @@ public class WebClientOptions implements Serializable {
         return downloadImages_;
     }
 
+    /**
+     * Sets whether the scripts, style sheets and (if {@link #isDownloadImages()}) images referenced by
+     * a page are requested in parallel, before the parser reaches them. The scripts are still
+     * executed in document order. The default is {@code false}.
+     * @param preloadEnabled whether to preload the resources of pages
+     */
+    public void setPreloadEnabled(final boolean preloadEnabled) {
+        preloadEnabled_ = preloadEnabled;
+    }
+
+    /**
+     * Returns whether the resources referenced by pages are requested in parallel, before they are needed.
+     * @return whether to preload the resources of pages
+     */
+    public boolean isPreloadEnabled() {
+        return preloadEnabled_;
+    }
+
     /**
      * Sets the screen width.
      *
@@ -15,6 +15,7 @@
 package com.gargoylesoftware.htmlunit;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An object which handles the actual communication portion of page retrieval/submission.
@@ -34,6 +35,17 @@ public interface WebConnection extends AutoCloseable {
      */
     WebResponse getResponse(WebRequest request) throws IOException;
 
+    /**
+     * Submits a request without waiting for the response.
+     * The default implementation calls {@link #getResponse(WebRequest)} on a thread of the
+     * {@link WebConnectionExecutor}, so the connection has to support concurrent requests.
+     * @param request the request
+     * @return the future response, completed exceptionally with the exception thrown by the connection
+     */
+    default CompletableFuture<WebResponse> getResponseAsync(final WebRequest request) {
+        return WebConnectionExecutor.getResponseAsync(this, request);
+    }
+
     @Override
     void close() throws IOException;
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking {@link WebConnection#getResponse(WebRequest)} of connections without a non-blocking
+ * implementation on a shared pool of daemon threads; this is the default implementation of
+ * {@link WebConnection#getResponseAsync(WebRequest)}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class WebConnectionExecutor {
+
+    private static ExecutorService Executor_;
+
+    private WebConnectionExecutor() {
+    }
+
+    /**
+     * Returns the executor shared by all connections. The default one creates threads as needed
+     * and removes them after being idle for a minute.
+     * @return the executor
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (Executor_ == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            Executor_ = Executors.newCachedThreadPool(r -> {
+                final Thread thread = new Thread(r, "HtmlUnit web connection " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return Executor_;
+    }
+
+    /**
+     * Sets the executor shared by all connections (e.g. one creating virtual threads).
+     * The previous executor is not shut down.
+     * @param executor the new executor
+     */
+    public static synchronized void setExecutor(final ExecutorService executor) {
+        Executor_ = executor;
+    }
+
+    /**
+     * Calls {@link WebConnection#getResponse(WebRequest)} on a thread of the executor.
+     * @param connection the connection
+     * @param request the request
+     * @return the response, completed exceptionally with the exception thrown by the connection
+     */
+    public static CompletableFuture<WebResponse> getResponseAsync(final WebConnection connection,
+            final WebRequest request) {
+        final CompletableFuture<WebResponse> future = new CompletableFuture<>();
+        try {
+            getExecutor().execute(() -> {
+                try {
+                    future.complete(connection.getResponse(request));
+                }
+                catch (final Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
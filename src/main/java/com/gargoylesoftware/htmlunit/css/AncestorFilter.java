@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * A counting Bloom filter of the tag names, ids and class names of the ancestors of an element.
+ *
+ * <p>Descendant and child selectors are evaluated by walking up the parent chain for every rule and element.
+ * The filter knows (with a small rate of false positives) which tag names, ids and classes occur in the chain;
+ * {@link #mayMatch(Selector)} uses this to reject a selector requiring an ancestor that can't exist without
+ * walking the chain at all. While walking the tree, elements are {@link #push(DomElement) pushed}
+ * before visiting their children and {@link #pop() popped} afterwards.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class AncestorFilter {
+
+    private static final int BITS = 11;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final int TAG_SALT = 13;
+    private static final int ID_SALT = 17;
+    private static final int CLASS_SALT = 19;
+
+    private final byte[] counters_ = new byte[1 << BITS];
+    private final Deque<int[]> pushed_ = new ArrayDeque<>();
+
+    /**
+     * Returns a filter containing the specified node (if it is an element) and all its ancestor elements.
+     * @param node the node, may be {@code null}
+     * @return the filter
+     */
+    public static AncestorFilter of(final DomNode node) {
+        final AncestorFilter filter = new AncestorFilter();
+        for (DomNode ancestor = node; ancestor != null; ancestor = ancestor.getParentNode()) {
+            if (ancestor instanceof DomElement) {
+                filter.push((DomElement) ancestor);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Adds the tag name, id and classes of the element.
+     * @param element the element
+     */
+    public void push(final DomElement element) {
+        final List<Integer> hashes = new ArrayList<>();
+        hashes.add(hash(TAG_SALT, element.getLowercaseName()));
+
+        final String id = element.getAttributeDirect("id");
+        if (!id.isEmpty()) {
+            hashes.add(hash(ID_SALT, id));
+        }
+
+        final String classAttribute = element.getAttributeDirect("class");
+        if (!classAttribute.isEmpty()) {
+            for (final String className : StringUtils.split(classAttribute)) {
+                hashes.add(hash(CLASS_SALT, className));
+            }
+        }
+
+        final int[] pushed = new int[hashes.size()];
+        for (int i = 0; i < pushed.length; i++) {
+            pushed[i] = hashes.get(i);
+            increment(pushed[i] & MASK);
+            increment((pushed[i] >>> BITS) & MASK);
+        }
+        pushed_.push(pushed);
+    }
+
+    /**
+     * Removes the element added last.
+     */
+    public void pop() {
+        for (final int hash : pushed_.pop()) {
+            decrement(hash & MASK);
+            decrement((hash >>> BITS) & MASK);
+        }
+    }
+
+    /**
+     * Returns {@code false} if the selector definitely doesn't match any element whose ancestors are
+     * the ones of this filter, because some tag name, id or class required for an ancestor is missing.
+     * Returns {@code true} if the selector has to be evaluated.
+     * @param selector the selector
+     * @return whether the selector may match
+     */
+    public boolean mayMatch(final Selector selector) {
+        return mayMatch(selector, false);
+    }
+
+    private boolean mayMatch(final Selector selector, final boolean ancestor) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                return !ancestor || mayContain((ElementSelector) selector);
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                // 'div::before' is a descendant selector, but the 'div' is the element itself
+                final boolean pseudoElement =
+                        ds.getSimpleSelector().getSelectorType() == SelectorType.PSEUDO_ELEMENT_SELECTOR;
+                return mayMatch(ds.getSimpleSelector(), ancestor)
+                        && mayMatch(ds.getAncestorSelector(), ancestor || !pseudoElement);
+
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                return mayMatch(cs.getSimpleSelector(), ancestor)
+                        && mayMatch(cs.getAncestorSelector(), true);
+
+            case DIRECT_ADJACENT_SELECTOR:
+                // siblings are no ancestors, but the ancestors of the siblings are
+                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
+                return mayMatch(das.getSimpleSelector(), ancestor)
+                        && mayMatch(das.getSelector(), false);
+
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
+                return mayMatch(gas.getSimpleSelector(), ancestor)
+                        && mayMatch(gas.getSelector(), false);
+
+            default:
+                return true;
+        }
+    }
+
+    private boolean mayContain(final ElementSelector selector) {
+        final String name = selector.getLocalNameLowerCase();
+        if (name != null && !mayContain(hash(TAG_SALT, name))) {
+            return false;
+        }
+
+        final List<Condition> conditions = selector.getConditions();
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                switch (condition.getConditionType()) {
+                    case ID_CONDITION:
+                        if (!mayContain(hash(ID_SALT, condition.getValue()))) {
+                            return false;
+                        }
+                        break;
+
+                    case CLASS_CONDITION:
+                        final String className = condition.getValue();
+                        // escaped class names are compared after unescaping
+                        if (className.indexOf('\\') == -1 && !mayContain(hash(CLASS_SALT, className))) {
+                            return false;
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean mayContain(final int hash) {
+        return counters_[hash & MASK] != 0 && counters_[(hash >>> BITS) & MASK] != 0;
+    }
+
+    private void increment(final int index) {
+        // a saturated counter is never decremented again
+        if (counters_[index] != Byte.MAX_VALUE) {
+            counters_[index]++;
+        }
+    }
+
+    private void decrement(final int index) {
+        if (counters_[index] != Byte.MAX_VALUE) {
+            counters_[index]--;
+        }
+    }
+
+    private static int hash(final int salt, final String value) {
+        final int hash = value.hashCode() * salt;
+        return hash ^ (hash >>> 16) ^ (hash << 5);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.util.LruCache;
+
+/**
+ * A process wide cache of parsed and validated selectors, used by
+ * {@link com.gargoylesoftware.htmlunit.html.DomNode#querySelectorAll(String)} and friends.
+ * The selectors are keyed by the selector text, the {@link BrowserVersion} and the document mode
+ * (the validation depends on both).
+ *
+ * <p>The cached {@link SelectorList}s are shared between pages and threads and must not be modified.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class SelectorListCache {
+
+    private static final SelectorListCache INSTANCE = new SelectorListCache();
+
+    private final LruCache<Key, SelectorList> entries_ = new LruCache<>(1000);
+
+    private static final class Key {
+        private final BrowserVersion browserVersion_;
+        private final int documentMode_;
+        private final String selectors_;
+
+        Key(final BrowserVersion browserVersion, final int documentMode, final String selectors) {
+            browserVersion_ = browserVersion;
+            documentMode_ = documentMode;
+            selectors_ = selectors;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return browserVersion_ == other.browserVersion_
+                    && documentMode_ == other.documentMode_
+                    && selectors_.equals(other.selectors_);
+        }
+
+        @Override
+        public int hashCode() {
+            return selectors_.hashCode() * 31 + documentMode_;
+        }
+    }
+
+    private SelectorListCache() {
+    }
+
+    /**
+     * Returns the (process wide) instance.
+     * @return the instance
+     */
+    public static SelectorListCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached selector list.
+     * @param browserVersion the browser version
+     * @param documentMode the document mode used for validation
+     * @param selectors the selector text
+     * @return the cached selector list or {@code null}
+     */
+    public SelectorList get(final BrowserVersion browserVersion, final int documentMode, final String selectors) {
+        return entries_.get(new Key(browserVersion, documentMode, selectors));
+    }
+
+    /**
+     * Adds a parsed and validated selector list to the cache.
+     * @param browserVersion the browser version
+     * @param documentMode the document mode used for validation
+     * @param selectors the selector text
+     * @param selectorList the selector list
+     */
+    public void put(final BrowserVersion browserVersion, final int documentMode, final String selectors,
+            final SelectorList selectorList) {
+        entries_.put(new Key(browserVersion, documentMode, selectors), selectorList);
+    }
+
+    /**
+     * Returns the maximum number of selector lists kept; the default is <tt>1000</tt>.
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        return entries_.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of selector lists kept, <tt>0</tt> disables the cache.
+     * @param maxSize the maximum size (must be &gt;= 0)
+     */
+    public void setMaxSize(final int maxSize) {
+        entries_.setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the number of cached selector lists.
+     * @return the size
+     */
+    public int getSize() {
+        return entries_.getSize();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return entries_.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return entries_.getMissCount();
+    }
+
+    /**
+     * Removes all selector lists and resets the statistics.
+     */
+    public void clear() {
+        entries_.clear();
+    }
+}
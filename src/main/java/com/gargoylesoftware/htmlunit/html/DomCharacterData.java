@@ -61,6 +61,10 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
     public void setData(final String data) {
         final String oldData = data_;
         data_ = data;
+        final SgmlPage page = getPage();
+        if (page != null) {
+            page.notifyDomChanged();
+        }
         fireCharacterDataChanged(new CharacterDataChangeEvent(this, oldData));
     }
 
@@ -407,7 +407,26 @@ public class DomElement extends DomNamespaceNode implements Element {
      */
     @Override
     public void removeAttribute(final String attributeName) {
+        final boolean mappedElement = isMappedElement(attributeName);
+        if (mappedElement) {
+            ((HtmlPage) getPage()).removeMappedElement(this);
+        }
         attributes_.remove(attributeName);
+        if (mappedElement) {
+            ((HtmlPage) getPage()).addMappedElement(this);
+        }
+    }
+
+    /**
+     * Indicates if the attribute affects the maps and indexes of the {@link HtmlPage} this element is attached to.
+     * {@link HtmlElement} takes care of this on its own.
+     * @param attributeName the attribute name
+     * @return {@code true} if the maps have to be updated
+     */
+    private boolean isMappedElement(final String attributeName) {
+        return !(this instanceof HtmlElement)
+                && isAttachedToPage()
+                && HtmlPage.isMappedElement(getOwnerDocument(), attributeName);
     }
 
     /**
@@ -501,6 +520,11 @@ public class DomElement extends DomNamespaceNode implements Element {
     protected void setAttributeNS(final String namespaceURI, final String qualifiedName,
             final String attributeValue, final boolean notifyAttributeChangeListeners,
             final boolean notifyMutationObservers) {
+        final boolean mappedElement = isMappedElement(qualifiedName);
+        if (mappedElement) {
+            ((HtmlPage) getPage()).removeMappedElement(this);
+        }
+
         final String value = attributeValue;
         final DomAttr newAttr = new DomAttr(getPage(), namespaceURI, qualifiedName, value, true);
         newAttr.setParentNode(this);
@@ -509,6 +533,10 @@ public class DomElement extends DomNamespaceNode implements Element {
         if (namespaceURI != null) {
             namespaces_.put(namespaceURI, newAttr.getPrefix());
         }
+
+        if (mappedElement) {
+            ((HtmlPage) getPage()).addMappedElement(this);
+        }
     }
 
     /**
@@ -604,6 +632,19 @@ public class DomElement extends DomNamespaceNode implements Element {
             @SuppressWarnings("unchecked")
             protected List<E> provideElements() {
                 final List<E> res = new LinkedList<>();
+                final DomNode domNode = getDomNode();
+                final HtmlPage page = domNode.getHtmlPageOrNull();
+                final List<DomElement> indexed = page == null ? null
+                        : page.getIndexedElementsByTagName(domNode, tagName);
+                if (indexed != null) {
+                    for (final DomElement elem : indexed) {
+                        if (elem instanceof HtmlElement && elem.getLocalName().equalsIgnoreCase(tagName)) {
+                            res.add((E) elem);
+                        }
+                    }
+                    return res;
+                }
+
                 for (final HtmlElement elem : getDomNode().getHtmlElementDescendants()) {
                     if (elem.getLocalName().equalsIgnoreCase(tagName)) {
                         res.add((E) elem);
@@ -1658,6 +1699,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     public DomAttr put(final String key, final DomAttr value) {
         final String name = fixName(key);
         dirty_ = true;
+        notifyDomChanged();
         return map_.put(name, value);
     }
 
@@ -1669,6 +1711,7 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
         if (key instanceof String) {
             final String name = fixName((String) key);
             dirty_ = true;
+            notifyDomChanged();
             return map_.remove(name);
         }
         return null;
@@ -1680,9 +1723,19 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     @Override
     public void clear() {
         dirty_ = true;
+        notifyDomChanged();
         map_.clear();
     }
 
+    private void notifyDomChanged() {
+        if (domNode_ != null) {
+            final SgmlPage page = domNode_.getPage();
+            if (page != null) {
+                page.notifyDomChanged();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
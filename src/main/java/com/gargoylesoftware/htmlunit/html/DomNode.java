@@ -16,14 +16,17 @@ package com.gargoylesoftware.htmlunit.html;
 
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.DOM_NORMALIZE_REMOVE_CHILDREN;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTORALL_NOT_IN_QUIRKS;
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.QUERYSELECTOR_CSS3_PSEUDO_REQUIRE_ATTACHED_NODE;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.XPATH_ATTRIBUTE_CASE_SENSITIVE;
 import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.XPATH_SELECTION_NAMESPACES;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -45,9 +48,14 @@ import com.gargoylesoftware.css.parser.CSSErrorHandler;
 import com.gargoylesoftware.css.parser.CSSException;
 import com.gargoylesoftware.css.parser.CSSOMParser;
 import com.gargoylesoftware.css.parser.CSSParseException;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.condition.Condition.ConditionType;
 import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
 import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
 import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.parser.selector.SimpleSelector;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.BrowserVersionFeatures;
 import com.gargoylesoftware.htmlunit.IncorrectnessListener;
@@ -55,16 +63,13 @@ import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.WebAssert;
 import com.gargoylesoftware.htmlunit.WebClient;
-import com.gargoylesoftware.htmlunit.WebClientOptions;
-import com.gargoylesoftware.htmlunit.html.HtmlElement.DisplayStyle;
+import com.gargoylesoftware.htmlunit.css.AncestorFilter;
+import com.gargoylesoftware.htmlunit.css.SelectorListCache;
 import com.gargoylesoftware.htmlunit.html.xpath.XPathHelper;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
-import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleDeclaration;
 import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleSheet;
-import com.gargoylesoftware.htmlunit.javascript.host.css.StyleAttributes;
 import com.gargoylesoftware.htmlunit.javascript.host.event.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLDocument;
-import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 import com.gargoylesoftware.htmlunit.xml.XmlPage;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
@@ -737,47 +742,8 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         if (!mayBeDisplayed()) {
             return false;
         }
-
-        final Page page = getPage();
-        final WebClientOptions options = page.getEnclosingWindow().getWebClient().getOptions();
-        if (page != null && options.isCssEnabled()) {
-            // display: iterate top to bottom, because if a parent is display:none,
-            // there's nothing that a child can do to override it
-            final List<Node> ancestors = getAncestors();
-            final ArrayList<CSSStyleDeclaration> styles = new ArrayList<>(ancestors.size());
-
-            for (final Node node : ancestors) {
-                if (node instanceof HtmlElement && ((HtmlElement) node).isHidden()) {
-                    return false;
-                }
-
-                final Object scriptableObject = ((DomNode) node).getScriptableObject();
-                if (scriptableObject instanceof HTMLElement) {
-                    final HTMLElement elem = (HTMLElement) scriptableObject;
-                    final CSSStyleDeclaration style = elem.getWindow().getComputedStyle(elem, null);
-                    if (DisplayStyle.NONE.value().equals(style.getDisplay())) {
-                        return false;
-                    }
-                    styles.add(style);
-                }
-            }
-
-            // visibility: iterate bottom to top, because children can override
-            // the visibility used by parent nodes
-            for (int i = styles.size() - 1; i >= 0; i--) {
-                final CSSStyleDeclaration style = styles.get(i);
-                final String visibility = style.getStyleAttribute(StyleAttributes.Definition.VISIBILITY);
-                if (visibility.length() > 5) {
-                    if ("visible".equals(visibility)) {
-                        return true;
-                    }
-                    if ("hidden".equals(visibility) || "collapse".equals(visibility)) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+        // during a pass over the tree (e.g. asText()) the styles of the ancestors are evaluated only once
+        return VisibilityEvaluator.current().isDisplayed(this);
     }
 
     /**
@@ -809,6 +775,23 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         return ser.asText(this);
     }
 
+    /**
+     * Writes the same text as {@link #asText()} returns to the specified writer. For HTML pages
+     * the text is written while traversing the tree; only a small part is buffered.
+     *
+     * @param writer the writer to write to; the writer is neither flushed nor closed
+     * @throws IOException in case of error
+     */
+    public void asText(final Writer writer) throws IOException {
+        if (getPage() instanceof XmlPage) {
+            writer.write(asText());
+            return;
+        }
+
+        final HtmlSerializer ser = new HtmlSerializer();
+        ser.asText(this, writer);
+    }
+
     /**
      * Returns a textual representation of this element in the same way as
      * the selenium/WebDriver WebElement#getText() property does.<br>
@@ -824,28 +807,60 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         return ser.asText(this);
     }
 
+    /**
+     * Writes the same text as {@link #getVisibleText()} returns to the specified writer.
+     * The text is written while traversing the tree; only a small part is buffered.
+     *
+     * @param writer the writer to write to; the writer is neither flushed nor closed
+     * @throws IOException in case of error
+     */
+    public void getVisibleText(final Writer writer) throws IOException {
+        final HtmlSerializerVisibleText ser = new HtmlSerializerVisibleText();
+        ser.asText(this, writer);
+    }
+
     /**
      * Returns a string representation of the XML document from this element and all it's children (recursively).
      * The charset used is the current page encoding.
      * @return the XML string
      */
     public String asXml() {
+        final StringWriter stringWriter = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(stringWriter)) {
+            printXmlDocument(printWriter);
+            return stringWriter.toString();
+        }
+    }
+
+    /**
+     * Writes the same XML as {@link #asXml()} returns to the specified writer. The XML is written
+     * while traversing the tree; only a small part is buffered.
+     *
+     * @param writer the writer to write to; the writer is flushed but not closed
+     * @throws IOException in case of error
+     */
+    public void asXml(final Writer writer) throws IOException {
+        final PrintWriter printWriter = new PrintWriter(new BufferedWriter(writer));
+        printXmlDocument(printWriter);
+        printWriter.flush();
+        if (printWriter.checkError()) {
+            throw new IOException("Failed to write the XML of " + getNodeName());
+        }
+    }
+
+    private void printXmlDocument(final PrintWriter printWriter) {
         Charset charsetName = null;
         final HtmlPage htmlPage = getHtmlPageOrNull();
         if (htmlPage != null) {
             charsetName = htmlPage.getCharset();
         }
 
-        final StringWriter stringWriter = new StringWriter();
-        try (PrintWriter printWriter = new PrintWriter(stringWriter)) {
-            if (charsetName != null && this instanceof HtmlHtml) {
-                printWriter.print("<?xml version=\"1.0\" encoding=\"");
-                printWriter.print(charsetName);
-                printWriter.print("\"?>\r\n");
-            }
-            printXml("", printWriter);
-            return stringWriter.toString();
+        if (charsetName != null && this instanceof HtmlHtml) {
+            printWriter.print("<?xml version=\"1.0\" encoding=\"");
+            printWriter.print(charsetName);
+            printWriter.print("\"?>\r\n");
         }
+        printXml("", printWriter);
     }
 
     /**
@@ -995,6 +1010,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     private void basicAppend(final DomNode node) {
         node.setPage(getPage());
+        domChanged();
         if (firstChild_ == null) {
             firstChild_ = node;
             firstChild_.previousSibling_ = node;
@@ -1067,6 +1083,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     private void basicInsertBefore(final DomNode node) {
         node.setPage(page_);
+        domChanged();
         if (parent_.firstChild_ == this) {
             parent_.firstChild_ = node;
         }
@@ -1079,6 +1096,13 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         node.parent_ = parent_;
     }
 
+    private void domChanged() {
+        final SgmlPage page = getPage();
+        if (page != null) {
+            page.notifyDomChanged();
+        }
+    }
+
     private void fireAddition(final DomNode domNode) {
         final boolean wasAlreadyAttached = domNode.isAttachedToPage();
         domNode.attachedToPage_ = isAttachedToPage();
@@ -1177,6 +1201,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * Cuts off all relationships this node has with siblings and parents.
      */
     protected void basicRemove() {
+        domChanged();
         if (parent_ != null && parent_.firstChild_ == this) {
             parent_.firstChild_ = nextSibling_;
         }
@@ -1652,13 +1677,9 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @see #getByXPath(String)
      * @see #getCanonicalXPath()
      */
-    @SuppressWarnings("unchecked")
     public <X> X getFirstByXPath(final String xpathExpr, final PrefixResolver resolver) {
-        final List<?> results = getByXPath(xpathExpr, resolver);
-        if (results.isEmpty()) {
-            return null;
-        }
-        return (X) results.get(0);
+        return XPathHelper.getFirstByXPath(this, xpathExpr, resolver,
+                hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE));
     }
 
     /**
@@ -1856,11 +1877,14 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
 
             final List<DomNode> elements = new ArrayList<>();
             if (selectorList != null) {
-                for (final DomElement child : getDomElementDescendants()) {
-                    for (Selector selector : selectorList) {
-                        if (CSSStyleSheet.selects(browserVersion, selector, child, null, true)) {
+                final Iterable<DomElement> candidates = getSelectorCandidates(selectorList);
+                if (candidates == null) {
+                    selectDescendants(browserVersion, selectorList, AncestorFilter.of(this), elements, false);
+                }
+                else {
+                    for (final DomElement child : candidates) {
+                        if (selects(browserVersion, selectorList, child)) {
                             elements.add(child);
-                            break;
                         }
                     }
                 }
@@ -1872,6 +1896,108 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         }
     }
 
+    /**
+     * Returns the descendants that have to be checked against the selectors, in document order.
+     * If the selector list consists of one selector requiring a specific id, class or tag name, the
+     * id map or the indexes of the page are used instead of walking the whole subtree.
+     * @param selectorList the selectors
+     * @return the candidates or {@code null} if the whole subtree has to be walked
+     */
+    private Iterable<DomElement> getSelectorCandidates(final SelectorList selectorList) {
+        final SgmlPage page = getPage();
+        if (selectorList.size() == 1 && page instanceof HtmlPage && (this == page || isAttachedToPage())) {
+            final HtmlPage htmlPage = (HtmlPage) page;
+            final SimpleSelector simpleSelector = selectorList.get(0).getSimpleSelector();
+            if (simpleSelector.getSelectorType() == SelectorType.ELEMENT_NODE_SELECTOR) {
+                final ElementSelector elementSelector = (ElementSelector) simpleSelector;
+                final List<Condition> conditions = elementSelector.getConditions();
+                if (conditions != null) {
+                    for (final Condition condition : conditions) {
+                        if (condition.getConditionType() == ConditionType.ID_CONDITION) {
+                            final List<DomElement> candidates = new ArrayList<>();
+                            for (final DomElement element : htmlPage.getElementsById(condition.getValue())) {
+                                if (element != this && isAncestorOf(element)) {
+                                    candidates.add(element);
+                                }
+                            }
+                            return candidates;
+                        }
+                    }
+                    for (final Condition condition : conditions) {
+                        if (condition.getConditionType() == ConditionType.CLASS_CONDITION
+                                && condition.getValue().indexOf('\\') == -1) {
+                            final List<DomElement> candidates
+                                    = htmlPage.getIndexedElementsByClassName(this, condition.getValue());
+                            if (candidates != null) {
+                                return candidates;
+                            }
+                        }
+                    }
+                }
+
+                final String name = elementSelector.getLocalNameLowerCase();
+                if (name != null) {
+                    final List<DomElement> candidates = htmlPage.getIndexedElementsByTagName(this, name);
+                    if (candidates != null) {
+                        return candidates;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walks the descendant elements in document order and collects the ones matching the selectors.
+     * The ancestors of the visited elements are tracked in the {@link AncestorFilter}; selectors
+     * requiring an ancestor that doesn't exist are rejected without walking up the tree.
+     * @param browserVersion the browser version
+     * @param selectorList the selectors
+     * @param ancestors the filter containing this node and its ancestors
+     * @param result the list to add the matching elements to
+     * @param firstOnly whether to stop after the first match
+     * @return {@code true} if the walk was stopped
+     */
+    private boolean selectDescendants(final BrowserVersion browserVersion, final SelectorList selectorList,
+            final AncestorFilter ancestors, final List<DomNode> result, final boolean firstOnly) {
+        for (DomNode child = getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof DomElement) {
+                final DomElement element = (DomElement) child;
+                for (final Selector selector : selectorList) {
+                    if (ancestors.mayMatch(selector)
+                            && CSSStyleSheet.selects(browserVersion, selector, element, null, true)) {
+                        result.add(element);
+                        if (firstOnly) {
+                            return true;
+                        }
+                        break;
+                    }
+                }
+
+                if (element.getFirstChild() != null) {
+                    ancestors.push(element);
+                    final boolean stopped =
+                            child.selectDescendants(browserVersion, selectorList, ancestors, result, firstOnly);
+                    ancestors.pop();
+                    if (stopped) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean selects(final BrowserVersion browserVersion, final SelectorList selectorList,
+            final DomElement element) {
+        for (final Selector selector : selectorList) {
+            if (CSSStyleSheet.selects(browserVersion, selector, element, null, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns the {@link SelectorList}.
      * @param selectors the selectors
@@ -1881,6 +2007,25 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     protected SelectorList getSelectorList(final String selectors, final BrowserVersion browserVersion)
             throws IOException {
+        int documentMode = 9;
+        if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
+            final Object sobj = getPage().getScriptableObject();
+            if (sobj instanceof HTMLDocument) {
+                documentMode = ((HTMLDocument) sobj).getDocumentMode();
+            }
+        }
+
+        // the validation of css3 pseudo classes depends on the node in this case
+        final boolean cacheable = !(hasFeature(QUERYSELECTOR_CSS3_PSEUDO_REQUIRE_ATTACHED_NODE)
+                && !isAttachedToPage() && !hasChildNodes());
+        final SelectorListCache cache = SelectorListCache.getInstance();
+        if (cacheable) {
+            final SelectorList selectorList = cache.get(browserVersion, documentMode, selectors);
+            if (selectorList != null) {
+                return selectorList;
+            }
+        }
+
         final CSSOMParser parser = new CSSOMParser(new CSS3Parser());
         final CheckErrorHandler errorHandler = new CheckErrorHandler();
         parser.setErrorHandler(errorHandler);
@@ -1892,15 +2037,11 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         }
 
         if (selectorList != null) {
-            int documentMode = 9;
-            if (browserVersion.hasFeature(QUERYSELECTORALL_NOT_IN_QUIRKS)) {
-                final Object sobj = getPage().getScriptableObject();
-                if (sobj instanceof HTMLDocument) {
-                    documentMode = ((HTMLDocument) sobj).getDocumentMode();
-                }
-            }
             CSSStyleSheet.validateSelectors(selectorList, documentMode, this);
 
+            if (cacheable) {
+                cache.put(browserVersion, documentMode, selectors, selectorList);
+            }
         }
         return selectorList;
     }
@@ -1913,11 +2054,28 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     @SuppressWarnings("unchecked")
     public <N extends DomNode> N querySelector(final String selectors) {
-        final DomNodeList<DomNode> list = querySelectorAll(selectors);
-        if (!list.isEmpty()) {
-            return (N) list.get(0);
+        try {
+            final BrowserVersion browserVersion = getPage().getWebClient().getBrowserVersion();
+            final SelectorList selectorList = getSelectorList(selectors, browserVersion);
+
+            if (selectorList != null) {
+                final Iterable<DomElement> candidates = getSelectorCandidates(selectorList);
+                if (candidates == null) {
+                    final List<DomNode> elements = new ArrayList<>(1);
+                    selectDescendants(browserVersion, selectorList, AncestorFilter.of(this), elements, true);
+                    return elements.isEmpty() ? null : (N) elements.get(0);
+                }
+                for (final DomElement child : candidates) {
+                    if (selects(browserVersion, selectorList, child)) {
+                        return (N) child;
+                    }
+                }
+            }
+            return null;
+        }
+        catch (final IOException e) {
+            throw new CSSException("Error parsing CSS selectors from '" + selectors + "': " + e.getMessage());
         }
-        return null;
     }
 
     /**
@@ -37,12 +37,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -151,10 +155,12 @@ public class HtmlPage extends SgmlPage {
     private HTMLParserDOMBuilder domBuilder_;
     private transient Charset originalCharset_;
 
-    private Map<String, SortedSet<DomElement>> idMap_
-            = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
-    private Map<String, SortedSet<DomElement>> nameMap_
-            = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
+    // the values are either a single DomElement or an unmodifiable list (in document order)
+    // of at least two DomElements
+    private Map<String, Object> idMap_ = new ConcurrentHashMap<>();
+    private Map<String, Object> nameMap_ = new ConcurrentHashMap<>();
+    private Map<String, Set<DomElement>> tagNameMap_ = new HashMap<>();
+    private Map<String, Set<DomElement>> classNameMap_ = new HashMap<>();
 
     private SortedSet<BaseFrameElement> frameElements_ = new TreeSet<>(documentPositionComparator);
     private int parserCount_;
@@ -599,11 +605,7 @@ public class HtmlPage extends SgmlPage {
      */
     @Override
     public DomElement getElementById(final String elementId) {
-        final SortedSet<DomElement> elements = idMap_.get(elementId);
-        if (elements != null) {
-            return elements.first();
-        }
-        return null;
+        return getFirstMappedElement(idMap_, elementId);
     }
 
     /**
@@ -1652,11 +1654,7 @@ public class HtmlPage extends SgmlPage {
      * @return the elements with the specified name attribute
      */
     public List<DomElement> getElementsById(final String elementId) {
-        final SortedSet<DomElement> elements = idMap_.get(elementId);
-        if (elements != null) {
-            return new ArrayList<>(elements);
-        }
-        return Collections.emptyList();
+        return getMappedElements(idMap_, elementId);
     }
 
     /**
@@ -1670,9 +1668,9 @@ public class HtmlPage extends SgmlPage {
      */
     @SuppressWarnings("unchecked")
     public <E extends DomElement> E getElementByName(final String name) throws ElementNotFoundException {
-        final SortedSet<DomElement> elements = nameMap_.get(name);
-        if (elements != null) {
-            return (E) elements.first();
+        final DomElement element = getFirstMappedElement(nameMap_, name);
+        if (element != null) {
+            return (E) element;
         }
         throw new ElementNotFoundException("*", "name", name);
     }
@@ -1686,11 +1684,7 @@ public class HtmlPage extends SgmlPage {
      * @return the elements with the specified name attribute
      */
     public List<DomElement> getElementsByName(final String name) {
-        final SortedSet<DomElement> elements = nameMap_.get(name);
-        if (elements != null) {
-            return new ArrayList<>(elements);
-        }
-        return Collections.emptyList();
+        return getMappedElements(nameMap_, name);
     }
 
     /**
@@ -1701,22 +1695,40 @@ public class HtmlPage extends SgmlPage {
      * @return the elements with the specified string for their name or ID
      */
     public List<DomElement> getElementsByIdAndOrName(final String idAndOrName) {
-        final Collection<DomElement> list1 = idMap_.get(idAndOrName);
-        final Collection<DomElement> list2 = nameMap_.get(idAndOrName);
-        final List<DomElement> list = new ArrayList<>();
-        if (list1 != null) {
-            list.addAll(list1);
-        }
-        if (list2 != null) {
-            for (final DomElement elt : list2) {
-                if (!list.contains(elt)) {
-                    list.add(elt);
-                }
+        final List<DomElement> list = getMappedElements(idMap_, idAndOrName);
+        for (final DomElement elt : getMappedElements(nameMap_, idAndOrName)) {
+            if (!list.contains(elt)) {
+                list.add(elt);
             }
         }
         return list;
     }
 
+    @SuppressWarnings("unchecked")
+    private static DomElement getFirstMappedElement(final Map<String, Object> map, final String key) {
+        final Object mapped = key == null ? null : map.get(key);
+        if (mapped instanceof DomElement) {
+            return (DomElement) mapped;
+        }
+        if (mapped != null) {
+            return ((List<DomElement>) mapped).get(0);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<DomElement> getMappedElements(final Map<String, Object> map, final String key) {
+        final Object mapped = key == null ? null : map.get(key);
+        final List<DomElement> elements = new ArrayList<>();
+        if (mapped instanceof DomElement) {
+            elements.add((DomElement) mapped);
+        }
+        else if (mapped != null) {
+            elements.addAll((List<DomElement>) mapped);
+        }
+        return elements;
+    }
+
     /**
      * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
      *
@@ -1764,6 +1776,10 @@ public class HtmlPage extends SgmlPage {
                 calculateBase();
             }
         }
+        else if (node instanceof DomElement) {
+            // not part of the id and name maps, but of the tag name index
+            removeIndexedElement((DomElement) node, true);
+        }
     }
 
     /**
@@ -1783,23 +1799,45 @@ public class HtmlPage extends SgmlPage {
         if (isAncestorOf(element)) {
             addElement(idMap_, element, "id", recurse);
             addElement(nameMap_, element, "name", recurse);
+            addIndexedElement(element, recurse);
+        }
+    }
+
+    private void addIndexedElement(final DomElement element, final boolean recurse) {
+        addToIndex(tagNameMap_, element.getLowercaseName(), element);
+
+        final String classAttribute = element.getAttributeDirect("class");
+        if (DomElement.ATTRIBUTE_NOT_DEFINED != classAttribute) {
+            for (final String className : StringUtils.split(classAttribute)) {
+                addToIndex(classNameMap_, className, element);
+            }
+        }
+
+        if (recurse) {
+            for (final DomElement child : element.getChildElements()) {
+                addIndexedElement(child, true);
+            }
         }
     }
 
-    private void addElement(final Map<String, SortedSet<DomElement>> map, final DomElement element,
+    private static void addToIndex(final Map<String, Set<DomElement>> index, final String key,
+            final DomElement element) {
+        synchronized (index) {
+            Set<DomElement> elements = index.get(key);
+            if (elements == null) {
+                elements = new HashSet<>();
+                index.put(key, elements);
+            }
+            elements.add(element);
+        }
+    }
+
+    private void addElement(final Map<String, Object> map, final DomElement element,
             final String attribute, final boolean recurse) {
         final String value = getAttributeValue(element, attribute);
 
         if (DomElement.ATTRIBUTE_NOT_DEFINED != value) {
-            SortedSet<DomElement> elements = map.get(value);
-            if (elements == null) {
-                elements = new TreeSet<>(documentPositionComparator);
-                elements.add(element);
-                map.put(value, elements);
-            }
-            else if (!elements.contains(element)) {
-                elements.add(element);
-            }
+            map.compute(value, (key, mapped) -> addToMapped(mapped, element));
         }
         if (recurse) {
             for (final DomElement child : element.getChildElements()) {
@@ -1838,7 +1876,7 @@ public class HtmlPage extends SgmlPage {
      * Removes an element from the ID and name maps, if necessary.
      * @param element the element to be removed from the ID and name maps
      */
-    void removeMappedElement(final HtmlElement element) {
+    void removeMappedElement(final DomElement element) {
         removeMappedElement(element, false, false);
     }
 
@@ -1852,19 +1890,160 @@ public class HtmlPage extends SgmlPage {
         if (descendant || isAncestorOf(element)) {
             removeElement(idMap_, element, "id", recurse);
             removeElement(nameMap_, element, "name", recurse);
+            removeIndexedElement(element, recurse);
+        }
+    }
+
+    private void removeIndexedElement(final DomElement element, final boolean recurse) {
+        removeFromIndex(tagNameMap_, element.getLowercaseName(), element);
+
+        final String classAttribute = element.getAttributeDirect("class");
+        if (DomElement.ATTRIBUTE_NOT_DEFINED != classAttribute) {
+            for (final String className : StringUtils.split(classAttribute)) {
+                removeFromIndex(classNameMap_, className, element);
+            }
+        }
+
+        if (recurse) {
+            for (final DomElement child : element.getChildElements()) {
+                removeIndexedElement(child, true);
+            }
         }
     }
 
-    private void removeElement(final Map<String, SortedSet<DomElement>> map, final DomElement element,
+    private static void removeFromIndex(final Map<String, Set<DomElement>> index, final String key,
+            final DomElement element) {
+        synchronized (index) {
+            final Set<DomElement> elements = index.get(key);
+            if (elements != null) {
+                elements.remove(element);
+                if (elements.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the descendants of the specified node having the specified tag name (compared case insensitive)
+     * in document order. The elements are taken from an index maintained while the page is modified, the
+     * subtree is not traversed.
+     *
+     * @param root the node whose descendants are searched; has to be this page or attached to it
+     * @param tagName the tag name (without prefix)
+     * @return the elements or {@code null} if the index can't answer the query
+     */
+    public List<DomElement> getIndexedElementsByTagName(final DomNode root, final String tagName) {
+        if (tagName.indexOf(':') != -1) {
+            return null;
+        }
+        return getIndexedElements(tagNameMap_, root, tagName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Returns the descendants of the specified node having the specified class (compared case sensitive)
+     * in document order. The elements are taken from an index maintained while the page is modified, the
+     * subtree is not traversed.
+     *
+     * @param root the node whose descendants are searched; has to be this page or attached to it
+     * @param className the class name
+     * @return the elements or {@code null} if the index can't answer the query
+     */
+    public List<DomElement> getIndexedElementsByClassName(final DomNode root, final String className) {
+        if (StringUtils.isBlank(className) || StringUtils.containsWhitespace(className)) {
+            return null;
+        }
+        return getIndexedElements(classNameMap_, root, className);
+    }
+
+    private List<DomElement> getIndexedElements(final Map<String, Set<DomElement>> index, final DomNode root,
+            final String key) {
+        if (root != this && (root.getPage() != this || !root.isAttachedToPage())) {
+            return null;
+        }
+
+        final List<DomElement> elements;
+        synchronized (index) {
+            final Set<DomElement> indexed = index.get(key);
+            if (indexed == null) {
+                return new ArrayList<>();
+            }
+            elements = new ArrayList<>(indexed);
+        }
+
+        if (root == this) {
+            elements.removeIf(element -> !element.isAttachedToPage() || element.getPage() != this);
+        }
+        else {
+            elements.removeIf(element -> element == root || !root.isAncestorOf(element));
+        }
+        if (elements.size() > 1) {
+            sortInDocumentOrder(elements);
+        }
+        return elements;
+    }
+
+    /**
+     * Sorts the elements in document order. The position of every element is computed only once,
+     * as the child indexes of its ancestors from the document down; the child indexes of a parent
+     * are determined in a single pass and shared by all elements below it. The comparisons of the sort
+     * therefore don't have to walk the ancestor chains and siblings again.
+     * @param elements the elements to sort
+     */
+    private static void sortInDocumentOrder(final List<DomElement> elements) {
+        final Map<DomNode, Integer> childIndexes = new IdentityHashMap<>();
+        final Map<DomElement, int[]> positions = new IdentityHashMap<>();
+        for (final DomElement element : elements) {
+            positions.put(element, getDocumentPosition(element, childIndexes));
+        }
+        elements.sort((element1, element2) -> comparePositions(positions.get(element1), positions.get(element2)));
+    }
+
+    private static int[] getDocumentPosition(final DomNode node, final Map<DomNode, Integer> childIndexes) {
+        int depth = 0;
+        for (DomNode ancestor = node.getParentNode(); ancestor != null; ancestor = ancestor.getParentNode()) {
+            depth++;
+        }
+
+        final int[] position = new int[depth];
+        DomNode current = node;
+        for (int i = depth - 1; i >= 0; i--) {
+            Integer index = childIndexes.get(current);
+            if (index == null) {
+                int childIndex = 0;
+                for (DomNode child = current.getParentNode().getFirstChild(); child != null;
+                        child = child.getNextSibling()) {
+                    childIndexes.put(child, childIndex++);
+                }
+                index = childIndexes.get(current);
+            }
+            position[i] = index;
+            current = current.getParentNode();
+        }
+        return position;
+    }
+
+    private static int comparePositions(final int[] position1, final int[] position2) {
+        final int length = Math.min(position1.length, position2.length);
+        for (int i = 0; i < length; i++) {
+            if (position1[i] != position2[i]) {
+                return Integer.compare(position1[i], position2[i]);
+            }
+        }
+        // an ancestor comes before its descendants
+        return Integer.compare(position1.length, position2.length);
+    }
+
+    private void removeElement(final Map<String, Object> map, final DomElement element,
             final String attribute, final boolean recurse) {
         final String value = getAttributeValue(element, attribute);
 
         if (DomElement.ATTRIBUTE_NOT_DEFINED != value) {
-            final SortedSet<DomElement> elements = map.remove(value);
-            if (elements != null && (elements.size() != 1 || !elements.contains(element))) {
-                elements.remove(element);
-                map.put(value, elements);
-            }
+            map.computeIfPresent(value, (key, mapped) -> removeFromMapped(mapped, element));
         }
         if (recurse) {
             for (final DomElement child : element.getChildElements()) {
@@ -1873,6 +2052,60 @@ public class HtmlPage extends SgmlPage {
         }
     }
 
+    /**
+     * Returns the new map value after adding the element. Only if the key is used by more
+     * than one element, the elements have to be sorted in document order.
+     * @param mapped the current map value
+     * @param element the element to add
+     * @return the new map value
+     */
+    @SuppressWarnings("unchecked")
+    private static Object addToMapped(final Object mapped, final DomElement element) {
+        if (mapped == null || mapped == element) {
+            return element;
+        }
+
+        final List<DomElement> elements = new ArrayList<>();
+        if (mapped instanceof DomElement) {
+            elements.add((DomElement) mapped);
+        }
+        else {
+            elements.addAll((List<DomElement>) mapped);
+        }
+        if (elements.contains(element)) {
+            return mapped;
+        }
+
+        final int index = Collections.binarySearch(elements, element, documentPositionComparator);
+        elements.add(index < 0 ? -index - 1 : index, element);
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * Returns the new map value after removing the element.
+     * @param mapped the current map value
+     * @param element the element to remove
+     * @return the new map value, {@code null} if no element remains
+     */
+    @SuppressWarnings("unchecked")
+    private static Object removeFromMapped(final Object mapped, final DomElement element) {
+        if (mapped == element) {
+            return null;
+        }
+        if (mapped instanceof DomElement) {
+            return mapped;
+        }
+
+        final List<DomElement> elements = new ArrayList<>((List<DomElement>) mapped);
+        if (!elements.remove(element)) {
+            return mapped;
+        }
+        if (elements.size() == 1) {
+            return elements.get(0);
+        }
+        return Collections.unmodifiableList(elements);
+    }
+
     /**
      * Indicates if the attribute name indicates that the owning element is mapped.
      * @param document the owning document
@@ -1881,7 +2114,7 @@ public class HtmlPage extends SgmlPage {
      */
     static boolean isMappedElement(final Document document, final String attributeName) {
         return document instanceof HtmlPage
-            && ("name".equals(attributeName) || "id".equals(attributeName));
+            && ("name".equals(attributeName) || "id".equals(attributeName) || "class".equals(attributeName));
     }
 
     private void calculateBase() {
@@ -1965,8 +2198,10 @@ public class HtmlPage extends SgmlPage {
         final HtmlPage result = (HtmlPage) super.clone();
         result.elementWithFocus_ = null;
 
-        result.idMap_ = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
-        result.nameMap_ = Collections.synchronizedMap(new HashMap<String, SortedSet<DomElement>>());
+        result.idMap_ = new ConcurrentHashMap<>();
+        result.nameMap_ = new ConcurrentHashMap<>();
+        result.tagNameMap_ = new HashMap<>();
+        result.classNameMap_ = new HashMap<>();
 
         return result;
     }
@@ -14,6 +14,8 @@
  */
 package com.gargoylesoftware.htmlunit.html;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 import java.util.List;
 
@@ -43,10 +45,38 @@ public class HtmlSerializer {
      */
     public String asText(final DomNode node) {
         final HtmlSerializerTextBuilder builder = new HtmlSerializerTextBuilder();
-        appendNode(builder, node);
+        final VisibilityEvaluator previous = VisibilityEvaluator.beginPass();
+        try {
+            appendNode(builder, node);
+        }
+        finally {
+            VisibilityEvaluator.endPass(previous);
+        }
         return builder.getText();
     }
 
+    /**
+     * Converts an HTML node to text and writes the text to the specified target while traversing the tree;
+     * the text is the same as the one returned by {@link #asText(DomNode)}.
+     * @param node a node
+     * @param out the target
+     * @throws IOException in case of error
+     */
+    public void asText(final DomNode node, final Appendable out) throws IOException {
+        final HtmlSerializerTextBuilder builder = new HtmlSerializerTextBuilder(out);
+        final VisibilityEvaluator previous = VisibilityEvaluator.beginPass();
+        try {
+            appendNode(builder, node);
+        }
+        catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            VisibilityEvaluator.endPass(previous);
+        }
+        builder.finish();
+    }
+
     /**
      * Iterate over all Children and call appendNode() for every.
      *
@@ -581,18 +611,40 @@ public class HtmlSerializer {
 
         private static final String LINE_SEPARATOR = System.lineSeparator();
         private static final int LINE_SEPARATOR_LENGTH = LINE_SEPARATOR.length();
+        private static final int FLUSH_THRESHOLD = 8192;
+
+        /**
+         * The length of the text before {@link #trimRightPos_} that may still be removed: a block separator
+         * trims at most one line separator before this position (and moves it back by this line separator
+         * only if the text ends with a new line, after which it is set again before the next trimming).
+         */
+        private static final int TRIMMABLE_TAIL = LINE_SEPARATOR_LENGTH;
 
         private State state_;
         private final StringBuilder builder_;
+        private final Appendable out_;
+        private int flushed_;
         private int trimRightPos_;
 
         public HtmlSerializerTextBuilder() {
+            this(null);
+        }
+
+        /**
+         * Creates a builder writing the text to the specified target while appending, only the part
+         * that might still be trimmed is buffered. Call {@link #finish()} to write the rest.
+         * @param out the target or {@code null} to collect the text for {@link #getText()}
+         */
+        public HtmlSerializerTextBuilder(final Appendable out) {
             builder_ = new StringBuilder();
+            out_ = out;
             state_ = State.EMPTY;
             trimRightPos_ = 0;
         }
 
         public void append(final String content, final Mode mode) {
+            flushIfNeeded();
+
             final int length = content.length();
             if (length == 0) {
                 return;
@@ -627,12 +679,12 @@ public class HtmlSerializer {
                     else if (c == (char) 160) {
                         builder_.append(' ');
                         state_ = State.DEFAULT;
-                        trimRightPos_ = builder_.length();
+                        trimRightPos_ = length();
                     }
                     else {
                         builder_.append(c);
                         state_ = State.DEFAULT;
-                        trimRightPos_ = builder_.length();
+                        trimRightPos_ = length();
                     }
                     continue;
                 }
@@ -665,7 +717,7 @@ public class HtmlSerializer {
                     else {
                         builder_.append(c);
                     }
-                    trimRightPos_ = builder_.length();
+                    trimRightPos_ = length();
                 }
             }
 
@@ -684,8 +736,8 @@ public class HtmlSerializer {
                 case EMPTY:
                     break;
                 case BLANK_AT_END:
-                    builder_.setLength(trimRightPos_);
-                    if (builder_.length() == 0) {
+                    setLength(trimRightPos_);
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -694,8 +746,8 @@ public class HtmlSerializer {
                     }
                     break;
                 case BLANK_AT_END_AFTER_NEWLINE:
-                    builder_.setLength(trimRightPos_ - LINE_SEPARATOR_LENGTH);
-                    if (builder_.length() == 0) {
+                    setLength(trimRightPos_ - LINE_SEPARATOR_LENGTH);
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -706,9 +758,9 @@ public class HtmlSerializer {
                 case BLOCK_SEPARATOR_AT_END:
                     break;
                 case NEWLINE_AT_END:
-                    builder_.setLength(builder_.length() - LINE_SEPARATOR_LENGTH);
+                    setLength(length() - LINE_SEPARATOR_LENGTH);
                     trimRightPos_ = trimRightPos_ - LINE_SEPARATOR_LENGTH;
-                    if (builder_.length() == 0) {
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -726,23 +778,62 @@ public class HtmlSerializer {
         public void appendNewLine() {
             builder_.append(LINE_SEPARATOR);
             state_ = State.NEWLINE_AT_END;
-            trimRightPos_ = builder_.length();
+            trimRightPos_ = length();
         }
 
         public void appendTab() {
             builder_.append('\t');
-            trimRightPos_ = builder_.length();
+            trimRightPos_ = length();
         }
 
         private void appendBlank() {
             builder_.append(' ');
-            trimRightPos_ = builder_.length();
+            trimRightPos_ = length();
         }
 
         public String getText() {
             return builder_.substring(0, trimRightPos_);
         }
 
+        /**
+         * Writes the remaining text to the target passed to the constructor.
+         * @throws IOException in case of error
+         */
+        public void finish() throws IOException {
+            assert trimRightPos_ >= flushed_ : "trimmed more than the trimmable tail";
+            out_.append(builder_, 0, trimRightPos_ - flushed_);
+            flushed_ = trimRightPos_;
+            builder_.setLength(0);
+        }
+
+        private void flushIfNeeded() {
+            if (out_ == null || builder_.length() < FLUSH_THRESHOLD) {
+                return;
+            }
+
+            // the end of the text may still be trimmed, write only the part before
+            final int end = trimRightPos_ - TRIMMABLE_TAIL - flushed_;
+            if (end > 0) {
+                try {
+                    out_.append(builder_, 0, end);
+                }
+                catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                builder_.delete(0, end);
+                flushed_ += end;
+            }
+        }
+
+        private int length() {
+            return flushed_ + builder_.length();
+        }
+
+        private void setLength(final int length) {
+            assert length >= flushed_ : "trimmed more than the trimmable tail";
+            builder_.setLength(length - flushed_);
+        }
+
         private static boolean isSpace(final char ch) {
             return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\f' || ch == '\r';
         }
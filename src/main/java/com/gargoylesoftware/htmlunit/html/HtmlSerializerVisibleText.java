@@ -14,6 +14,8 @@
  */
 package com.gargoylesoftware.htmlunit.html;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,10 +46,41 @@ public class HtmlSerializerVisibleText {
             return "";
         }
         final HtmlSerializerTextBuilder builder = new HtmlSerializerTextBuilder();
-        appendNode(builder, node, whiteSpaceStyle(node, Mode.WHITE_SPACE_NORMAL));
+        final VisibilityEvaluator previous = VisibilityEvaluator.beginPass();
+        try {
+            appendNode(builder, node, whiteSpaceStyle(node, Mode.WHITE_SPACE_NORMAL));
+        }
+        finally {
+            VisibilityEvaluator.endPass(previous);
+        }
         return builder.getText();
     }
 
+    /**
+     * Converts an HTML node to text and writes the text to the specified target while traversing the tree;
+     * the text is the same as the one returned by {@link #asText(DomNode)}.
+     * @param node a node
+     * @param out the target
+     * @throws IOException in case of error
+     */
+    public void asText(final DomNode node, final Appendable out) throws IOException {
+        if (node instanceof HtmlBreak) {
+            return;
+        }
+        final HtmlSerializerTextBuilder builder = new HtmlSerializerTextBuilder(out);
+        final VisibilityEvaluator previous = VisibilityEvaluator.beginPass();
+        try {
+            appendNode(builder, node, whiteSpaceStyle(node, Mode.WHITE_SPACE_NORMAL));
+        }
+        catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            VisibilityEvaluator.endPass(previous);
+        }
+        builder.finish();
+    }
+
     /**
      * Iterate over all Children and call appendNode() for every.
      *
@@ -696,20 +729,43 @@ public class HtmlSerializerVisibleText {
             BLOCK_SEPARATOR_AT_END
         }
 
+        private static final int FLUSH_THRESHOLD = 8192;
+
+        /**
+         * The length of the text before {@link #trimRightPos_} that may still be removed: a block separator
+         * or {@link #trimRight(Mode)} trims at most the new line before this position (and moves it back by
+         * this new line only if the text ends with it, after which it is set again before the next trimming).
+         */
+        private static final int TRIMMABLE_TAIL = 1;
+
         private State state_;
         private final StringBuilder builder_;
+        private final Appendable out_;
+        private int flushed_;
         private int trimRightPos_;
         private boolean contentAdded_;
         private boolean ignoreHtmlBreaks_;
 
         public HtmlSerializerTextBuilder() {
+            this(null);
+        }
+
+        /**
+         * Creates a builder writing the text to the specified target while appending, only the part
+         * that might still be trimmed is buffered. Call {@link #finish()} to write the rest.
+         * @param out the target or {@code null} to collect the text for {@link #getText()}
+         */
+        public HtmlSerializerTextBuilder(final Appendable out) {
             builder_ = new StringBuilder();
+            out_ = out;
             state_ = State.EMPTY;
             trimRightPos_ = 0;
         }
 
         // see https://drafts.csswg.org/css-text-3/#white-space
         public void append(final String content, final Mode mode) {
+            flushIfNeeded();
+
             int length = content.length();
             if (length == 0) {
                 return;
@@ -737,7 +793,7 @@ public class HtmlSerializerVisibleText {
                             default:
                                 builder_.append('\n');
                                 state_ = State.NEWLINE_AT_END;
-                                trimRightPos_ = builder_.length();
+                                trimRightPos_ = length();
                                 break;
                         }
                         continue;
@@ -746,7 +802,7 @@ public class HtmlSerializerVisibleText {
                     if (mode == Mode.PRE) {
                         builder_.append('\n');
                         state_ = State.NEWLINE_AT_END;
-                        trimRightPos_ = builder_.length();
+                        trimRightPos_ = length();
 
                         continue;
                     }
@@ -759,7 +815,7 @@ public class HtmlSerializerVisibleText {
                             default:
                                 builder_.append('\n');
                                 state_ = State.NEWLINE_AT_END;
-                                trimRightPos_ = builder_.length();
+                                trimRightPos_ = length();
                                 break;
                         }
                         continue;
@@ -824,7 +880,7 @@ public class HtmlSerializerVisibleText {
                 }
                 builder_.append(c);
                 state_ = State.DEFAULT;
-                trimRightPos_ = builder_.length();
+                trimRightPos_ = length();
                 contentAdded_ = true;
             }
         }
@@ -834,8 +890,8 @@ public class HtmlSerializerVisibleText {
                 case EMPTY:
                     break;
                 case BLANK_AT_END:
-                    builder_.setLength(trimRightPos_);
-                    if (builder_.length() == 0) {
+                    setLength(trimRightPos_);
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -844,8 +900,8 @@ public class HtmlSerializerVisibleText {
                     }
                     break;
                 case BLANK_AT_END_AFTER_NEWLINE:
-                    builder_.setLength(trimRightPos_ - 1);
-                    if (builder_.length() == 0) {
+                    setLength(trimRightPos_ - 1);
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -857,9 +913,9 @@ public class HtmlSerializerVisibleText {
                     break;
                 case NEWLINE_AT_END:
                 case BREAK_AT_END:
-                    builder_.setLength(builder_.length() - 1);
+                    setLength(length() - 1);
                     trimRightPos_ = trimRightPos_ - 1;
-                    if (builder_.length() == 0) {
+                    if (length() == 0) {
                         state_ = State.EMPTY;
                     }
                     else {
@@ -879,17 +935,17 @@ public class HtmlSerializerVisibleText {
                 return;
             }
 
-            builder_.setLength(trimRightPos_);
+            setLength(trimRightPos_);
 
             builder_.append('\n');
             state_ = State.BREAK_AT_END;
-            trimRightPos_ = builder_.length();
+            trimRightPos_ = length();
         }
 
         public void appendBlank() {
             builder_.append(' ');
             state_ = State.BLANK_AT_END;
-            trimRightPos_ = builder_.length();
+            trimRightPos_ = length();
         }
 
         public void trimRight(final Mode mode) {
@@ -898,7 +954,7 @@ public class HtmlSerializerVisibleText {
                     case BLOCK_SEPARATOR_AT_END:
                     case NEWLINE_AT_END:
                     case BREAK_AT_END:
-                        if (trimRightPos_ == builder_.length()) {
+                        if (trimRightPos_ == length()) {
                             trimRightPos_--;
                         }
                         break;
@@ -907,9 +963,9 @@ public class HtmlSerializerVisibleText {
                 }
             }
 
-            builder_.setLength(trimRightPos_);
+            setLength(trimRightPos_);
             state_ = State.DEFAULT;
-            if (builder_.length() == 0) {
+            if (length() == 0) {
                 state_ = State.EMPTY;
             }
         }
@@ -933,5 +989,44 @@ public class HtmlSerializerVisibleText {
         public String getText() {
             return builder_.substring(0, trimRightPos_);
         }
+
+        /**
+         * Writes the remaining text to the target passed to the constructor.
+         * @throws IOException in case of error
+         */
+        public void finish() throws IOException {
+            assert trimRightPos_ >= flushed_ : "trimmed more than the trimmable tail";
+            out_.append(builder_, 0, trimRightPos_ - flushed_);
+            flushed_ = trimRightPos_;
+            builder_.setLength(0);
+        }
+
+        private void flushIfNeeded() {
+            if (out_ == null || builder_.length() < FLUSH_THRESHOLD) {
+                return;
+            }
+
+            // the end of the text may still be trimmed, write only the part before
+            final int end = trimRightPos_ - TRIMMABLE_TAIL - flushed_;
+            if (end > 0) {
+                try {
+                    out_.append(builder_, 0, end);
+                }
+                catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                builder_.delete(0, end);
+                flushed_ += end;
+            }
+        }
+
+        private int length() {
+            return flushed_ + builder_.length();
+        }
+
+        private void setLength(final int length) {
+            assert length >= flushed_ : "trimmed more than the trimmable tail";
+            builder_.setLength(length - flushed_);
+        }
     }
 }
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.HttpHeader;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebRequest;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Scans the source of a page for external scripts, style sheets and images before the page is parsed and
+ * starts loading them in parallel ({@link WebClient#preloadWebResponse(WebRequest)}). When the parser
+ * reaches the elements, the responses are taken from the preloads; the scripts are still executed in
+ * document order.
+ *
+ * <p>The scanner only looks at the tags, it doesn't build a tree. The requests are created the same way
+ * as the elements do it; if the element builds a different request (e.g. because a script changed
+ * the document), the preloaded response is not used.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @see WebClientOptions#setPreloadEnabled(boolean)
+ */
+public final class PreloadScanner {
+
+    /** Elements whose content is no markup. */
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title", "xmp", "noscript"};
+
+    private final HtmlPage page_;
+    private final String source_;
+    private final List<WebRequest> requests_ = new ArrayList<>();
+    private int pos_;
+
+    private PreloadScanner(final HtmlPage page, final String source) {
+        page_ = page;
+        source_ = source;
+    }
+
+    /**
+     * Starts loading the resources referenced by the source of the page, if enabled by the options.
+     * The preloaded responses not used are discarded when the page is cleaned up.
+     * @param page the page, not parsed so far
+     * @param source the source of the page
+     */
+    public static void preload(final HtmlPage page, final String source) {
+        final WebClient webClient = page.getWebClient();
+        if (!webClient.getOptions().isPreloadEnabled()) {
+            return;
+        }
+
+        final List<WebRequest> requests = new PreloadScanner(page, source).scan();
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        for (final WebRequest request : requests) {
+            webClient.preloadWebResponse(request);
+        }
+        page.addAutoCloseable(() -> {
+            for (final WebRequest request : requests) {
+                webClient.discardPreloadedWebResponse(request);
+            }
+        });
+    }
+
+    private List<WebRequest> scan() {
+        final WebClientOptions options = page_.getWebClient().getOptions();
+        final boolean javaScriptEnabled = options.isJavaScriptEnabled();
+
+        while (true) {
+            final int start = source_.indexOf('<', pos_);
+            if (start == -1 || start + 1 == source_.length()) {
+                break;
+            }
+            pos_ = start + 1;
+
+            if (source_.startsWith("!--", pos_)) {
+                final int end = source_.indexOf("-->", pos_ + 3);
+                if (end == -1) {
+                    break;
+                }
+                pos_ = end + 3;
+                continue;
+            }
+
+            final String tagName = readTagName();
+            if (tagName == null) {
+                continue;
+            }
+            final Map<String, String> attributes = readAttributes();
+
+            try {
+                switch (tagName) {
+                    case "base":
+                        // the urls are resolved against the page url; stop here instead of guessing
+                        return requests_;
+
+                    case "script":
+                        if (javaScriptEnabled) {
+                            addScript(attributes);
+                        }
+                        break;
+
+                    case "link":
+                        if (options.isCssEnabled()) {
+                            addStyleSheet(attributes);
+                        }
+                        break;
+
+                    case "img":
+                        if (options.isDownloadImages()) {
+                            addImage(attributes);
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+            catch (final MalformedURLException e) {
+                // the element will report this
+            }
+
+            for (final String rawTextElement : RAW_TEXT_ELEMENTS) {
+                if (rawTextElement.equals(tagName)
+                        && (javaScriptEnabled || !"noscript".equals(rawTextElement))) {
+                    skipRawText(tagName);
+                    break;
+                }
+            }
+        }
+        return requests_;
+    }
+
+    private void addScript(final Map<String, String> attributes) throws MalformedURLException {
+        final String src = attributes.get("src");
+        if (StringUtils.isBlank(src)) {
+            return;
+        }
+        final String type = attributes.get("type");
+        if (type != null && !type.isEmpty()) {
+            final String lowerType = type.toLowerCase(Locale.ROOT);
+            if (!lowerType.contains("javascript") && !lowerType.contains("ecmascript")) {
+                return;
+            }
+        }
+
+        // see HtmlPage.loadJavaScriptFromUrl()
+        final URL url = page_.getFullyQualifiedUrl(StringUtils.replaceChars(src, "\r\n", ""));
+        final WebRequest referringRequest = page_.getWebResponse().getWebRequest();
+        final WebRequest request = new WebRequest(url);
+        request.setAdditionalHeaders(new HashMap<>(referringRequest.getAdditionalHeaders()));
+        request.setAdditionalHeader(HttpHeader.ACCEPT,
+                page_.getWebClient().getBrowserVersion().getScriptAcceptHeader());
+        request.setAdditionalHeader(HttpHeader.REFERER, referringRequest.getUrl().toString());
+        requests_.add(request);
+    }
+
+    private void addStyleSheet(final Map<String, String> attributes) throws MalformedURLException {
+        final String rel = attributes.get("rel");
+        final String href = attributes.get("href");
+        if (rel == null || StringUtils.isBlank(href)) {
+            return;
+        }
+        boolean styleSheet = false;
+        for (final String token : StringUtils.split(rel.toLowerCase(Locale.ROOT))) {
+            if ("alternate".equals(token)) {
+                return;
+            }
+            if ("stylesheet".equals(token)) {
+                styleSheet = true;
+            }
+        }
+        if (!styleSheet) {
+            return;
+        }
+
+        // see HtmlLink.getWebRequest()
+        final BrowserVersion browser = page_.getWebClient().getBrowserVersion();
+        final URL url = page_.getFullyQualifiedUrl(href);
+        final WebRequest request = new WebRequest(url, browser.getCssAcceptHeader(), browser.getAcceptEncodingHeader());
+        request.setCharset(page_.getCharset());
+        request.setAdditionalHeader(HttpHeader.REFERER, page_.getUrl().toExternalForm());
+        requests_.add(request);
+    }
+
+    private void addImage(final Map<String, String> attributes) throws MalformedURLException {
+        final String src = attributes.get("src");
+        if (StringUtils.isBlank(src)) {
+            return;
+        }
+
+        // see HtmlImage.downloadImageIfNeeded()
+        final BrowserVersion browser = page_.getWebClient().getBrowserVersion();
+        final URL url = page_.getFullyQualifiedUrl(StringUtils.replaceChars(src, "\r\n", ""));
+        final WebRequest request = new WebRequest(url, browser.getImgAcceptHeader(), browser.getAcceptEncodingHeader());
+        request.setCharset(page_.getCharset());
+        request.setAdditionalHeader(HttpHeader.REFERER, page_.getUrl().toExternalForm());
+        requests_.add(request);
+    }
+
+    /**
+     * Reads the lower case name of a start tag; returns {@code null} for everything else.
+     */
+    private String readTagName() {
+        final int start = pos_;
+        while (pos_ < source_.length() && isNameChar(source_.charAt(pos_))) {
+            pos_++;
+        }
+        if (pos_ == start || !Character.isLetter(source_.charAt(start))) {
+            return null;
+        }
+        return source_.substring(start, pos_).toLowerCase(Locale.ROOT);
+    }
+
+    private Map<String, String> readAttributes() {
+        final Map<String, String> attributes = new HashMap<>();
+        while (pos_ < source_.length()) {
+            final char c = source_.charAt(pos_);
+            if (c == '>') {
+                pos_++;
+                break;
+            }
+            if (Character.isWhitespace(c) || c == '/') {
+                pos_++;
+                continue;
+            }
+
+            final int nameStart = pos_;
+            while (pos_ < source_.length() && !Character.isWhitespace(source_.charAt(pos_))
+                    && "=>/".indexOf(source_.charAt(pos_)) == -1) {
+                pos_++;
+            }
+            final String name = source_.substring(nameStart, pos_).toLowerCase(Locale.ROOT);
+            skipWhitespace();
+
+            String value = "";
+            if (pos_ < source_.length() && source_.charAt(pos_) == '=') {
+                pos_++;
+                skipWhitespace();
+                value = readAttributeValue();
+            }
+            if (!name.isEmpty() && !attributes.containsKey(name)) {
+                attributes.put(name, StringEscapeUtils.unescapeHtml4(value));
+            }
+        }
+        return attributes;
+    }
+
+    private String readAttributeValue() {
+        if (pos_ >= source_.length()) {
+            return "";
+        }
+        final char quote = source_.charAt(pos_);
+        if (quote == '"' || quote == '\'') {
+            final int end = source_.indexOf(quote, pos_ + 1);
+            if (end == -1) {
+                pos_ = source_.length();
+                return "";
+            }
+            final String value = source_.substring(pos_ + 1, end);
+            pos_ = end + 1;
+            return value;
+        }
+
+        final int start = pos_;
+        while (pos_ < source_.length() && !Character.isWhitespace(source_.charAt(pos_))
+                && source_.charAt(pos_) != '>') {
+            pos_++;
+        }
+        return source_.substring(start, pos_);
+    }
+
+    private void skipRawText(final String tagName) {
+        final String endTag = "</" + tagName;
+        int end = source_.indexOf("</", pos_);
+        while (end != -1) {
+            if (source_.regionMatches(true, end, endTag, 0, endTag.length())) {
+                pos_ = end;
+                return;
+            }
+            end = source_.indexOf("</", end + 2);
+        }
+        pos_ = source_.length();
+    }
+
+    private void skipWhitespace() {
+        while (pos_ < source_.length() && Character.isWhitespace(source_.charAt(pos_))) {
+            pos_++;
+        }
+    }
+
+    private static boolean isNameChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':';
+    }
+}
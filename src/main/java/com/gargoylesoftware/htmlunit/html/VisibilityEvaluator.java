@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.html.HtmlElement.DisplayStyle;
+import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleDeclaration;
+import com.gargoylesoftware.htmlunit.javascript.host.css.StyleAttributes;
+import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * Evaluates the <tt>display</tt> and <tt>visibility</tt> styles of nodes top-down. The state of every
+ * node is derived from the state of its parent and remembered, so the computed style of every element
+ * is evaluated only once, no matter how many nodes of the subtree are asked for.
+ *
+ * <p>The remembered states are not updated if the DOM or the styles change; an evaluator is meant to be used
+ * for one pass over the tree (e.g. one serialization) only. During such a pass, started with {@link #beginPass()},
+ * all the calls of {@link DomNode#isDisplayed()} on the same thread share one evaluator; this way the subclasses
+ * overriding {@link DomNode#isDisplayed()} are still asked.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @see DomNode#isDisplayed()
+ */
+public final class VisibilityEvaluator {
+
+    private static final State ROOT = new State(true, null);
+    private static final State NOT_DISPLAYED = new State(false, null);
+    private static final State VISIBLE = new State(true, Boolean.TRUE);
+    private static final State HIDDEN = new State(true, Boolean.FALSE);
+
+    /** The evaluator of the pass running on the current thread. */
+    private static final ThreadLocal<VisibilityEvaluator> CURRENT_ = new ThreadLocal<>();
+
+    private final Map<DomNode, State> states_ = new IdentityHashMap<>();
+
+    private static final class State {
+        private final boolean displayed_;
+        private final Boolean visible_;
+
+        State(final boolean displayed, final Boolean visible) {
+            displayed_ = displayed;
+            visible_ = visible;
+        }
+
+        boolean isVisible() {
+            return displayed_ && !Boolean.FALSE.equals(visible_);
+        }
+    }
+
+    /**
+     * Starts a pass over the tree: until {@link #endPass(VisibilityEvaluator)} is called, all the calls of
+     * {@link DomNode#isDisplayed()} on the current thread share a new evaluator.
+     * @return the evaluator of the enclosing pass (if any), to be passed to {@link #endPass(VisibilityEvaluator)}
+     */
+    public static VisibilityEvaluator beginPass() {
+        final VisibilityEvaluator previous = CURRENT_.get();
+        CURRENT_.set(new VisibilityEvaluator());
+        return previous;
+    }
+
+    /**
+     * Ends the pass started by {@link #beginPass()}.
+     * @param previous the evaluator returned by {@link #beginPass()}
+     */
+    public static void endPass(final VisibilityEvaluator previous) {
+        if (previous == null) {
+            CURRENT_.remove();
+        }
+        else {
+            CURRENT_.set(previous);
+        }
+    }
+
+    /**
+     * Returns the evaluator of the pass running on the current thread or a new one outside of a pass.
+     * @return the evaluator
+     */
+    public static VisibilityEvaluator current() {
+        final VisibilityEvaluator evaluator = CURRENT_.get();
+        if (evaluator == null) {
+            return new VisibilityEvaluator();
+        }
+        return evaluator;
+    }
+
+    /**
+     * Returns {@code false} if the node or one of its ancestors is hidden by its styles
+     * (<tt>display: none</tt>, <tt>visibility: hidden</tt> or the <tt>hidden</tt> attribute).
+     * Only the styles are evaluated; {@link DomNode#mayBeDisplayed()} and friends are up to the caller.
+     * @param node the node
+     * @return whether the styles of the node and its ancestors allow the node to be visible
+     */
+    public boolean isDisplayed(final DomNode node) {
+        final Page page = node.getPage();
+        if (page == null) {
+            return true;
+        }
+        final WebWindow window = page.getEnclosingWindow();
+        if (window == null || !window.getWebClient().getOptions().isCssEnabled()) {
+            return true;
+        }
+        return getState(node).isVisible();
+    }
+
+    private State getState(final DomNode node) {
+        // collect the ancestors not evaluated so far, then evaluate them top-down
+        final List<DomNode> pending = new ArrayList<>();
+        State state = ROOT;
+        for (DomNode current = node; current != null; current = current.getParentNode()) {
+            final State known = states_.get(current);
+            if (known != null) {
+                state = known;
+                break;
+            }
+            pending.add(current);
+        }
+
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            final DomNode current = pending.get(i);
+            state = evaluate(current, state);
+            states_.put(current, state);
+        }
+        return state;
+    }
+
+    private static State evaluate(final DomNode node, final State parent) {
+        // if a parent is display:none, there's nothing that a child can do to override it
+        if (!parent.displayed_) {
+            return NOT_DISPLAYED;
+        }
+        if (node instanceof HtmlElement && ((HtmlElement) node).isHidden()) {
+            return NOT_DISPLAYED;
+        }
+
+        final Object scriptableObject = node.getScriptableObject();
+        if (scriptableObject instanceof HTMLElement) {
+            final HTMLElement elem = (HTMLElement) scriptableObject;
+            final CSSStyleDeclaration style = elem.getWindow().getComputedStyle(elem, null);
+            if (DisplayStyle.NONE.value().equals(style.getDisplay())) {
+                return NOT_DISPLAYED;
+            }
+
+            // children can override the visibility used by parent nodes
+            final String visibility = style.getStyleAttribute(StyleAttributes.Definition.VISIBILITY);
+            if (visibility.length() > 5) {
+                if ("visible".equals(visibility)) {
+                    return VISIBLE;
+                }
+                if ("hidden".equals(visibility) || "collapse".equals(visibility)) {
+                    return HIDDEN;
+                }
+            }
+        }
+        return parent;
+    }
+}
@@ -54,10 +54,12 @@ import com.gargoylesoftware.htmlunit.html.Html;
 import com.gargoylesoftware.htmlunit.html.HtmlBody;
 import com.gargoylesoftware.htmlunit.html.HtmlFrameSet;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.html.PreloadScanner;
 import com.gargoylesoftware.htmlunit.html.UnknownElementFactory;
 import com.gargoylesoftware.htmlunit.html.XHtmlPage;
 import com.gargoylesoftware.htmlunit.html.parser.HTMLParser;
 import com.gargoylesoftware.htmlunit.html.parser.HTMLParserListener;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.svg.SvgElementFactory;
 
 import net.sourceforge.htmlunit.cyberneko.HTMLScanner;
@@ -224,6 +226,10 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
             throw new ObjectInstantiationException("Error setting HTML parser feature", e);
         }
 
+        if (page.getWebClient().getOptions().isPreloadEnabled()) {
+            PreloadScanner.preload(page, webResponse.getContentAsString(charset));
+        }
+
         try (InputStream content = webResponse.getContentAsStream()) {
             String encoding = null;
             if (charset != null) {
@@ -232,6 +238,11 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
             final XMLInputSource in = new XMLInputSource(null, url.toString(), null, content, encoding);
 
             page.registerParsingStart();
+            // no job of the page is started (and the virtual clock doesn't move) before the parser has finished
+            final JavaScriptJobManager jobManager = webWindow.getJobManager();
+            if (jobManager != null) {
+                jobManager.pageBusy();
+            }
             try {
                 domBuilder.parse(in);
             }
@@ -240,6 +251,11 @@ public final class HtmlUnitNekoHtmlParser implements HTMLParser {
                 final Throwable origin = extractNestedException(e);
                 throw new RuntimeException("Failed parsing content from " + url, origin);
             }
+            finally {
+                if (jobManager != null) {
+                    jobManager.pageIdle();
+                }
+            }
         }
         finally {
             page.registerParsingEnd();
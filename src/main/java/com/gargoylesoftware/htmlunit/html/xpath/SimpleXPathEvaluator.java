@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html.xpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.html.DomAttr;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.DomText;
+import com.gargoylesoftware.htmlunit.html.Html;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Evaluates simple location paths directly on the DOM of HTML pages, without the DTM of Xalan.
+ *
+ * <p>Supported are paths like <tt>//div[@class='x']/a</tt>, <tt>.//span[text()='y']</tt> or
+ * <tt>/html/body/div[2]</tt>: child and descendant steps with a name test or <tt>*</tt>, and the predicates
+ * <tt>[n]</tt>, <tt>[@a]</tt>, <tt>[@a='v']</tt>, <tt>[text()='v']</tt>, <tt>[.='v']</tt>,
+ * <tt>[contains(x, 'v')]</tt> and <tt>[starts-with(x, 'v')]</tt> (with <tt>x</tt> being <tt>@a</tt>,
+ * <tt>text()</tt> or <tt>.</tt>). Everything else is left to Xalan.</p>
+ *
+ * <p>The elements are matched from the last step to the first one (like CSS selectors), so the tree is
+ * traversed only once and the result is in document order.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class SimpleXPathEvaluator {
+
+    private final boolean absolute_;
+    private final Step[] steps_;
+
+    private enum Kind {
+        POSITION,
+        EXISTS,
+        EQUALS,
+        CONTAINS,
+        STARTS_WITH
+    }
+
+    private enum Source {
+        ATTRIBUTE,
+        TEXT,
+        SELF
+    }
+
+    private SimpleXPathEvaluator(final boolean absolute, final Step[] steps) {
+        absolute_ = absolute;
+        steps_ = steps;
+    }
+
+    /**
+     * Parses the specified expression.
+     * @param expression the XPath expression
+     * @param attributeCaseSensitive whether the attribute names are case sensitive
+     * @return the evaluator or {@code null} if the expression is not supported
+     */
+    static SimpleXPathEvaluator parse(final String expression, final boolean attributeCaseSensitive) {
+        return new Parser(expression, attributeCaseSensitive).parse();
+    }
+
+    /**
+     * Evaluates the expression.
+     * @param contextNode the context node
+     * @param firstOnly whether the evaluation stops at the first match
+     * @return the matching elements in document order or {@code null} if the context node is not supported
+     */
+    List<DomElement> evaluate(final DomNode contextNode, final boolean firstOnly) {
+        final SgmlPage page = contextNode.getPage();
+        DomNode root = contextNode;
+        while (root.getParentNode() != null) {
+            root = root.getParentNode();
+        }
+        if (root != page) {
+            return null;
+        }
+
+        final DomNode anchor;
+        if (absolute_) {
+            anchor = page;
+        }
+        else {
+            anchor = contextNode;
+        }
+        final int last = steps_.length - 1;
+
+        Iterable<DomElement> candidates = null;
+        if (steps_[last].name_ != null && page instanceof HtmlPage) {
+            candidates = ((HtmlPage) page).getIndexedElementsByTagName(anchor, steps_[last].name_);
+        }
+        if (candidates == null) {
+            candidates = anchor.getDomElementDescendants();
+        }
+
+        final List<DomElement> result = new ArrayList<>();
+        for (final DomElement element : candidates) {
+            if (matches(element, last, anchor)) {
+                result.add(element);
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the element matches the steps up to the specified index;
+     * the element has to be a descendant of the anchor.
+     */
+    private boolean matches(final DomElement element, final int index, final DomNode anchor) {
+        final Step step = steps_[index];
+        if (!step.matches(element)) {
+            return false;
+        }
+
+        final DomNode parent = element.getParentNode();
+        if (index == 0) {
+            return step.descendant_ || parent == anchor;
+        }
+        if (!step.descendant_) {
+            return parent instanceof DomElement && parent != anchor
+                    && matches((DomElement) parent, index - 1, anchor);
+        }
+        for (DomNode ancestor = parent; ancestor instanceof DomElement && ancestor != anchor;
+                ancestor = ancestor.getParentNode()) {
+            if (matches((DomElement) ancestor, index - 1, anchor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Step {
+        private final boolean descendant_;
+        private final String name_;
+        private final List<Predicate> predicates_ = new ArrayList<>();
+
+        Step(final boolean descendant, final String name) {
+            descendant_ = descendant;
+            name_ = name;
+        }
+
+        boolean matches(final DomElement element) {
+            return matchesName(element) && matchesPredicates(element, predicates_.size());
+        }
+
+        private boolean matchesName(final DomElement element) {
+            if (name_ == null) {
+                return true;
+            }
+            // Xalan sees the elements of HTML pages without namespace and with lower case names
+            final String namespaceURI = element.getNamespaceURI();
+            if (namespaceURI != null && !Html.XHTML_NAMESPACE.equals(namespaceURI)) {
+                return false;
+            }
+            return name_.equals(element.getLowercaseName());
+        }
+
+        private boolean matchesPredicates(final DomElement element, final int count) {
+            for (int i = 0; i < count; i++) {
+                final Predicate predicate = predicates_.get(i);
+                if (predicate.kind_ == Kind.POSITION) {
+                    if (getPosition(element, i) != predicate.position_) {
+                        return false;
+                    }
+                }
+                else if (!predicate.matches(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the position of the element among its siblings matching the name test
+         * and the predicates before the specified one.
+         */
+        private int getPosition(final DomElement element, final int predicateIndex) {
+            int position = 1;
+            for (DomNode sibling = element.getPreviousSibling(); sibling != null;
+                    sibling = sibling.getPreviousSibling()) {
+                if (sibling instanceof DomElement && matchesName((DomElement) sibling)
+                        && matchesPredicates((DomElement) sibling, predicateIndex)) {
+                    position++;
+                }
+            }
+            return position;
+        }
+    }
+
+    private static final class Predicate {
+        private final Kind kind_;
+        private final Source source_;
+        private final String attributeName_;
+        private final String literal_;
+        private final int position_;
+
+        Predicate(final Kind kind, final Source source, final String attributeName, final String literal,
+                final int position) {
+            kind_ = kind;
+            source_ = source;
+            attributeName_ = attributeName;
+            literal_ = literal;
+            position_ = position;
+        }
+
+        boolean matches(final DomElement element) {
+            switch (kind_) {
+                case EXISTS:
+                    return getAttribute(element) != null;
+
+                case EQUALS:
+                    if (source_ == Source.ATTRIBUTE) {
+                        final DomAttr attribute = getAttribute(element);
+                        return attribute != null && literal_.equals(attribute.getValue());
+                    }
+                    if (source_ == Source.TEXT) {
+                        // true if any of the text nodes is equal
+                        return getTexts(element, false).contains(literal_);
+                    }
+                    return literal_.equals(getStringValue(element));
+
+                case CONTAINS:
+                    return getString(element).contains(literal_);
+
+                case STARTS_WITH:
+                    return getString(element).startsWith(literal_);
+
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Returns the string value of the argument, for node sets the one of the first node.
+         */
+        private String getString(final DomElement element) {
+            switch (source_) {
+                case ATTRIBUTE:
+                    final DomAttr attribute = getAttribute(element);
+                    return attribute == null ? "" : attribute.getValue();
+
+                case TEXT:
+                    final List<String> texts = getTexts(element, true);
+                    return texts.isEmpty() ? "" : texts.get(0);
+
+                default:
+                    return getStringValue(element);
+            }
+        }
+
+        private DomAttr getAttribute(final DomElement element) {
+            for (final DomAttr attribute : element.getAttributesMap().values()) {
+                final String qualifiedName = attribute.getName();
+                if ("xmlns".equals(qualifiedName) || qualifiedName.startsWith("xmlns:")) {
+                    // namespace declarations are no attributes for Xalan
+                    continue;
+                }
+                final String namespaceURI = attribute.getNamespaceURI();
+                if (namespaceURI != null && !Html.XHTML_NAMESPACE.equals(namespaceURI)) {
+                    continue;
+                }
+                if (attributeName_.equals(attribute.getLowercaseName())) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the text nodes of the element; like Xalan, adjacent text nodes are joined.
+         */
+        private static List<String> getTexts(final DomElement element, final boolean firstOnly) {
+            final List<String> texts = new ArrayList<>();
+            StringBuilder text = null;
+            for (DomNode child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof DomText) {
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(((DomText) child).getData());
+                }
+                else if (text != null) {
+                    texts.add(text.toString());
+                    if (firstOnly) {
+                        return texts;
+                    }
+                    text = null;
+                }
+            }
+            if (text != null) {
+                texts.add(text.toString());
+            }
+            return texts;
+        }
+
+        private static String getStringValue(final DomElement element) {
+            final StringBuilder value = new StringBuilder();
+            for (final DomNode descendant : element.getDescendants()) {
+                if (descendant instanceof DomText) {
+                    value.append(((DomText) descendant).getData());
+                }
+            }
+            return value.toString();
+        }
+    }
+
+    private static final class Parser {
+        private final String expression_;
+        private final boolean attributeCaseSensitive_;
+        private int pos_;
+
+        Parser(final String expression, final boolean attributeCaseSensitive) {
+            expression_ = expression;
+            attributeCaseSensitive_ = attributeCaseSensitive;
+        }
+
+        SimpleXPathEvaluator parse() {
+            boolean absolute = false;
+            boolean descendant = false;
+            if (startsWith(".//")) {
+                pos_ += 3;
+                descendant = true;
+            }
+            else if (startsWith("./")) {
+                pos_ += 2;
+            }
+            else if (startsWith("//")) {
+                pos_ += 2;
+                absolute = true;
+                descendant = true;
+            }
+            else if (startsWith("/")) {
+                pos_++;
+                absolute = true;
+            }
+
+            final List<Step> steps = new ArrayList<>();
+            while (true) {
+                final Step step = parseStep(descendant);
+                if (step == null) {
+                    return null;
+                }
+                steps.add(step);
+
+                if (pos_ == expression_.length()) {
+                    break;
+                }
+                if (startsWith("//")) {
+                    pos_ += 2;
+                    descendant = true;
+                }
+                else if (startsWith("/")) {
+                    pos_++;
+                    descendant = false;
+                }
+                else {
+                    return null;
+                }
+            }
+            return new SimpleXPathEvaluator(absolute, steps.toArray(new Step[steps.size()]));
+        }
+
+        private Step parseStep(final boolean descendant) {
+            final Step step;
+            if (peek() == '*') {
+                pos_++;
+                step = new Step(descendant, null);
+            }
+            else {
+                final String name = parseName();
+                if (name == null) {
+                    return null;
+                }
+                // the expression is lower cased outside of the brackets for HTML pages
+                step = new Step(descendant, name.toLowerCase(Locale.ROOT));
+            }
+
+            while (peek() == '[') {
+                pos_++;
+                skipBlanks();
+                final Predicate predicate = parsePredicate();
+                if (predicate == null) {
+                    return null;
+                }
+                skipBlanks();
+                if (peek() != ']') {
+                    return null;
+                }
+                pos_++;
+                step.predicates_.add(predicate);
+            }
+            return step;
+        }
+
+        private Predicate parsePredicate() {
+            final char c = peek();
+            if (c >= '0' && c <= '9') {
+                final int start = pos_;
+                while (peek() >= '0' && peek() <= '9') {
+                    pos_++;
+                }
+                if (pos_ - start > 9) {
+                    return null;
+                }
+                return new Predicate(Kind.POSITION, null, null, null,
+                        Integer.parseInt(expression_.substring(start, pos_)));
+            }
+
+            if (c == '@') {
+                final String attributeName = parseAttributeName();
+                if (attributeName == null) {
+                    return null;
+                }
+                skipBlanks();
+                if (peek() != '=') {
+                    return new Predicate(Kind.EXISTS, Source.ATTRIBUTE, attributeName, null, 0);
+                }
+                pos_++;
+                return parseEqualsLiteral(Source.ATTRIBUTE, attributeName);
+            }
+
+            if (startsWith("text()")) {
+                pos_ += 6;
+                skipBlanks();
+                if (peek() != '=') {
+                    return null;
+                }
+                pos_++;
+                return parseEqualsLiteral(Source.TEXT, null);
+            }
+
+            if (c == '.') {
+                pos_++;
+                skipBlanks();
+                if (peek() != '=') {
+                    return null;
+                }
+                pos_++;
+                return parseEqualsLiteral(Source.SELF, null);
+            }
+
+            final Kind kind;
+            if (startsWith("contains(")) {
+                pos_ += 9;
+                kind = Kind.CONTAINS;
+            }
+            else if (startsWith("starts-with(")) {
+                pos_ += 12;
+                kind = Kind.STARTS_WITH;
+            }
+            else {
+                return null;
+            }
+
+            skipBlanks();
+            final Source source;
+            String attributeName = null;
+            if (peek() == '@') {
+                attributeName = parseAttributeName();
+                if (attributeName == null) {
+                    return null;
+                }
+                source = Source.ATTRIBUTE;
+            }
+            else if (startsWith("text()")) {
+                pos_ += 6;
+                source = Source.TEXT;
+            }
+            else if (peek() == '.' && !startsWith("..")) {
+                pos_++;
+                source = Source.SELF;
+            }
+            else {
+                return null;
+            }
+
+            skipBlanks();
+            if (peek() != ',') {
+                return null;
+            }
+            pos_++;
+            skipBlanks();
+            final String literal = parseLiteral();
+            if (literal == null) {
+                return null;
+            }
+            skipBlanks();
+            if (peek() != ')') {
+                return null;
+            }
+            pos_++;
+            return new Predicate(kind, source, attributeName, literal, 0);
+        }
+
+        private Predicate parseEqualsLiteral(final Source source, final String attributeName) {
+            skipBlanks();
+            final String literal = parseLiteral();
+            if (literal == null) {
+                return null;
+            }
+            return new Predicate(Kind.EQUALS, source, attributeName, literal, 0);
+        }
+
+        private String parseAttributeName() {
+            pos_++;
+            final String name = parseName();
+            if (name == null || attributeCaseSensitive_) {
+                return name;
+            }
+
+            // same as the preprocessing done for Xalan: only the leading ASCII letters are lower cased
+            int end = 0;
+            while (end < name.length()
+                    && (name.charAt(end) >= 'a' && name.charAt(end) <= 'z'
+                        || name.charAt(end) >= 'A' && name.charAt(end) <= 'Z')) {
+                end++;
+            }
+            return name.substring(0, end).toLowerCase(Locale.ROOT) + name.substring(end);
+        }
+
+        private String parseName() {
+            final int start = pos_;
+            if (!Character.isLetter(peek()) && peek() != '_') {
+                return null;
+            }
+            pos_++;
+            while (Character.isLetterOrDigit(peek()) || peek() == '-' || peek() == '_' || peek() == '.') {
+                pos_++;
+            }
+            return expression_.substring(start, pos_);
+        }
+
+        private String parseLiteral() {
+            final char quote = peek();
+            if (quote != '\'' && quote != '"') {
+                return null;
+            }
+            final int end = expression_.indexOf(quote, pos_ + 1);
+            if (end == -1) {
+                return null;
+            }
+            final String literal = expression_.substring(pos_ + 1, end);
+            // the preprocessing for Xalan doesn't care about literals, leave these cases to Xalan
+            if (literal.indexOf('@') != -1 || literal.indexOf('[') != -1 || literal.indexOf(']') != -1
+                    || literal.indexOf('(') != -1 || literal.indexOf(')') != -1) {
+                return null;
+            }
+            pos_ = end + 1;
+            return literal;
+        }
+
+        private void skipBlanks() {
+            while (peek() == ' ') {
+                pos_++;
+            }
+        }
+
+        private boolean startsWith(final String prefix) {
+            return expression_.startsWith(prefix, pos_);
+        }
+
+        private char peek() {
+            if (pos_ < expression_.length()) {
+                return expression_.charAt(pos_);
+            }
+            return 0;
+        }
+    }
+}
@@ -30,7 +30,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.util.LruCache;
 
 /**
  * Collection of XPath utility methods.
@@ -42,6 +44,14 @@ public final class XPathHelper {
 
     private static ThreadLocal<Boolean> PROCESS_XPATH_ = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
+    private static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+    /**
+     * The compiled expressions, shared by all threads. The compiled expressions keep no state
+     * while executed (like the ones of the compiled XSLT templates).
+     */
+    private static final LruCache<String, XPathAdapter> EXPRESSION_CACHE = new LruCache<>(MAX_CACHED_EXPRESSIONS);
+
     /**
      * Private to avoid instantiation.
      */
@@ -66,6 +76,27 @@ public final class XPathHelper {
             throw new IllegalArgumentException("Null is not a valid XPath expression");
         }
 
+        final List<T> simpleResult = evaluateSimpleXPath(node, xpathExpr, caseSensitiveXpathAttributes, false);
+        if (simpleResult != null) {
+            return simpleResult;
+        }
+        return getByXPathUsingXalan(node, xpathExpr, resolver, caseSensitiveXpathAttributes);
+    }
+
+    /**
+     * Evaluates an XPath expression from the specified node using Xalan (without the shortcut
+     * for simple location paths).
+     *
+     * @param <T> the type class
+     * @param node the node to start searching from
+     * @param xpathExpr the XPath expression
+     * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
+     * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
+     * @return the list of objects found
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> getByXPathUsingXalan(final DomNode node, final String xpathExpr,
+            final PrefixResolver resolver, final boolean caseSensitiveXpathAttributes) {
         PROCESS_XPATH_.set(Boolean.TRUE);
         final List<T> list = new ArrayList<>();
         try {
@@ -99,6 +130,52 @@ public final class XPathHelper {
         return list;
     }
 
+    /**
+     * Evaluates an XPath expression from the specified node, returning the first node found.
+     * Simple location paths stop the evaluation at the first match.
+     *
+     * @param <T> the type class
+     * @param node the node to start searching from
+     * @param xpathExpr the XPath expression
+     * @param resolver the prefix resolver to use for resolving namespace prefixes, or null
+     * @param caseSensitiveXpathAttributes true if the browser handles xpath attribute names case sensitive
+     * @return the first object found or {@code null}
+     */
+    public static <T> T getFirstByXPath(final DomNode node, final String xpathExpr,
+            final PrefixResolver resolver, final boolean caseSensitiveXpathAttributes) {
+        if (xpathExpr == null) {
+            throw new IllegalArgumentException("Null is not a valid XPath expression");
+        }
+
+        List<T> results = evaluateSimpleXPath(node, xpathExpr, caseSensitiveXpathAttributes, true);
+        if (results == null) {
+            results = getByXPath(node, xpathExpr, resolver, caseSensitiveXpathAttributes);
+        }
+        if (results.isEmpty()) {
+            return null;
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Evaluates simple location paths on HTML pages by walking the DOM.
+     * @return the elements found or {@code null} if the expression has to be evaluated by Xalan
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> evaluateSimpleXPath(final DomNode node, final String xpathExpr,
+            final boolean caseSensitiveXpathAttributes, final boolean firstOnly) {
+        final SgmlPage page = node.getPage();
+        if (page == null || !page.isHtmlPage() || page.hasCaseSensitiveTagNames()) {
+            return null;
+        }
+
+        final SimpleXPathEvaluator evaluator = SimpleXPathEvaluator.parse(xpathExpr, caseSensitiveXpathAttributes);
+        if (evaluator == null) {
+            return null;
+        }
+        return (List<T>) evaluator.evaluate(node, firstOnly);
+    }
+
     /**
      * Returns whether the thread is currently evaluating XPath expression or no.
      * @return whether the thread is currently evaluating XPath expression or no
@@ -119,7 +196,6 @@ public final class XPathHelper {
     private static XObject evaluateXPath(final DomNode contextNode,
             final String str, final PrefixResolver prefixResolver,
             final boolean caseSensitiveXpathAttributes) throws TransformerException {
-        final XPathContext xpathSupport = new XPathContext();
         final Node xpathExpressionContext;
         if (contextNode.getNodeType() == Node.DOCUMENT_NODE) {
             xpathExpressionContext = ((Document) contextNode).getDocumentElement();
@@ -133,12 +209,92 @@ public final class XPathHelper {
             resolver = new HtmlUnitPrefixResolver(xpathExpressionContext);
         }
 
-        final boolean caseSensitive = contextNode.getPage().hasCaseSensitiveTagNames();
+        final SgmlPage page = contextNode.getPage();
+        final boolean caseSensitive = page.hasCaseSensitiveTagNames();
         final boolean attributeCaseSensitive = caseSensitive || caseSensitiveXpathAttributes;
 
-        final XPathAdapter xpath = new XPathAdapter(str, null, resolver, null, caseSensitive, attributeCaseSensitive);
+        final XPathAdapter xpath = getXPathAdapter(str, resolver, caseSensitive, attributeCaseSensitive);
+
+        // the DTM of the page is reused until the DOM changes; the DTMs of detached subtrees are not
+        // kept to avoid collecting one DTM per subtree in the context
+        DomNode root = contextNode;
+        while (root.getParentNode() != null) {
+            root = root.getParentNode();
+        }
+        if (root != page) {
+            final XPathContext xpathSupport = new XPathContext();
+            final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+            return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        }
+
+        final int domChangeCount = page.getDomChangeCount();
+        XPathContext xpathSupport = page.takeXPathContext();
+        if (xpathSupport == null) {
+            xpathSupport = new XPathContext();
+        }
         final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
-        return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        final XObject result = xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        page.cacheXPathContext(xpathSupport, domChangeCount);
+        return result;
+    }
+
+    /**
+     * Returns the compiled expression from the cache or compiles it. Expressions using namespace prefixes
+     * depend on the prefix resolver and are not cached.
+     */
+    private static XPathAdapter getXPathAdapter(final String str, final PrefixResolver resolver,
+            final boolean caseSensitive, final boolean attributeCaseSensitive) throws TransformerException {
+        final String key = (caseSensitive ? "C" : "c") + (attributeCaseSensitive ? "A" : "a") + str;
+        final XPathAdapter cached = EXPRESSION_CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final RecordingPrefixResolver recordingResolver = new RecordingPrefixResolver(resolver);
+        final XPathAdapter xpath = new XPathAdapter(str, null, recordingResolver, null,
+                caseSensitive, attributeCaseSensitive);
+        if (!recordingResolver.isUsed()) {
+            EXPRESSION_CACHE.put(key, xpath);
+        }
+        return xpath;
+    }
+
+    /**
+     * A {@link PrefixResolver} remembering if a prefix was resolved.
+     */
+    private static final class RecordingPrefixResolver implements PrefixResolver {
+        private final PrefixResolver resolver_;
+        private boolean used_;
+
+        RecordingPrefixResolver(final PrefixResolver resolver) {
+            resolver_ = resolver;
+        }
+
+        @Override
+        public String getNamespaceForPrefix(final String prefix) {
+            used_ = true;
+            return resolver_.getNamespaceForPrefix(prefix);
+        }
+
+        @Override
+        public String getNamespaceForPrefix(final String prefix, final Node context) {
+            used_ = true;
+            return resolver_.getNamespaceForPrefix(prefix, context);
+        }
+
+        @Override
+        public String getBaseIdentifier() {
+            return resolver_.getBaseIdentifier();
+        }
+
+        @Override
+        public boolean handlesNullPrefixes() {
+            return resolver_.handlesNullPrefixes();
+        }
+
+        boolean isUsed() {
+            return used_;
+        }
     }
 
 }
@@ -98,6 +98,14 @@ public interface AbstractJavaScriptEngine<SCRIPT> {
      */
     long getJavaScriptTimeout();
 
+    /**
+     * Stops the event loop processing the background jobs and waits for the job it is running (if any);
+     * no event loop is started afterwards. {@link #shutdown()} stops it as well.
+     */
+    default void stopEventLoop() {
+        // no event loop
+    }
+
     /**
      * Shutdown the JavaScriptEngine.
      */
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.util.LruCache;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+/**
+ * A process wide cache of compiled scripts, shared by all {@link JavaScriptEngine}s.
+ * The scripts are keyed by a hash of the source code, the source name, the start line and
+ * the {@link BrowserVersion} (the compilation depends on browser specific features), this way
+ * the same library is only compiled once, regardless of the {@link com.gargoylesoftware.htmlunit.WebClient}
+ * loading it and of the cacheability of the response delivering it.
+ *
+ * <p>Scripts compiled while a {@link com.gargoylesoftware.htmlunit.ScriptPreProcessor} or a
+ * debugger is active are not cached.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompiledScriptCache {
+
+    private static final CompiledScriptCache INSTANCE = new CompiledScriptCache();
+
+    private final LruCache<Key, Script> entries_ = new LruCache<>(500);
+
+    private static final class Key {
+        private final BrowserVersion browserVersion_;
+        private final int optimizationLevel_;
+        private final String sourceName_;
+        private final int startLine_;
+        private final String sourceHash_;
+
+        Key(final BrowserVersion browserVersion, final int optimizationLevel, final String sourceName,
+                final int startLine, final String sourceCode) {
+            browserVersion_ = browserVersion;
+            optimizationLevel_ = optimizationLevel;
+            sourceName_ = sourceName;
+            startLine_ = startLine;
+            sourceHash_ = DigestUtils.sha256Hex(sourceCode);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return browserVersion_ == other.browserVersion_
+                    && optimizationLevel_ == other.optimizationLevel_
+                    && startLine_ == other.startLine_
+                    && Objects.equals(sourceName_, other.sourceName_)
+                    && sourceHash_.equals(other.sourceHash_);
+        }
+
+        @Override
+        public int hashCode() {
+            return sourceHash_.hashCode();
+        }
+    }
+
+    private CompiledScriptCache() {
+    }
+
+    /**
+     * Returns the (process wide) instance.
+     * @return the instance
+     */
+    public static CompiledScriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the compiled script for the specified source; if it is not part of the cache,
+     * the script is compiled using the given compiler and added to the cache.
+     *
+     * @param browserVersion the browser version the script is compiled for
+     * @param optimizationLevel the optimization level used for compilation
+     * @param sourceCode the source code
+     * @param sourceName the source name
+     * @param startLine the start line
+     * @param compiler compiles the script if needed; may return {@code null} (e.g. in case of syntax errors)
+     * @return the compiled script or {@code null}
+     */
+    public Script get(final BrowserVersion browserVersion, final int optimizationLevel,
+            final String sourceCode, final String sourceName, final int startLine,
+            final Supplier<Script> compiler) {
+        final Key key = new Key(browserVersion, optimizationLevel, sourceName, startLine, sourceCode);
+        return entries_.get(key, compiler);
+    }
+
+    /**
+     * Returns the maximum number of scripts kept; the default is <tt>500</tt>.
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        return entries_.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of scripts kept, <tt>0</tt> disables the cache.
+     * @param maxSize the maximum size (must be &gt;= 0)
+     */
+    public void setMaxSize(final int maxSize) {
+        entries_.setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     * @return the size
+     */
+    public int getSize() {
+        return entries_.getSize();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return entries_.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return entries_.getMissCount();
+    }
+
+    /**
+     * Removes all scripts and resets the statistics.
+     */
+    public void clear() {
+        entries_.clear();
+    }
+}
@@ -57,6 +57,7 @@ import net.sourceforge.htmlunit.corejs.javascript.debug.Debugger;
 public class HtmlUnitContextFactory extends ContextFactory {
 
     private static final int INSTRUCTION_COUNT_THRESHOLD = 10_000;
+    private static final int OPTIMIZATION_LEVEL = 9;
 
     private final WebClient webClient_;
     private final BrowserVersion browserVersion_;
@@ -274,8 +275,16 @@ public class HtmlUnitContextFactory extends ContextFactory {
         final TimeoutContext cx = new TimeoutContext(this);
         cx.setLanguageVersion(Context.VERSION_ES6);
 
-        // Use pure interpreter mode to get observeInstructionCount() callbacks.
-        cx.setOptimizationLevel(-1);
+        if (debugger_ == null && webClient_.getOptions().isJavaScriptOptimized()) {
+            // Compile to JVM byte code; the generated code calls observeInstructionCount()
+            // at loop edges and function entries, this way the timeout is still enforced.
+            cx.setOptimizationLevel(OPTIMIZATION_LEVEL);
+            cx.setGenerateObserverCount(true);
+        }
+        else {
+            // Use pure interpreter mode to get observeInstructionCount() callbacks.
+            cx.setOptimizationLevel(-1);
+        }
 
         // Set threshold on how often we want to receive the callbacks
         cx.setInstructionObserverThreshold(INSTRUCTION_COUNT_THRESHOLD);
@@ -290,7 +299,10 @@ public class HtmlUnitContextFactory extends ContextFactory {
         // register custom RegExp processing
         ScriptRuntime.setRegExpProxy(cx, new HtmlUnitRegExpProxy(ScriptRuntime.getRegExpProxy(cx), browserVersion_));
 
-        cx.setMaximumInterpreterStackDepth(10_000);
+        // the interpreter stack depth can only be limited in interpreted mode
+        if (cx.getOptimizationLevel() == -1) {
+            cx.setMaximumInterpreterStackDepth(10_000);
+        }
 
         return cx;
     }
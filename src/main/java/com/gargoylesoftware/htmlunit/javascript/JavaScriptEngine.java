@@ -36,10 +36,10 @@ import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -54,6 +54,7 @@ import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.background.BackgroundJavaScriptFactory;
 import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptExecutor;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration.ConstantInfo;
 import com.gargoylesoftware.htmlunit.javascript.configuration.ClassConfiguration.PropertyInfo;
@@ -104,6 +105,12 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
 
     private static final Log LOG = LogFactory.getLog(JavaScriptEngine.class);
 
+    /**
+     * Host classes rarely used by real world scripts; their prototypes and constructors are
+     * only set up on first access.
+     */
+    private static final String[] LAZY_CLASS_NAME_PREFIXES = {"WebGL2", "MIDI", "RTC", "Speech", "Payment", "SVG"};
+
     private WebClient webClient_;
     private final HtmlUnitContextFactory contextFactory_;
     private final JavaScriptConfiguration jsConfig_;
@@ -114,6 +121,8 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
 
     /** The JavaScriptExecutor corresponding to all windows of this Web client */
     private transient JavaScriptExecutor javaScriptExecutor_;
+    /** Whether {@link #stopEventLoop()} has been called. */
+    private transient boolean eventLoopStopped_;
 
     /**
      * Key used to place the scope in which the execution of some JavaScript code
@@ -195,10 +204,24 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
      * @throws Exception if something goes wrong
      */
     private void init(final WebWindow webWindow, final Context context) throws Exception {
-        final WebClient webClient = webWindow.getWebClient();
-        final BrowserVersion browserVersion = webClient.getBrowserVersion();
-        final Map<Class<? extends Scriptable>, Scriptable> prototypes = new HashMap<>();
-        final Map<String, Scriptable> prototypesPerJSName = new HashMap<>();
+        final BrowserVersion browserVersion = webWindow.getWebClient().getBrowserVersion();
+
+        final Window window = createWindowScope(browserVersion, context);
+        window.initialize(webWindow);
+    }
+
+    /**
+     * Creates the global scope of a window, with all the standard objects and the prototypes and constructors
+     * of the host classes. The scope is not yet bound to a {@link WebWindow}; this part of the setup
+     * only depends on the browser version.
+     * @param browserVersion the browser version
+     * @param context the current context
+     * @return the new scope
+     * @throws Exception if something goes wrong
+     */
+    private Window createWindowScope(final BrowserVersion browserVersion, final Context context) throws Exception {
+        final Map<Class<? extends Scriptable>, Scriptable> prototypes = new ConcurrentHashMap<>();
+        final Map<String, Scriptable> prototypesPerJSName = new ConcurrentHashMap<>();
 
         final Window window = new Window();
         ((SimpleScriptable) window).setClassName("Window");
@@ -251,151 +274,33 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
             reflect.defineProperties();
         }
 
-        final String windowClassName = Window.class.getName();
+        final Map<Object, Runnable> lazyPrototypes = new ConcurrentHashMap<>();
+        final List<ClassConfiguration> eagerConfigs = new ArrayList<>();
         for (final ClassConfiguration config : jsConfig_.getAll()) {
-            final boolean isWindow = windowClassName.equals(config.getHostClass().getName());
-            if (isWindow) {
-                configureConstantsPropertiesAndFunctions(config, window);
-
-                final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
-                prototypesPerJSName.put(config.getClassName(), prototype);
+            if (isLazy(config)) {
+                final Runnable initializer = new LazyPrototypeInitializer(config, window, browserVersion,
+                        prototypes, prototypesPerJSName, lazyPrototypes);
+                lazyPrototypes.put(config.getClassName(), initializer);
+                lazyPrototypes.put(config.getHostClass(), initializer);
             }
             else {
-                final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
-                if (config.isJsObject()) {
-                    // Place object with prototype property in Window scope
-                    final HtmlUnitScriptable obj = config.getHostClass().newInstance();
-                    prototype.defineProperty("__proto__", prototype, ScriptableObject.DONTENUM);
-                    obj.defineProperty("prototype", prototype, ScriptableObject.DONTENUM); // but not setPrototype!
-                    obj.setParentScope(window);
-                    obj.setClassName(config.getClassName());
-                    ScriptableObject.defineProperty(window, obj.getClassName(), obj, ScriptableObject.DONTENUM);
-                    // this obj won't have prototype, constants need to be configured on it again
-                    configureConstants(config, obj);
-                }
-                prototypes.put(config.getHostClass(), prototype);
-                prototypesPerJSName.put(config.getClassName(), prototype);
+                eagerConfigs.add(config);
+                configurePrototype(config, window, browserVersion, prototypes, prototypesPerJSName);
             }
         }
 
-        for (final ClassConfiguration config : jsConfig_.getAll()) {
-            final Executable jsConstructor = config.getJsConstructor();
-            final String jsClassName = config.getClassName();
-            Scriptable prototype = prototypesPerJSName.get(jsClassName);
-            final String hostClassSimpleName = config.getHostClassSimpleName();
-
-            if ("Image".equals(hostClassSimpleName)
-                    && browserVersion.hasFeature(JS_IMAGE_PROTOTYPE_SAME_AS_HTML_IMAGE)) {
-                prototype = prototypesPerJSName.get("HTMLImageElement");
-            }
-            if ("Option".equals(hostClassSimpleName)) {
-                prototype = prototypesPerJSName.get("HTMLOptionElement");
-            }
-
-            switch (hostClassSimpleName) {
-                case "WebKitMutationObserver":
-                    prototype = prototypesPerJSName.get("MutationObserver");
-                    break;
-
-                case "webkitURL":
-                    prototype = prototypesPerJSName.get("URL");
-                    break;
-
-                default:
-            }
-            if (prototype != null && config.isJsObject()) {
-                if (jsConstructor == null) {
-                    final ScriptableObject constructor;
-                    if ("Window".equals(jsClassName)) {
-                        constructor = (ScriptableObject) ScriptableObject.getProperty(window, "constructor");
-                    }
-                    else {
-                        constructor = config.getHostClass().newInstance();
-                        ((SimpleScriptable) constructor).setClassName(config.getClassName());
-                    }
-                    defineConstructor(window, prototype, constructor);
-                    configureConstantsStaticPropertiesAndStaticFunctions(config, constructor);
-                }
-                else {
-                    final BaseFunction function;
-                    if ("Window".equals(jsClassName)) {
-                        function = (BaseFunction) ScriptableObject.getProperty(window, "constructor");
-                    }
-                    else {
-                        function = new RecursiveFunctionObject(jsClassName, jsConstructor, window);
-                    }
-
-                    if ("WebKitMutationObserver".equals(hostClassSimpleName)
-                            || "webkitURL".equals(hostClassSimpleName)
-                            || "Image".equals(hostClassSimpleName)
-                            || "Option".equals(hostClassSimpleName)) {
-                        final Object prototypeProperty = ScriptableObject.getProperty(window, prototype.getClassName());
-
-                        if (function instanceof FunctionObject) {
-                            try {
-                                ((FunctionObject) function).addAsConstructor(window, prototype);
-                            }
-                            catch (final Exception e) {
-                                // TODO see issue #1897
-                                if (LOG.isWarnEnabled()) {
-                                    final String newline = System.lineSeparator();
-                                    LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
-                                            + e.getMessage() + newline
-                                            + "prototype: " + prototype.getClassName());
-                                }
-                            }
-                        }
-
-                        ScriptableObject.defineProperty(window, hostClassSimpleName, function,
-                                ScriptableObject.DONTENUM);
-
-                        // the prototype class name is set as a side effect of functionObject.addAsConstructor
-                        // so we restore its value
-                        if (!hostClassSimpleName.equals(prototype.getClassName())) {
-                            if (prototypeProperty == UniqueTag.NOT_FOUND) {
-                                ScriptableObject.deleteProperty(window, prototype.getClassName());
-                            }
-                            else {
-                                ScriptableObject.defineProperty(window, prototype.getClassName(),
-                                        prototypeProperty, ScriptableObject.DONTENUM);
-                            }
-                        }
-                    }
-                    else {
-                        if (function instanceof FunctionObject) {
-                            try {
-                                ((FunctionObject) function).addAsConstructor(window, prototype);
-                            }
-                            catch (final Exception e) {
-                                // TODO see issue #1897
-                                if (LOG.isWarnEnabled()) {
-                                    final String newline = System.lineSeparator();
-                                    LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
-                                            + e.getMessage() + newline
-                                            + "prototype: " + prototype.getClassName());
-                                }
-                            }
-                        }
-                    }
-
-                    configureConstantsStaticPropertiesAndStaticFunctions(config, function);
-                }
-            }
+        for (final ClassConfiguration config : eagerConfigs) {
+            configureConstructor(config, window, browserVersion, prototypesPerJSName);
         }
         window.setPrototype(prototypesPerJSName.get(Window.class.getSimpleName()));
+        window.setPrototypes(prototypes, prototypesPerJSName);
+        window.setLazyPrototypes(lazyPrototypes);
 
         // once all prototypes have been build, it's possible to configure the chains
-        final Scriptable objectPrototype = ScriptableObject.getObjectPrototype(window);
-        for (final Map.Entry<String, Scriptable> entry : prototypesPerJSName.entrySet()) {
-            final String name = entry.getKey();
-            final ClassConfiguration config = jsConfig_.getClassConfiguration(name);
-            final Scriptable prototype = entry.getValue();
-            if (!StringUtils.isEmpty(config.getExtendedClassName())) {
-                final Scriptable parentPrototype = prototypesPerJSName.get(config.getExtendedClassName());
-                prototype.setPrototype(parentPrototype);
-            }
-            else {
-                prototype.setPrototype(objectPrototype);
+        for (final ClassConfiguration config : eagerConfigs) {
+            final Scriptable prototype = prototypesPerJSName.get(config.getClassName());
+            if (prototype != null) {
+                linkPrototype(config, prototype, window);
             }
         }
 
@@ -462,7 +367,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         }
         deleteProperties(window, "isXMLName");
 
-        NativeFunctionToStringFunction.installFix(window, webClient.getBrowserVersion());
+        NativeFunctionToStringFunction.installFix(window, browserVersion);
 
         datePrototype.defineFunctionProperties(new String[] {"toLocaleDateString", "toLocaleTimeString"},
                 DateCustom.class, ScriptableObject.DONTENUM);
@@ -478,8 +383,239 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         numberPrototype.defineFunctionProperties(new String[] {"toLocaleString"},
                 NumberCustom.class, ScriptableObject.DONTENUM);
 
-        window.setPrototypes(prototypes, prototypesPerJSName);
-        window.initialize(webWindow);
+        return window;
+    }
+
+    /**
+     * Returns whether the host class is rarely used and therefore only set up on first access
+     * (see {@link #LAZY_CLASS_NAME_PREFIXES}).
+     * @param config the class configuration
+     * @return whether the class is set up lazily
+     */
+    private static boolean isLazy(final ClassConfiguration config) {
+        return config.isJsObject() && StringUtils.startsWithAny(config.getClassName(), LAZY_CLASS_NAME_PREFIXES);
+    }
+
+    /**
+     * Creates the prototype of the host class.
+     * @param config the class configuration
+     * @param window the window scope
+     * @param browserVersion the browser version
+     * @param prototypes the prototypes per host class
+     * @param prototypesPerJSName the prototypes per JavaScript class name
+     * @throws Exception if something goes wrong
+     */
+    private static void configurePrototype(final ClassConfiguration config, final Window window,
+            final BrowserVersion browserVersion, final Map<Class<? extends Scriptable>, Scriptable> prototypes,
+            final Map<String, Scriptable> prototypesPerJSName) throws Exception {
+        final boolean isWindow = Window.class.getName().equals(config.getHostClass().getName());
+        if (isWindow) {
+            configureConstantsPropertiesAndFunctions(config, window);
+
+            final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
+            prototypesPerJSName.put(config.getClassName(), prototype);
+        }
+        else {
+            final HtmlUnitScriptable prototype = configureClass(config, window, browserVersion);
+            if (config.isJsObject()) {
+                // Place object with prototype property in Window scope
+                final HtmlUnitScriptable obj = config.getHostClass().newInstance();
+                prototype.defineProperty("__proto__", prototype, ScriptableObject.DONTENUM);
+                obj.defineProperty("prototype", prototype, ScriptableObject.DONTENUM); // but not setPrototype!
+                obj.setParentScope(window);
+                obj.setClassName(config.getClassName());
+                ScriptableObject.defineProperty(window, obj.getClassName(), obj, ScriptableObject.DONTENUM);
+                // this obj won't have prototype, constants need to be configured on it again
+                configureConstants(config, obj);
+            }
+            prototypes.put(config.getHostClass(), prototype);
+            prototypesPerJSName.put(config.getClassName(), prototype);
+        }
+    }
+
+    /**
+     * Defines the constructor of the host class in the window scope.
+     * @param config the class configuration
+     * @param window the window scope
+     * @param browserVersion the browser version
+     * @param prototypesPerJSName the prototypes per JavaScript class name
+     * @throws Exception if something goes wrong
+     */
+    private static void configureConstructor(final ClassConfiguration config, final Window window,
+            final BrowserVersion browserVersion, final Map<String, Scriptable> prototypesPerJSName)
+        throws Exception {
+        final Executable jsConstructor = config.getJsConstructor();
+        final String jsClassName = config.getClassName();
+        Scriptable prototype = prototypesPerJSName.get(jsClassName);
+        final String hostClassSimpleName = config.getHostClassSimpleName();
+
+        if ("Image".equals(hostClassSimpleName)
+                && browserVersion.hasFeature(JS_IMAGE_PROTOTYPE_SAME_AS_HTML_IMAGE)) {
+            prototype = prototypesPerJSName.get("HTMLImageElement");
+        }
+        if ("Option".equals(hostClassSimpleName)) {
+            prototype = prototypesPerJSName.get("HTMLOptionElement");
+        }
+
+        switch (hostClassSimpleName) {
+            case "WebKitMutationObserver":
+                prototype = prototypesPerJSName.get("MutationObserver");
+                break;
+
+            case "webkitURL":
+                prototype = prototypesPerJSName.get("URL");
+                break;
+
+            default:
+        }
+        if (prototype != null && config.isJsObject()) {
+            if (jsConstructor == null) {
+                final ScriptableObject constructor;
+                if ("Window".equals(jsClassName)) {
+                    constructor = (ScriptableObject) ScriptableObject.getProperty(window, "constructor");
+                }
+                else {
+                    constructor = config.getHostClass().newInstance();
+                    ((SimpleScriptable) constructor).setClassName(config.getClassName());
+                }
+                defineConstructor(window, prototype, constructor);
+                configureConstantsStaticPropertiesAndStaticFunctions(config, constructor);
+            }
+            else {
+                final BaseFunction function;
+                if ("Window".equals(jsClassName)) {
+                    function = (BaseFunction) ScriptableObject.getProperty(window, "constructor");
+                }
+                else {
+                    function = new RecursiveFunctionObject(jsClassName, jsConstructor, window);
+                }
+
+                if ("WebKitMutationObserver".equals(hostClassSimpleName)
+                        || "webkitURL".equals(hostClassSimpleName)
+                        || "Image".equals(hostClassSimpleName)
+                        || "Option".equals(hostClassSimpleName)) {
+                    final Object prototypeProperty = ScriptableObject.getProperty(window, prototype.getClassName());
+
+                    if (function instanceof FunctionObject) {
+                        try {
+                            ((FunctionObject) function).addAsConstructor(window, prototype);
+                        }
+                        catch (final Exception e) {
+                            // TODO see issue #1897
+                            if (LOG.isWarnEnabled()) {
+                                final String newline = System.lineSeparator();
+                                LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
+                                        + e.getMessage() + newline
+                                        + "prototype: " + prototype.getClassName());
+                            }
+                        }
+                    }
+
+                    ScriptableObject.defineProperty(window, hostClassSimpleName, function,
+                            ScriptableObject.DONTENUM);
+
+                    // the prototype class name is set as a side effect of functionObject.addAsConstructor
+                    // so we restore its value
+                    if (!hostClassSimpleName.equals(prototype.getClassName())) {
+                        if (prototypeProperty == UniqueTag.NOT_FOUND) {
+                            ScriptableObject.deleteProperty(window, prototype.getClassName());
+                        }
+                        else {
+                            ScriptableObject.defineProperty(window, prototype.getClassName(),
+                                    prototypeProperty, ScriptableObject.DONTENUM);
+                        }
+                    }
+                }
+                else {
+                    if (function instanceof FunctionObject) {
+                        try {
+                            ((FunctionObject) function).addAsConstructor(window, prototype);
+                        }
+                        catch (final Exception e) {
+                            // TODO see issue #1897
+                            if (LOG.isWarnEnabled()) {
+                                final String newline = System.lineSeparator();
+                                LOG.warn("Error during JavaScriptEngine.init(WebWindow, Context)" + newline
+                                        + e.getMessage() + newline
+                                        + "prototype: " + prototype.getClassName());
+                            }
+                        }
+                    }
+                }
+
+                configureConstantsStaticPropertiesAndStaticFunctions(config, function);
+            }
+        }
+    }
+
+    /**
+     * Sets the prototype of the host class prototype, this builds the prototype chain.
+     * @param config the class configuration
+     * @param prototype the prototype of the host class
+     * @param window the window scope
+     */
+    private static void linkPrototype(final ClassConfiguration config, final Scriptable prototype, final Window window) {
+        if (!StringUtils.isEmpty(config.getExtendedClassName())) {
+            final Scriptable parentPrototype = window.getPrototype(config.getExtendedClassName());
+            prototype.setPrototype(parentPrototype);
+        }
+        else {
+            prototype.setPrototype(ScriptableObject.getObjectPrototype(window));
+        }
+    }
+
+    /**
+     * Sets up a lazy host class on first access; see {@link Window#setLazyPrototypes(Map)}.
+     */
+    private static final class LazyPrototypeInitializer implements Runnable {
+        private final ClassConfiguration config_;
+        private final Window window_;
+        private final BrowserVersion browserVersion_;
+        private final Map<Class<? extends Scriptable>, Scriptable> prototypes_;
+        private final Map<String, Scriptable> prototypesPerJSName_;
+        private final Map<Object, Runnable> lazyPrototypes_;
+
+        LazyPrototypeInitializer(final ClassConfiguration config, final Window window,
+                final BrowserVersion browserVersion, final Map<Class<? extends Scriptable>, Scriptable> prototypes,
+                final Map<String, Scriptable> prototypesPerJSName, final Map<Object, Runnable> lazyPrototypes) {
+            config_ = config;
+            window_ = window;
+            browserVersion_ = browserVersion;
+            prototypes_ = prototypes;
+            prototypesPerJSName_ = prototypesPerJSName;
+            lazyPrototypes_ = lazyPrototypes;
+        }
+
+        @Override
+        public void run() {
+            // remove first, the parent prototype lookup may trigger the setup of other classes
+            lazyPrototypes_.remove(config_.getClassName());
+            lazyPrototypes_.remove(config_.getHostClass());
+
+            if (Context.getCurrentContext() != null) {
+                initialize();
+                return;
+            }
+
+            // lookup from java code, use the context factory of the client the window belongs to
+            final WebClient client = window_.getWebWindow().getWebClient();
+            final HtmlUnitContextFactory cf = ((JavaScriptEngine) client.getJavaScriptEngine()).getContextFactory();
+            cf.call(cx -> {
+                initialize();
+                return null;
+            });
+        }
+
+        private void initialize() {
+            try {
+                configurePrototype(config_, window_, browserVersion_, prototypes_, prototypesPerJSName_);
+                configureConstructor(config_, window_, browserVersion_, prototypesPerJSName_);
+                linkPrototype(config_, prototypesPerJSName_.get(config_.getClassName()), window_);
+            }
+            catch (final Exception e) {
+                LOG.error("Exception while initializing JavaScript class " + config_.getClassName(), e);
+            }
+        }
     }
 
     private static void defineConstructor(final Window window,
@@ -643,7 +779,7 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
      */
     @Override
     public synchronized void registerWindowAndMaybeStartEventLoop(final WebWindow webWindow) {
-        if (webClient_ != null) {
+        if (webClient_ != null && !eventLoopStopped_) {
             if (javaScriptExecutor_ == null) {
                 javaScriptExecutor_ = BackgroundJavaScriptFactory.theFactory().createJavaScriptExecutor(webClient_);
             }
@@ -651,6 +787,23 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
         }
     }
 
+    /**
+     * Stops the event loop and waits for the job it is running (if any); no event loop is started afterwards.
+     * The executor is shut down outside of the lock of this engine, a running job may still register a window.
+     */
+    @Override
+    public void stopEventLoop() {
+        final JavaScriptExecutor executor;
+        synchronized (this) {
+            eventLoopStopped_ = true;
+            executor = javaScriptExecutor_;
+            javaScriptExecutor_ = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Shutdown the JavaScriptEngine.
      */
@@ -699,9 +852,20 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
             LOG.trace("Javascript compile " + sourceName + newline + sourceCode + newline);
         }
 
+        final WebClient webClient = getWebClient();
+        final boolean useScriptCache = webClient != null
+                && webClient.getScriptPreProcessor() == null
+                && getContextFactory().getDebugger() == null
+                && CompiledScriptCache.getInstance().getMaxSize() > 0;
+
         final ContextAction<Object> action = new HtmlUnitContextAction(scope, owningPage) {
             @Override
             public Object doRun(final Context cx) {
+                if (useScriptCache) {
+                    return CompiledScriptCache.getInstance().get(webClient.getBrowserVersion(),
+                            cx.getOptimizationLevel(), sourceCode, sourceName, startLine,
+                        () -> cx.compileString(sourceCode, sourceName, startLine, null));
+                }
                 return cx.compileString(sourceCode, sourceName, startLine, null);
             }
 
@@ -862,10 +1026,24 @@ public class JavaScriptEngine implements AbstractJavaScriptEngine<Script> {
                 try {
                     cx.putThreadLocal(KEY_STARTING_PAGE, page_);
                     synchronized (page_) { // 2 scripts can't be executed in parallel for one page
-                        if (page_ != page_.getEnclosingWindow().getEnclosedPage()) {
+                        final WebWindow window = page_.getEnclosingWindow();
+                        if (page_ != window.getEnclosedPage()) {
                             return null; // page has been unloaded
                         }
-                        response = doRun(cx);
+
+                        // no job of the page is started before this script has finished
+                        final JavaScriptJobManager jobManager = window.getJobManager();
+                        if (jobManager != null) {
+                            jobManager.pageBusy();
+                        }
+                        try {
+                            response = doRun(cx);
+                        }
+                        finally {
+                            if (jobManager != null) {
+                                jobManager.pageIdle();
+                            }
+                        }
                     }
                 }
                 finally {
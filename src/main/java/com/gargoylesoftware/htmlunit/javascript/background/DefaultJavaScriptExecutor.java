@@ -39,11 +39,31 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
 
     private final transient AtomicBoolean shutdown_;
 
+    /** Used to wait for the next job; the job managers notify it whenever their queue changes. */
+    private final transient Object wakeupLock_ = new Object();
+    private transient boolean wakeupPending_;
+    private transient volatile boolean pollingNeeded_;
+
     private transient Thread eventLoopThread_;
 
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(DefaultJavaScriptExecutor.class);
 
+    /**
+     * The time to wait if there is no job; the loop has to detect
+     * the garbage collection of the web client.
+     */
+    private static final long MAX_WAIT_TIME = 1_000;
+
+    /**
+     * The wait interval used if one of the job managers does not inform us about changes.
+     * This has to be a multiple of 10ms otherwise the VM has to fight with the OS to get such small periods.
+     */
+    protected static final long POLLING_INTERVAL = 10;
+
+    /** Used if the web client is already gone. */
+    private static final JavaScriptClock SYSTEM_CLOCK = new JavaScriptClock();
+
     /** Creates an EventLoop for the webClient.
      *
      * @param webClient the provided webClient
@@ -101,7 +121,8 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     }
 
     /**
-     * Returns the JobExecutor corresponding to the earliest job.
+     * Returns the JobExecutor corresponding to the earliest job. The job managers of pages
+     * held by a script are skipped, they inform us when the script has finished.
      * @return the JobExectuor with the earliest job.
      */
     protected JavaScriptJobManager getJobManagerWithEarliestJob() {
@@ -112,7 +133,7 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
             // iterate over the list and find the earliest job to run.
             for (WeakReference<JavaScriptJobManager> weakReference : jobManagerList_) {
                 final JavaScriptJobManager jobManager = weakReference.get();
-                if (jobManager != null) {
+                if (jobManager != null && !jobManager.isPageBusy()) {
                     final JavaScriptJob newJob = jobManager.getEarliestJob();
                     if (newJob != null && (earliestJob == null || earliestJob.compareTo(newJob) > 0)) {
                         earliestJob = newJob;
@@ -124,20 +145,41 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
         return javaScriptJobManager;
     }
 
+    /**
+     * Returns whether the page of one of the registered job managers is held by a script
+     * or by the parser; the virtual clock must not move in this case.
+     * @return whether one of the pages is busy
+     */
+    protected boolean isAnyPageBusy() {
+        synchronized (jobManagerList_) {
+            for (WeakReference<JavaScriptJobManager> weakReference : jobManagerList_) {
+                final JavaScriptJobManager jobManager = weakReference.get();
+                if (jobManager != null && jobManager.isPageBusy()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /** Runs the eventLoop. */
     @Override
     public void run() {
         final boolean trace = LOG.isTraceEnabled();
-        // this has to be a multiple of 10ms
-        // otherwise the VM has to fight with the OS to get such small periods
-        final long sleepInterval = 10;
         while (!shutdown_.get() && !Thread.currentThread().isInterrupted() && webClient_.get() != null) {
             final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
 
+            long waitTime = MAX_WAIT_TIME;
             if (jobManager != null) {
                 final JavaScriptJob earliestJob = jobManager.getEarliestJob();
                 if (earliestJob != null) {
-                    final long waitTime = earliestJob.getTargetExecutionTime() - System.currentTimeMillis();
+                    final JavaScriptClock clock = getClock();
+                    waitTime = earliestJob.getTargetExecutionTime() - clock.currentTimeMillis();
+                    if (waitTime >= 1 && clock.isVirtual() && !isAnyPageBusy()) {
+                        // nothing else to do, jump to the next job
+                        clock.advanceTo(earliestJob.getTargetExecutionTime());
+                        waitTime = 0;
+                    }
 
                     // do we have to execute the earliest job
                     if (waitTime < 1) {
@@ -161,9 +203,17 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
                 break;
             }
 
-            // nothing to do, let's sleep a bit
+            // nothing to do, wait for the next job or a change of the queues
+            if (pollingNeeded_) {
+                waitTime = Math.min(waitTime, POLLING_INTERVAL);
+            }
             try {
-                Thread.sleep(sleepInterval);
+                synchronized (wakeupLock_) {
+                    if (!wakeupPending_) {
+                        wakeupLock_.wait(waitTime);
+                    }
+                    wakeupPending_ = false;
+                }
             }
             catch (final InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -171,6 +221,37 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
         }
     }
 
+    /**
+     * Returns the clock of the web client.
+     * @return the clock
+     */
+    protected JavaScriptClock getClock() {
+        final WebClient webClient = webClient_.get();
+        if (webClient == null) {
+            return SYSTEM_CLOCK;
+        }
+        return webClient.getJavaScriptClock();
+    }
+
+    /**
+     * Returns whether one of the registered job managers does not inform about changes
+     * of its queue and has therefore to be polled.
+     * @return whether polling is needed
+     */
+    protected boolean isPollingNeeded() {
+        return pollingNeeded_;
+    }
+
+    /**
+     * Wakes up the event loop; called whenever the job queue of one of the registered job managers changes.
+     */
+    protected void jobsChanged() {
+        synchronized (wakeupLock_) {
+            wakeupPending_ = true;
+            wakeupLock_.notifyAll();
+        }
+    }
+
     /**
      * Register a window with the eventLoop.
      * @param newWindow the new web window
@@ -179,8 +260,15 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     public void addWindow(final WebWindow newWindow) {
         final JavaScriptJobManager jobManager = newWindow.getJobManager();
         if (jobManager != null) {
+            if (jobManager instanceof JavaScriptJobManagerImpl) {
+                ((JavaScriptJobManagerImpl) jobManager).setJobsChangedListener(this::jobsChanged);
+            }
+            else {
+                pollingNeeded_ = true;
+            }
             updateJobMangerList(jobManager);
             startThreadIfNeeded();
+            jobsChanged();
         }
     }
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The clock used to schedule the JavaScript jobs (<tt>setTimeout()</tt>, <tt>setInterval()</tt>, ...)
+ * of a {@link com.gargoylesoftware.htmlunit.WebClient}.
+ *
+ * <p>By default the clock follows the system time. In virtual time mode the {@link JavaScriptExecutor}
+ * doesn't wait for the next job; as soon as no job is due and no page is busy (being parsed or running
+ * a script), the clock jumps forward to the target execution time of the earliest job. This way timer
+ * driven pages run to completion at CPU speed.
+ * Please note that the clock doesn't wait for background activities (e.g. pending asynchronous requests)
+ * before jumping, and that a page with a never ending interval keeps the executor busy.</p>
+ *
+ * <p>The clock only affects the scheduling of the jobs; <tt>Date</tt> still reports the system time.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class JavaScriptClock implements Serializable {
+
+    private volatile boolean virtual_;
+    private final AtomicLong offset_ = new AtomicLong();
+
+    /**
+     * Returns the current time of this clock in milliseconds.
+     * @return the current time
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + getOffset();
+    }
+
+    /**
+     * Returns the difference between this clock and the system time in milliseconds.
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset_.get();
+    }
+
+    /**
+     * Returns whether the clock runs in virtual time mode.
+     * @return whether the clock runs in virtual time mode
+     */
+    public boolean isVirtual() {
+        return virtual_;
+    }
+
+    /**
+     * Enables or disables the virtual time mode. The time already skipped is kept.
+     * @param virtual whether the clock runs in virtual time mode
+     */
+    public void setVirtual(final boolean virtual) {
+        virtual_ = virtual;
+    }
+
+    /**
+     * Moves the clock forward to the specified time; does nothing if not in virtual time mode
+     * or if the time is already reached.
+     * @param time the new time
+     */
+    public void advanceTo(final long time) {
+        if (!virtual_) {
+            return;
+        }
+        final long delta = time - currentTimeMillis();
+        if (delta > 0) {
+            offset_.addAndGet(delta);
+        }
+    }
+}
@@ -143,6 +143,33 @@ public interface JavaScriptJobManager extends Serializable {
      */
     boolean runSingleJob(JavaScriptJob job);
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Marks the page of the window as busy while a script holds it. The event loop doesn't start
+     * a job of this manager before {@link #pageIdle()} has been called as often.
+     */
+    default void pageBusy() {
+        // jobs are started at any time
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+     *
+     * Reverts one call of {@link #pageBusy()}.
+     */
+    default void pageIdle() {
+        // jobs are started at any time
+    }
+
+    /**
+     * Returns whether a script holds the page of the window, see {@link #pageBusy()}.
+     * @return whether the page is busy
+     */
+    default boolean isPageBusy() {
+        return false;
+    }
+
     /**
      * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
      *
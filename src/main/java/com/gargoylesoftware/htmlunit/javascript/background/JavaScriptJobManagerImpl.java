@@ -25,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 
 /**
@@ -58,12 +59,21 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
     private transient JavaScriptJob currentlyRunningJob_;
 
+    /** Informed about every change of the queue, e.g. to wake up the event loop. */
+    private transient volatile Runnable jobsChangedListener_;
+
+    /** The number of scripts holding the page of our window, see {@link #pageBusy()}. */
+    private transient int pageBusyCount_;
+
     /** A counter used to generate the IDs assigned to {@link JavaScriptJob}s. */
     private static final AtomicInteger NEXT_JOB_ID_ = new AtomicInteger(1);
 
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(JavaScriptJobManagerImpl.class);
 
+    /** Used if the window is already gone. */
+    private static final JavaScriptClock SYSTEM_CLOCK = new JavaScriptClock();
+
     /**
      * Creates a new instance.
      *
@@ -119,6 +129,12 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         final int id = NEXT_JOB_ID_.getAndIncrement();
         job.setId(Integer.valueOf(id));
 
+        // the job computes its target execution time based on the system time
+        final long offset = getClock().getOffset();
+        if (offset != 0) {
+            job.setTargetExecutionTime(job.getTargetExecutionTime() + offset);
+        }
+
         synchronized (this) {
             scheduledJobsQ_.add(job);
 
@@ -130,7 +146,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                 printQueue();
             }
 
-            notify();
+            jobsChanged();
         }
 
         return id;
@@ -147,7 +163,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             }
         }
         cancelledJobs_.add(Integer.valueOf(id));
-        notify();
+        jobsChanged();
     }
 
     /** {@inheritDoc} */
@@ -162,7 +178,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             }
         }
         cancelledJobs_.add(Integer.valueOf(id));
-        notify();
+        jobsChanged();
     }
 
     /** {@inheritDoc} */
@@ -175,7 +191,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             cancelledJobs_.add(job.getId());
         }
         scheduledJobsQ_.clear();
-        notify();
+        jobsChanged();
     }
 
     /** {@inheritDoc} */
@@ -186,7 +202,9 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             LOG.debug("Waiting for all jobs to finish (will wait max " + timeoutMillis + " millis).");
         }
         if (timeoutMillis > 0) {
-            long now = System.currentTimeMillis();
+            // in virtual time mode the timeout is consumed by the jumps of the clock as well
+            final JavaScriptClock clock = getClock();
+            long now = clock.currentTimeMillis();
             final long end = now + timeoutMillis;
 
             synchronized (this) {
@@ -199,7 +217,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                     }
                     // maybe a change triggers the wakup; we have to recalculate the
                     // wait time
-                    now = System.currentTimeMillis();
+                    now = clock.currentTimeMillis();
                 }
             }
         }
@@ -221,7 +239,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     public int waitForJobsStartingBefore(final long delayMillis, final JavaScriptJobFilter filter) {
         final boolean debug = LOG.isDebugEnabled();
 
-        final long latestExecutionTime = System.currentTimeMillis() + delayMillis;
+        final long latestExecutionTime = getClock().currentTimeMillis() + delayMillis;
         if (debug) {
             LOG.debug("Waiting for all jobs that have execution time before "
                   + delayMillis + " (" + latestExecutionTime + ") to finish");
@@ -269,7 +287,50 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     @Override
     public synchronized void shutdown() {
         scheduledJobsQ_.clear();
+        jobsChanged();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pageBusy() {
+        pageBusyCount_++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pageIdle() {
+        pageBusyCount_--;
+        if (pageBusyCount_ == 0) {
+            // the jobs held back can be started now
+            jobsChanged();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized boolean isPageBusy() {
+        return pageBusyCount_ > 0;
+    }
+
+    /**
+     * Sets the listener informed about every change of the job queue.
+     * @param listener the listener, may be {@code null}
+     */
+    void setJobsChangedListener(final Runnable listener) {
+        jobsChangedListener_ = listener;
+    }
+
+    /**
+     * Wakes up the threads waiting for this job manager and informs the listener;
+     * the caller has to hold the lock of this object.
+     */
+    private void jobsChanged() {
         notify();
+
+        final Runnable listener = jobsChangedListener_;
+        if (listener != null) {
+            listener.run();
+        }
     }
 
     /**
@@ -283,6 +344,21 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         return window_.get();
     }
 
+    /**
+     * Returns the clock of the client of our window.
+     * @return the clock
+     */
+    private JavaScriptClock getClock() {
+        final WebWindow window = getWindow();
+        if (window != null) {
+            final WebClient webClient = window.getWebClient();
+            if (webClient != null) {
+                return webClient.getJavaScriptClock();
+            }
+        }
+        return SYSTEM_CLOCK;
+    }
+
     /**
      * Utility method to print current queue.
      */
@@ -325,7 +401,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         int count = 1;
         for (final JavaScriptJob job : scheduledJobsQ_) {
             if (filter == null || filter.passes(job)) {
-                final long now = System.currentTimeMillis();
+                final long now = getClock().currentTimeMillis();
                 final long execTime = job.getTargetExecutionTime();
                 status.append("  " + count);
                 status.append(")  Job target execution time: " + execTime);
@@ -384,11 +460,15 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             return false;
         }
 
-        final long currentTime = System.currentTimeMillis();
+        final long currentTime = getClock().currentTimeMillis();
         if (job.getTargetExecutionTime() > currentTime) {
             return false;
         }
         synchronized (this) {
+            if (pageBusyCount_ > 0) {
+                // a script holds the page, the job is started when it has finished
+                return false;
+            }
             if (scheduledJobsQ_.remove(job)) {
                 currentlyRunningJob_ = job;
             }
@@ -412,7 +492,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
                         LOG.debug("Reschedulling job " + job);
                     }
                     scheduledJobsQ_.add(job);
-                    notify();
+                    jobsChanged();
                 }
             }
         }
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * A {@link JavaScriptExecutor} without a thread of its own; the jobs of all the clients using
+ * this executor are processed by a shared, bounded scheduler.
+ *
+ * <p>The jobs of one client are never processed concurrently and are processed in the order of their
+ * target execution time, like the {@link DefaultJavaScriptExecutor} does. To avoid starvation of other
+ * clients, a client gives the scheduler thread back after {@value #MAX_JOBS_PER_TURN} jobs.</p>
+ *
+ * <p>To use this executor, install a factory creating it:</p>
+ * <pre>
+ * BackgroundJavaScriptFactory.setFactory(new BackgroundJavaScriptFactory() {
+ *     &#064;Override
+ *     public JavaScriptExecutor createJavaScriptExecutor(final WebClient webClient) {
+ *         return new SharedJavaScriptExecutor(webClient);
+ *     }
+ * });
+ * </pre>
+ *
+ * <p>The default scheduler uses one daemon thread per available processor; any other
+ * {@link ScheduledExecutorService} can be set using {@link #setScheduler(ScheduledExecutorService)},
+ * e.g. one based on virtual threads if the runtime supports them.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class SharedJavaScriptExecutor extends DefaultJavaScriptExecutor {
+
+    /** The maximum number of jobs processed before the scheduler thread is given back. */
+    public static final int MAX_JOBS_PER_TURN = 100;
+
+    private static final Log LOG = LogFactory.getLog(SharedJavaScriptExecutor.class);
+
+    private static ScheduledExecutorService Scheduler_;
+
+    private final transient Object lock_ = new Object();
+    private transient volatile boolean stopped_;
+    private transient boolean running_;
+    private transient boolean rescan_;
+    private transient Thread runningThread_;
+    private transient ScheduledFuture<?> wakeup_;
+    private transient long wakeupTime_;
+
+    /**
+     * Creates an executor for the webClient.
+     *
+     * @param webClient the provided webClient
+     */
+    public SharedJavaScriptExecutor(final WebClient webClient) {
+        super(webClient);
+    }
+
+    /**
+     * Returns the scheduler shared by all instances.
+     * @return the scheduler
+     */
+    public static synchronized ScheduledExecutorService getScheduler() {
+        if (Scheduler_ == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ThreadFactory threadFactory = r -> {
+                final Thread thread = new Thread(r, "HtmlUnit shared JS executor " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            final ScheduledThreadPoolExecutor scheduler =
+                    new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), threadFactory);
+            scheduler.setRemoveOnCancelPolicy(true);
+            Scheduler_ = scheduler;
+        }
+        return Scheduler_;
+    }
+
+    /**
+     * Sets the scheduler shared by all instances; this has to be done before the first job is scheduled.
+     * The previous scheduler is not shut down.
+     * @param scheduler the new scheduler
+     */
+    public static synchronized void setScheduler(final ScheduledExecutorService scheduler) {
+        Scheduler_ = scheduler;
+    }
+
+    /**
+     * Does nothing, this executor has no thread of its own.
+     */
+    @Override
+    protected void startThreadIfNeeded() {
+        // nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void jobsChanged() {
+        schedule(0);
+    }
+
+    private void schedule(final long delay) {
+        synchronized (lock_) {
+            if (stopped_) {
+                return;
+            }
+            if (running_) {
+                rescan_ = true;
+                return;
+            }
+
+            final long time = System.currentTimeMillis() + delay;
+            if (wakeup_ != null && !wakeup_.isDone()) {
+                if (wakeupTime_ <= time) {
+                    return;
+                }
+                wakeup_.cancel(false);
+            }
+            wakeupTime_ = time;
+            wakeup_ = getScheduler().schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Processes all the jobs that are due and schedules the next run.
+     */
+    @Override
+    public void run() {
+        synchronized (lock_) {
+            if (stopped_ || running_) {
+                return;
+            }
+            running_ = true;
+            rescan_ = false;
+            runningThread_ = Thread.currentThread();
+            wakeup_ = null;
+        }
+
+        long delay = -1;
+        try {
+            int count = 0;
+            while (!stopped_ && !Thread.currentThread().isInterrupted()) {
+                final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
+                if (jobManager == null) {
+                    break;
+                }
+                final JavaScriptJob earliestJob = jobManager.getEarliestJob();
+                if (earliestJob == null) {
+                    delay = 0;
+                    break;
+                }
+
+                final JavaScriptClock clock = getClock();
+                final long waitTime = earliestJob.getTargetExecutionTime() - clock.currentTimeMillis();
+                if (waitTime >= 1 && clock.isVirtual() && !isAnyPageBusy()) {
+                    // nothing else to do, jump to the next job
+                    clock.advanceTo(earliestJob.getTargetExecutionTime());
+                }
+                else if (waitTime >= 1) {
+                    delay = waitTime;
+                    break;
+                }
+                if (count++ == MAX_JOBS_PER_TURN) {
+                    delay = 0;
+                    break;
+                }
+                jobManager.runSingleJob(earliestJob);
+            }
+        }
+        catch (final RuntimeException e) {
+            LOG.error("Exception while processing the JavaScript jobs", e);
+            delay = 0;
+        }
+        finally {
+            synchronized (lock_) {
+                running_ = false;
+                runningThread_ = null;
+                if (rescan_) {
+                    delay = 0;
+                }
+                lock_.notifyAll();
+            }
+        }
+
+        if (isPollingNeeded()) {
+            delay = delay < 0 ? POLLING_INTERVAL : Math.min(delay, POLLING_INTERVAL);
+        }
+        if (delay >= 0) {
+            schedule(delay);
+        }
+    }
+
+    /**
+     * Stops the processing; waits for the job currently running (if any) to finish.
+     */
+    @Override
+    public void shutdown() {
+        synchronized (lock_) {
+            stopped_ = true;
+            if (wakeup_ != null) {
+                wakeup_.cancel(false);
+                wakeup_ = null;
+            }
+
+            if (runningThread_ != Thread.currentThread()) {
+                final long end = System.currentTimeMillis() + 10_000;
+                long now = System.currentTimeMillis();
+                while (running_ && now < end) {
+                    try {
+                        lock_.wait(end - now);
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    now = System.currentTimeMillis();
+                }
+                if (running_ && LOG.isWarnEnabled()) {
+                    LOG.warn("JavaScript job still running after shutdown");
+                }
+            }
+        }
+        super.shutdown();
+    }
+}
@@ -237,6 +237,11 @@ public class Element extends Node {
         }
         else {
             collection = new HTMLCollection(node, false) {
+                @Override
+                protected Iterable<DomNode> getCandidates() {
+                    return getCandidatesByTagName(tagNameLC);
+                }
+
                 @Override
                 protected boolean isMatching(final DomNode nodeToMatch) {
                     return tagNameLC.equalsIgnoreCase(nodeToMatch.getNodeName());
@@ -648,6 +653,16 @@ public class Element extends Node {
         final String[] classNames = CLASS_NAMES_SPLIT_PATTERN.split(className, 0);
 
         final HTMLCollection collection = new HTMLCollection(elt, true) {
+            @Override
+            protected Iterable<DomNode> getCandidates() {
+                for (final String aClassName : classNames) {
+                    if (!aClassName.isEmpty()) {
+                        return getCandidatesByClassName(aClassName);
+                    }
+                }
+                return super.getCandidates();
+            }
+
             @Override
             protected boolean isMatching(final DomNode node) {
                 if (!(node instanceof HtmlElement)) {
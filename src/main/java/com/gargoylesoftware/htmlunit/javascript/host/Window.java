@@ -28,6 +28,7 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -35,7 +36,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -43,6 +43,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
@@ -196,8 +197,9 @@ public class Window extends EventTarget implements Function, AutoCloseable {
     private Selection selection_;
     private Event currentEvent_;
     private String status_ = "";
-    private Map<Class<? extends Scriptable>, Scriptable> prototypes_ = new HashMap<>();
-    private Map<String, Scriptable> prototypesPerJSName_ = new HashMap<>();
+    private Map<Class<? extends Scriptable>, Scriptable> prototypes_ = new ConcurrentHashMap<>();
+    private Map<String, Scriptable> prototypesPerJSName_ = new ConcurrentHashMap<>();
+    private transient volatile Map<Object, Runnable> lazyPrototypes_;
     private Object controllers_;
     private Object opener_;
     private Object top_ = NOT_FOUND; // top can be set from JS to any value!
@@ -290,6 +292,34 @@ public class Window extends EventTarget implements Function, AutoCloseable {
             computedStyles_.clear();
         }
 
+        public synchronized boolean isEmpty() {
+            return computedStyles_.isEmpty();
+        }
+
+        /**
+         * Evicts the computed styles of the elements that may be affected by the change of a class name
+         * or id of the specified element.
+         * @param changed the element whose attribute changed
+         * @param affected the elements affected, see {@link CSSStyleSheet#getAffectedElements}
+         * @param clearParents whether the ancestors have to be evicted as well
+         */
+        public synchronized void nodeChanged(final DomNode changed, final int affected, final boolean clearParents) {
+            final DomNode parent = changed.getParentNode();
+            final boolean siblings = parent != null && (affected & CSSStyleSheet.AFFECTS_SIBLINGS) != 0;
+            final Iterator<Map.Entry<Element, Map<String, CSS2Properties>>> i = computedStyles_.entrySet().iterator();
+            while (i.hasNext()) {
+                final Map.Entry<Element, Map<String, CSS2Properties>> entry = i.next();
+                final DomNode node = entry.getKey().getDomNodeOrDie();
+                // the computed style of the descendants depends on the one of the element (inheritance)
+                if (changed == node
+                    || changed.isAncestorOf(node)
+                    || siblings && parent.isAncestorOf(node)
+                    || clearParents && node.isAncestorOf(changed)) {
+                    i.remove();
+                }
+            }
+        }
+
         public synchronized Map<String, CSS2Properties> remove(final Element element) {
             return computedStyles_.remove(element);
         }
@@ -332,6 +362,16 @@ public class Window extends EventTarget implements Function, AutoCloseable {
         cssPropertiesCache_ = new CSSPropertiesCache();
     }
 
+    /**
+     * Sets up all the lazy host classes before serialization; the initializers are not serializable.
+     * @param stream the stream to write the object to
+     * @throws IOException if an IO error occurs
+     */
+    private void writeObject(final ObjectOutputStream stream) throws IOException {
+        initializeLazyPrototypes();
+        stream.defaultWriteObject();
+    }
+
     /**
      * Returns the prototype object corresponding to the specified HtmlUnit class inside the window scope.
      * @param jsClass the class whose prototype is to be returned
@@ -339,6 +379,10 @@ public class Window extends EventTarget implements Function, AutoCloseable {
      */
     @Override
     public Scriptable getPrototype(final Class<? extends SimpleScriptable> jsClass) {
+        if (jsClass == null) {
+            return null;
+        }
+        initializeLazyPrototype(jsClass);
         return prototypes_.get(jsClass);
     }
 
@@ -348,11 +392,17 @@ public class Window extends EventTarget implements Function, AutoCloseable {
      * @return the prototype object corresponding to the specified class inside the specified scope
      */
     public Scriptable getPrototype(final String className) {
+        if (className == null) {
+            return null;
+        }
+        initializeLazyPrototype(className);
         return prototypesPerJSName_.get(className);
     }
 
     /**
      * Sets the prototypes for HtmlUnit host classes.
+     * Lazy host classes add their prototypes later on, while other threads (e.g. the JavaScript
+     * executor) may read them; the maps have to support concurrent access.
      * @param map a Map of ({@link Class}, {@link Scriptable})
      * @param prototypesPerJSName map of {@link String} and {@link Scriptable}
      */
@@ -362,6 +412,135 @@ public class Window extends EventTarget implements Function, AutoCloseable {
         prototypesPerJSName_ = prototypesPerJSName;
     }
 
+    /**
+     * Sets the initializers of the host classes that are only set up on first access (property lookup
+     * on the window or prototype lookup).
+     * @param lazyPrototypes the initializers, keyed by JavaScript class name and by host class;
+     *        an initializer removes its own entries; the map has to support concurrent reads
+     */
+    public void setLazyPrototypes(final Map<Object, Runnable> lazyPrototypes) {
+        lazyPrototypes_ = lazyPrototypes;
+    }
+
+    private void initializeLazyPrototype(final Object key) {
+        final Map<Object, Runnable> lazyPrototypes = lazyPrototypes_;
+        if (lazyPrototypes == null || key == null) {
+            return;
+        }
+        // lock free check first, most of the lookups are not (or no longer) for a lazy class
+        if (!lazyPrototypes.containsKey(key)) {
+            return;
+        }
+        synchronized (lazyPrototypes) {
+            final Runnable initializer = lazyPrototypes.get(key);
+            if (initializer != null) {
+                initializer.run();
+            }
+            if (lazyPrototypes.isEmpty()) {
+                lazyPrototypes_ = null;
+            }
+        }
+    }
+
+    private void initializeLazyPrototypes() {
+        final Map<Object, Runnable> lazyPrototypes = lazyPrototypes_;
+        if (lazyPrototypes == null) {
+            return;
+        }
+        synchronized (lazyPrototypes) {
+            while (!lazyPrototypes.isEmpty()) {
+                lazyPrototypes.values().iterator().next().run();
+            }
+            lazyPrototypes_ = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(final String name, final Scriptable start) {
+        initializeLazyPrototype(name);
+        return super.get(name, start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has(final String name, final Scriptable start) {
+        initializeLazyPrototype(name);
+        return super.has(name, start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(final String name, final Scriptable start, final Object value) {
+        initializeLazyPrototype(name);
+        super.put(name, start, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(final String name) {
+        initializeLazyPrototype(name);
+        super.delete(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object[] getAllIds() {
+        initializeLazyPrototypes();
+        return super.getAllIds();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ScriptableObject getOwnPropertyDescriptor(final Context cx, final Object id) {
+        if (id instanceof CharSequence) {
+            initializeLazyPrototype(id.toString());
+        }
+        return super.getOwnPropertyDescriptor(cx, id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void defineOwnProperty(final Context cx, final Object id, final ScriptableObject desc,
+            final boolean checkValid) {
+        if (id instanceof CharSequence) {
+            initializeLazyPrototype(id.toString());
+        }
+        super.defineOwnProperty(cx, id, desc, checkValid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAttributes(final String name) {
+        initializeLazyPrototype(name);
+        return super.getAttributes(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAttributes(final String name, final int attributes) {
+        initializeLazyPrototype(name);
+        super.setAttributes(name, attributes);
+    }
+
     /**
      * The JavaScript function {@code alert()}.
      * @param message the message
@@ -2096,6 +2275,12 @@ public class Window extends EventTarget implements Function, AutoCloseable {
      *
      * <p>Additionally, whenever a <tt>style</tt> node or a <tt>link</tt> node with <tt>rel=stylesheet</tt> is added or
      * removed, all elements should be removed from the computed style cache.</p>
+     *
+     * <p>Changes of the <tt>class</tt> and <tt>id</tt> attributes only affect the computed styles through the
+     * selectors of the style sheets; if no selector refers to the added or removed class names or to the old or new
+     * id, nothing is evicted at all. Otherwise only the node that changed and its descendants are evicted, plus
+     * the siblings and their descendants if one of the selectors uses the class name or id on the left side of
+     * a sibling combinator.</p>
      */
     private class DomHtmlAttributeChangeListenerImpl implements DomChangeListener, HtmlAttributeChangeListener {
 
@@ -2120,7 +2305,7 @@ public class Window extends EventTarget implements Function, AutoCloseable {
          */
         @Override
         public void attributeAdded(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            attributeChanged(event, DomElement.ATTRIBUTE_NOT_DEFINED, event.getValue());
         }
 
         /**
@@ -2128,7 +2313,7 @@ public class Window extends EventTarget implements Function, AutoCloseable {
          */
         @Override
         public void attributeRemoved(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            attributeChanged(event, event.getValue(), DomElement.ATTRIBUTE_NOT_DEFINED);
         }
 
         /**
@@ -2136,7 +2321,46 @@ public class Window extends EventTarget implements Function, AutoCloseable {
          */
         @Override
         public void attributeReplaced(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            attributeChanged(event, event.getValue(), event.getHtmlElement().getAttributeDirect(event.getName()));
+        }
+
+        private void attributeChanged(final HtmlAttributeChangeEvent event, final String oldValue,
+                final String newValue) {
+            final HtmlElement changed = event.getHtmlElement();
+            final String attribName = event.getName();
+            if (("class".equals(attribName) || "id".equals(attribName))
+                    && !(changed instanceof HtmlStyle) && !(changed instanceof HtmlLink)) {
+                final int affected = getAffectedElements(attribName, oldValue, newValue);
+                if (affected != 0) {
+                    cssPropertiesCache_.nodeChanged(changed, affected,
+                            ATTRIBUTES_AFFECTING_PARENT.contains(attribName));
+                }
+                return;
+            }
+            nodeChanged(changed, attribName);
+        }
+
+        private int getAffectedElements(final String attribName, final String oldValue, final String newValue) {
+            if (cssPropertiesCache_.isEmpty()) {
+                return 0;
+            }
+            final int all = CSSStyleSheet.AFFECTS_SUBTREE | CSSStyleSheet.AFFECTS_SIBLINGS;
+            if (!(document_ instanceof HTMLDocument)) {
+                return all;
+            }
+
+            int affected = 0;
+            final StyleSheetList sheets = ((HTMLDocument) document_).getStyleSheets();
+            for (int i = 0; i < sheets.getLength() && affected != all; i++) {
+                final Object sheet = sheets.item(i);
+                if (sheet instanceof CSSStyleSheet) {
+                    affected |= ((CSSStyleSheet) sheet).getAffectedElements(attribName, oldValue, newValue);
+                }
+                else {
+                    affected = all;
+                }
+            }
+            return affected;
         }
 
         private void nodeChanged(final DomNode changed, final String attribName) {
@@ -90,6 +90,7 @@ import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.css.AncestorFilter;
 import com.gargoylesoftware.htmlunit.html.DisabledElement;
 import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
@@ -139,6 +140,12 @@ public class CSSStyleSheet extends StyleSheet {
     private static final Pattern NTH_COMPLEX = Pattern.compile("[+-]?\\d*n\\w*([+-]\\w\\d*)?");
     private static final Pattern UNESCAPE_SELECTOR = Pattern.compile("\\\\([\\[\\]\\.:])");
 
+    /** The element whose attribute changed or its descendants may start or stop matching a selector. */
+    public static final int AFFECTS_SUBTREE = 1;
+    /** The siblings of the element whose attribute changed or their descendants may start or stop matching. */
+    public static final int AFFECTS_SIBLINGS = 2;
+    private static final int AFFECTS_ALL = AFFECTS_SUBTREE | AFFECTS_SIBLINGS;
+
     /** The parsed stylesheet which this host object wraps. */
     private final CSSStyleSheetImpl wrapped_;
 
@@ -160,6 +167,9 @@ public class CSSStyleSheet extends StyleSheet {
 
     private boolean enabled_ = true;
 
+    /** The class names and ids used by the selectors; discarded whenever the rules change. */
+    private transient volatile SelectorDependencies dependencies_;
+
     private static final Set<String> CSS2_PSEUDO_CLASSES = new HashSet<>(Arrays.asList(
             "link", "visited", "hover", "active",
             "focus", "lang", "first-child"));
@@ -263,14 +273,221 @@ public class CSSStyleSheet extends StyleSheet {
 
         final BrowserVersion browser = getBrowserVersion();
         final DomElement e = element.getDomNodeOrDie();
+        final AncestorFilter ancestors = AncestorFilter.of(e.getParentNode());
         final List<CSSStyleSheetImpl.SelectorEntry> matchingRules =
-                selects(getRuleIndex(), this, browser, e, pseudoElement, false);
+                selects(getRuleIndex(), this, browser, e, pseudoElement, false, ancestors);
         for (CSSStyleSheetImpl.SelectorEntry entry : matchingRules) {
             final CSSStyleDeclarationImpl dec = entry.getRule().getStyle();
             style.applyStyleFromSelector(dec, entry.getSelector());
         }
     }
 
+    /**
+     * Returns which elements may start or stop matching a selector of this sheet (or the sheets imported)
+     * if the {@code class} or {@code id} attribute of an element changes. For other attributes, all
+     * flags are returned.
+     *
+     * @param attributeName the name of the changed attribute
+     * @param oldValue the old value, {@link DomElement#ATTRIBUTE_NOT_DEFINED} if the attribute was added
+     * @param newValue the new value, {@link DomElement#ATTRIBUTE_NOT_DEFINED} if the attribute was removed
+     * @return a combination of {@link #AFFECTS_SUBTREE} and {@link #AFFECTS_SIBLINGS}, {@code 0} if no
+     *         selector depends on the changed value
+     */
+    public int getAffectedElements(final String attributeName, final String oldValue, final String newValue) {
+        return getAffectedElements(attributeName, oldValue, newValue, new HashSet<CSSStyleSheet>());
+    }
+
+    private int getAffectedElements(final String attributeName, final String oldValue, final String newValue,
+            final Set<CSSStyleSheet> alreadyProcessing) {
+        final boolean isClass = "class".equals(attributeName);
+        if (!isClass && !"id".equals(attributeName)) {
+            return AFFECTS_ALL;
+        }
+        if (!alreadyProcessing.add(this)) {
+            return 0;
+        }
+
+        final SelectorDependencies dependencies = getSelectorDependencies();
+        int affected;
+        if (isClass) {
+            affected = dependencies.anyClass_;
+            final Set<String> oldClasses = new HashSet<>(Arrays.asList(StringUtils.split(oldValue)));
+            final Set<String> newClasses = new HashSet<>(Arrays.asList(StringUtils.split(newValue)));
+            for (final String className : oldClasses) {
+                if (!newClasses.contains(className)) {
+                    affected |= dependencies.classes_.getOrDefault(className, 0);
+                }
+            }
+            for (final String className : newClasses) {
+                if (!oldClasses.contains(className)) {
+                    affected |= dependencies.classes_.getOrDefault(className, 0);
+                }
+            }
+        }
+        else {
+            affected = dependencies.anyId_
+                    | dependencies.ids_.getOrDefault(oldValue, 0)
+                    | dependencies.ids_.getOrDefault(newValue, 0);
+        }
+
+        for (final CSSImportRuleImpl importRule : dependencies.imports_) {
+            if (affected == AFFECTS_ALL) {
+                break;
+            }
+            final CSSStyleSheet sheet = imports_.get(importRule);
+            if (sheet == null) {
+                // not loaded (yet), we don't know anything about it
+                return AFFECTS_ALL;
+            }
+            affected |= sheet.getAffectedElements(attributeName, oldValue, newValue, alreadyProcessing);
+        }
+        return affected;
+    }
+
+    /**
+     * Returns the class names and ids used by the selectors of the rules of this sheet; the data
+     * is kept until the rules change.
+     */
+    private SelectorDependencies getSelectorDependencies() {
+        SelectorDependencies dependencies = dependencies_;
+        if (dependencies == null) {
+            dependencies = new SelectorDependencies();
+            collectDependencies(dependencies, getWrappedSheet().getCssRules());
+            dependencies_ = dependencies;
+        }
+        return dependencies;
+    }
+
+    /**
+     * Discards the data derived from the selectors of this sheet, after a selector was changed.
+     */
+    void selectorsChanged() {
+        getWrappedSheet().resetRuleIndex();
+        dependencies_ = null;
+    }
+
+    private static void collectDependencies(final SelectorDependencies dependencies,
+            final CSSRuleListImpl ruleList) {
+        for (AbstractCSSRuleImpl rule : ruleList.getRules()) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                for (Selector selector : ((CSSStyleRuleImpl) rule).getSelectors()) {
+                    collectDependencies(dependencies, selector, AFFECTS_SUBTREE);
+                }
+            }
+            else if (rule instanceof CSSImportRuleImpl) {
+                dependencies.imports_.add((CSSImportRuleImpl) rule);
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                collectDependencies(dependencies, ((CSSMediaRuleImpl) rule).getCssRules());
+            }
+        }
+    }
+
+    /**
+     * Collects the class names and ids used by the selector.
+     * @param dependencies the dependencies to fill
+     * @param selector the selector
+     * @param affected the elements affected if a condition of the selector changes its result
+     */
+    private static void collectDependencies(final SelectorDependencies dependencies, final Selector selector,
+            final int affected) {
+        switch (selector.getSelectorType()) {
+            case ELEMENT_NODE_SELECTOR:
+                final List<Condition> conditions = ((ElementSelector) selector).getConditions();
+                if (conditions != null) {
+                    for (Condition condition : conditions) {
+                        collectDependencies(dependencies, condition, affected);
+                    }
+                }
+                break;
+
+            // the elements matched are descendants of the one matched by the left part
+            case CHILD_SELECTOR:
+                final ChildSelector cs = (ChildSelector) selector;
+                collectDependencies(dependencies, cs.getAncestorSelector(), AFFECTS_SUBTREE);
+                collectDependencies(dependencies, cs.getSimpleSelector(), affected);
+                break;
+
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector ds = (DescendantSelector) selector;
+                collectDependencies(dependencies, ds.getAncestorSelector(), AFFECTS_SUBTREE);
+                collectDependencies(dependencies, ds.getSimpleSelector(), affected);
+                break;
+
+            // the elements matched are siblings of the one matched by the left part (or their descendants)
+            case DIRECT_ADJACENT_SELECTOR:
+                final DirectAdjacentSelector das = (DirectAdjacentSelector) selector;
+                collectDependencies(dependencies, das.getSelector(), AFFECTS_SIBLINGS);
+                collectDependencies(dependencies, das.getSimpleSelector(), affected);
+                break;
+
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector gas = (GeneralAdjacentSelector) selector;
+                collectDependencies(dependencies, gas.getSelector(), AFFECTS_SIBLINGS);
+                collectDependencies(dependencies, gas.getSimpleSelector(), affected);
+                break;
+
+            default:
+                // pseudo elements don't depend on attributes
+                break;
+        }
+    }
+
+    private static void collectDependencies(final SelectorDependencies dependencies, final Condition condition,
+            final int affected) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                dependencies.ids_.merge(condition.getValue(), affected, (a, b) -> a | b);
+                break;
+
+            case CLASS_CONDITION:
+                String className = condition.getValue();
+                if (className.indexOf('\\') > -1) {
+                    className = UNESCAPE_SELECTOR.matcher(className).replaceAll("$1");
+                }
+                dependencies.classes_.merge(className, affected, (a, b) -> a | b);
+                break;
+
+            case ATTRIBUTE_CONDITION:
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                final String name = condition.getLocalName();
+                if ("class".equalsIgnoreCase(name)) {
+                    dependencies.anyClass_ |= affected;
+                }
+                else if ("id".equalsIgnoreCase(name)) {
+                    dependencies.anyId_ |= affected;
+                }
+                break;
+
+            case PSEUDO_CLASS_CONDITION:
+                // e.g. :not(.foo); the argument is not parsed
+                if (condition.getValue().indexOf('(') > -1) {
+                    dependencies.anyClass_ = AFFECTS_ALL;
+                    dependencies.anyId_ = AFFECTS_ALL;
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The class names and ids used by the selectors of the rules of a sheet (without the imported sheets),
+     * together with the elements affected if an element gets or loses them.
+     */
+    private static final class SelectorDependencies {
+        private final Map<String, Integer> classes_ = new HashMap<>();
+        private final Map<String, Integer> ids_ = new HashMap<>();
+        private final List<CSSImportRuleImpl> imports_ = new ArrayList<>();
+        private int anyClass_;
+        private int anyId_;
+    }
+
     /**
      * Loads the stylesheet at the specified link or href.
      * @param element the parent DOM element
@@ -1116,6 +1333,7 @@ public class CSSStyleSheet extends StyleSheet {
 
         // reset our index also
         getWrappedSheet().resetRuleIndex();
+        dependencies_ = null;
     }
 
     private int fixIndex(int index) {
@@ -1667,7 +1885,8 @@ public class CSSStyleSheet extends StyleSheet {
                             final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index,
                             final SimpleScriptable scriptable,
                             final BrowserVersion browserVersion, final DomElement element,
-                            final String pseudoElement, final boolean fromQuerySelectorAll) {
+                            final String pseudoElement, final boolean fromQuerySelectorAll,
+                            final AncestorFilter ancestors) {
 
         final List<CSSStyleSheetImpl.SelectorEntry> matchingRules = new ArrayList<>();
 
@@ -1679,7 +1898,8 @@ public class CSSStyleSheet extends StyleSheet {
 
             CSSStyleSheetImpl.SelectorEntry entry = iter.next();
             while (null != entry) {
-                if (CSSStyleSheet.selects(browserVersion, entry.getSelector(),
+                if (ancestors.mayMatch(entry.getSelector())
+                        && CSSStyleSheet.selects(browserVersion, entry.getSelector(),
                                             element, pseudoElement, fromQuerySelectorAll)) {
                     matchingRules.add(entry);
                 }
@@ -1688,7 +1908,7 @@ public class CSSStyleSheet extends StyleSheet {
 
             for (CSSStyleSheetImpl.CSSStyleSheetRuleIndex child : index.getChildren()) {
                 matchingRules.addAll(selects(child, scriptable, browserVersion,
-                                                    element, pseudoElement, fromQuerySelectorAll));
+                                                    element, pseudoElement, fromQuerySelectorAll, ancestors));
             }
         }
 
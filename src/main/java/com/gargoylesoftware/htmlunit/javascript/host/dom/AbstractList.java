@@ -22,6 +22,7 @@ import static com.gargoylesoftware.htmlunit.javascript.configuration.SupportedBr
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
@@ -286,6 +287,42 @@ public class AbstractList extends SimpleScriptable implements Function {
         return domNode.getDescendants();
     }
 
+    /**
+     * Returns the descendants of the reference node with the specified tag name, in document order.
+     * The tag name index of the page is used if possible, otherwise all descendants are returned.
+     * @param tagName the tag name
+     * @return the nodes
+     */
+    protected Iterable<DomNode> getCandidatesByTagName(final String tagName) {
+        final DomNode domNode = getDomNodeOrNull();
+        final HtmlPage page = domNode.getHtmlPageOrNull();
+        if (page != null) {
+            final List<DomElement> elements = page.getIndexedElementsByTagName(domNode, tagName);
+            if (elements != null) {
+                return Collections.<DomNode>unmodifiableList(elements);
+            }
+        }
+        return domNode.getDescendants();
+    }
+
+    /**
+     * Returns the descendants of the reference node with the specified class, in document order.
+     * The class name index of the page is used if possible, otherwise all descendants are returned.
+     * @param className the class name
+     * @return the nodes
+     */
+    protected Iterable<DomNode> getCandidatesByClassName(final String className) {
+        final DomNode domNode = getDomNodeOrNull();
+        final HtmlPage page = domNode.getHtmlPageOrNull();
+        if (page != null) {
+            final List<DomElement> elements = page.getIndexedElementsByClassName(domNode, className);
+            if (elements != null) {
+                return Collections.<DomNode>unmodifiableList(elements);
+            }
+        }
+        return domNode.getDescendants();
+    }
+
     /**
      * Indicates if the node should belong to the collection.
      * Belongs to the refactoring effort to improve HTMLCollection's performance.
@@ -765,6 +765,11 @@ public class Document extends Node {
         }
         else {
             collection = new HTMLCollection(getDomNodeOrDie(), false) {
+                @Override
+                protected Iterable<DomNode> getCandidates() {
+                    return getCandidatesByTagName(tagName);
+                }
+
                 @Override
                 protected boolean isMatching(final DomNode node) {
                     return tagName.equalsIgnoreCase(node.getNodeName());
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br>
+ *
+ * A thread safe map with a maximum number of entries; if the map is full, the least recently used entry
+ * is removed. The hits and misses of the lookups are counted.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LruCache<K, V> {
+
+    private int maxSize_;
+    private final LinkedHashMap<K, V> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hitCount_ = new AtomicLong();
+    private final AtomicLong missCount_ = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum number of entries (must be &gt;= 0)
+     */
+    public LruCache(final int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the cached value.
+     * @param key the key
+     * @return the cached value or {@code null}
+     */
+    public V get(final K key) {
+        final V value;
+        synchronized (entries_) {
+            value = entries_.get(key);
+        }
+        if (value == null) {
+            missCount_.incrementAndGet();
+        }
+        else {
+            hitCount_.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value; if there is none, the value is created using the given supplier
+     * and added to the cache. The supplier is called outside of the lock, in the rare case
+     * of concurrent calls for the same key the last value wins.
+     * @param key the key
+     * @param supplier creates the value if needed; may return {@code null} (not cached)
+     * @return the value or {@code null}
+     */
+    public V get(final K key, final Supplier<V> supplier) {
+        final V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final V value = supplier.get();
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Adds a value to the cache.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        synchronized (entries_) {
+            if (maxSize_ > 0) {
+                entries_.put(key, value);
+                deleteOverflow();
+            }
+        }
+    }
+
+    private void deleteOverflow() {
+        final Iterator<K> iter = entries_.keySet().iterator();
+        while (entries_.size() > maxSize_ && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries kept.
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        synchronized (entries_) {
+            return maxSize_;
+        }
+    }
+
+    /**
+     * Sets the maximum number of entries kept, <tt>0</tt> disables the cache.
+     * @param maxSize the maximum size (must be &gt;= 0)
+     */
+    public void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal value for maxSize: " + maxSize);
+        }
+        synchronized (entries_) {
+            maxSize_ = maxSize;
+            deleteOverflow();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     * @return the size
+     */
+    public int getSize() {
+        synchronized (entries_) {
+            return entries_.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount_.get();
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount_.get();
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public void clear() {
+        synchronized (entries_) {
+            entries_.clear();
+        }
+        hitCount_.set(0);
+        missCount_.set(0);
+    }
+}
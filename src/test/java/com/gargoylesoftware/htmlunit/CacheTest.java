@@ -21,11 +21,13 @@ import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -667,6 +669,349 @@ public class CacheTest extends SimpleWebTestCase {
 
         verify(response1);
     }
+
+    /**
+     * The least recently used entry has to be evicted first.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void leastRecentlyUsedEvicted() throws Exception {
+        final Cache cache = new Cache();
+        cache.setMaxSize(2);
+
+        final WebRequest request1 = new WebRequest(URL_FIRST, HttpMethod.GET);
+        final WebRequest request2 = new WebRequest(URL_SECOND, HttpMethod.GET);
+        final WebRequest request3 = new WebRequest(URL_THIRD, HttpMethod.GET);
+        assertTrue(cache.cacheIfPossible(request1, createCacheableResponse(request1, 10), "1"));
+        assertTrue(cache.cacheIfPossible(request2, createCacheableResponse(request2, 10), "2"));
+
+        // touch the first one
+        assertEquals("1", cache.getCachedObject(request1));
+
+        assertTrue(cache.cacheIfPossible(request3, createCacheableResponse(request3, 10), "3"));
+        assertEquals(2, cache.getSize());
+        assertEquals("1", cache.getCachedObject(request1));
+        assertNull(cache.getCachedObject(request2));
+        assertEquals("3", cache.getCachedObject(request3));
+    }
+
+    /**
+     * Lookups from many threads don't take the lock of the cache for every hit,
+     * but the order of the accesses is still respected when evicting.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void leastRecentlyUsedEvictedConcurrentLookups() throws Exception {
+        final Cache cache = new Cache();
+        cache.setMaxSize(2);
+
+        final WebRequest request1 = new WebRequest(URL_FIRST, HttpMethod.GET);
+        final WebRequest request2 = new WebRequest(URL_SECOND, HttpMethod.GET);
+        final WebRequest request3 = new WebRequest(URL_THIRD, HttpMethod.GET);
+        assertTrue(cache.cacheIfPossible(request1, createCacheableResponse(request1, 10), "1"));
+        assertTrue(cache.cacheIfPossible(request2, createCacheableResponse(request2, 10), "2"));
+
+        final Thread[] threads = new Thread[4];
+        final List<Object> wrongResults = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    final Object cached = cache.getCachedObject(request1);
+                    if (!"1".equals(cached)) {
+                        wrongResults.add(cached);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrongResults.size());
+
+        assertTrue(cache.cacheIfPossible(request3, createCacheableResponse(request3, 10), "3"));
+        assertEquals(2, cache.getSize());
+        assertEquals("1", cache.getCachedObject(request1));
+        assertNull(cache.getCachedObject(request2));
+        assertEquals("3", cache.getCachedObject(request3));
+    }
+
+    /**
+     * Test for {@link Cache#setMaxBytes(long)}.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void maxBytesMaintained() throws Exception {
+        final Cache cache = new Cache();
+
+        final WebRequest request1 = new WebRequest(URL_FIRST, HttpMethod.GET);
+        final WebRequest request2 = new WebRequest(URL_SECOND, HttpMethod.GET);
+        final WebRequest request3 = new WebRequest(URL_THIRD, HttpMethod.GET);
+        assertTrue(cache.cacheIfPossible(request1, createCacheableResponse(request1, 100), "1"));
+        assertTrue(cache.cacheIfPossible(request2, createCacheableResponse(request2, 100), "2"));
+        assertEquals(0L, cache.getBytes());
+
+        cache.setMaxBytes(250);
+        assertEquals(200L, cache.getBytes());
+        assertEquals(2, cache.getSize());
+
+        assertTrue(cache.cacheIfPossible(request3, createCacheableResponse(request3, 100), "3"));
+        assertEquals(2, cache.getSize());
+        assertEquals(200L, cache.getBytes());
+        assertNull(cache.getCachedObject(request1));
+
+        cache.setMaxBytes(150);
+        assertEquals(1, cache.getSize());
+        assertEquals(100L, cache.getBytes());
+        assertEquals("3", cache.getCachedObject(request3));
+
+        cache.clear();
+        assertEquals(0L, cache.getBytes());
+    }
+
+    /**
+     * Stale entries carrying a validator are revalidated using a conditional request.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateStaleEntry() throws Exception {
+        final String html = "<html><head><title>page 1</title>\n"
+            + "<script src='foo.js' type='text/javascript'></script>\n"
+            + "</head><body>abc</body></html>";
+
+        final List<Map<String, String>> requestHeaders = new ArrayList<>();
+        final MockWebConnection connection = new MockWebConnection() {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                requestHeaders.add(new HashMap<>(request.getAdditionalHeaders()));
+                return super.getResponse(request);
+            }
+        };
+        final WebClient client = getWebClient();
+        client.setWebConnection(connection);
+
+        final URL pageUrl = new URL(URL_FIRST, "page1.html");
+        final URL scriptUrl = new URL(URL_FIRST, "foo.js");
+        connection.setResponse(pageUrl, html);
+
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.LAST_MODIFIED, "Tue, 20 Feb 2018 10:00:00 GMT"));
+        headers.add(new NameValuePair(HttpHeader.CACHE_CONTROL, "max-age=1"));
+        headers.add(new NameValuePair(HttpHeader.ETAG, "\"abc\""));
+        connection.setResponse(scriptUrl, "alert('from cache')", 200, "OK",
+                MimeType.APPLICATION_JAVASCRIPT, headers);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+        client.getPage(pageUrl);
+        assertEquals(2, connection.getRequestCount());
+        assertEquals(1, client.getCache().getSize());
+        assertNull(requestHeaders.get(1).get(HttpHeader.IF_NONE_MATCH));
+
+        // wait for max-age seconds + 1 to become stale
+        Thread.sleep(2 * 1000);
+        connection.setResponse(scriptUrl, "", 304, "Not Modified", MimeType.APPLICATION_JAVASCRIPT,
+                new ArrayList<NameValuePair>());
+
+        client.getPage(pageUrl);
+        assertEquals(4, connection.getRequestCount());
+        assertEquals(1, client.getCache().getSize());
+        assertEquals("\"abc\"", requestHeaders.get(3).get(HttpHeader.IF_NONE_MATCH));
+        assertEquals("Tue, 20 Feb 2018 10:00:00 GMT", requestHeaders.get(3).get(HttpHeader.IF_MODIFIED_SINCE));
+        assertEquals(new String[] {"from cache", "from cache"}, collectedAlerts);
+    }
+
+    /**
+     * Responses carrying only an ETag are stored and revalidated on every use.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateETagOnly() throws Exception {
+        revalidate(new NameValuePair(HttpHeader.ETAG, "\"v1\""));
+    }
+
+    /**
+     * Responses with <tt>max-age=0</tt> are stored and revalidated on every use.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateMaxAgeZero() throws Exception {
+        revalidate(new NameValuePair(HttpHeader.ETAG, "\"v1\""),
+                new NameValuePair(HttpHeader.CACHE_CONTROL, "max-age=0"));
+    }
+
+    /**
+     * Responses with <tt>no-cache</tt> are stored and revalidated on every use.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateNoCache() throws Exception {
+        revalidate(new NameValuePair(HttpHeader.LAST_MODIFIED, "Sun, 15 Jul 2007 20:46:27 GMT"),
+                new NameValuePair(HttpHeader.CACHE_CONTROL, "no-cache"));
+    }
+
+    private void revalidate(final NameValuePair... responseHeaders) throws Exception {
+        final String html = "<html><head><title>page 1</title>\n"
+            + "<script src='foo.js' type='text/javascript'></script>\n"
+            + "</head><body>abc</body></html>";
+
+        final List<Map<String, String>> requestHeaders = new ArrayList<>();
+        final MockWebConnection connection = new MockWebConnection() {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                requestHeaders.add(new HashMap<>(request.getAdditionalHeaders()));
+                return super.getResponse(request);
+            }
+        };
+        final WebClient client = getWebClient();
+        client.setWebConnection(connection);
+
+        final URL pageUrl = new URL(URL_FIRST, "page1.html");
+        final URL scriptUrl = new URL(URL_FIRST, "foo.js");
+        connection.setResponse(pageUrl, html);
+        connection.setResponse(scriptUrl, "alert('v1')", 200, "OK",
+                MimeType.APPLICATION_JAVASCRIPT, Arrays.asList(responseHeaders));
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+        client.getPage(pageUrl);
+        assertEquals(2, connection.getRequestCount());
+        assertEquals(1, client.getCache().getSize());
+
+        // the stored response is not fresh, the server confirms it
+        connection.setResponse(scriptUrl, "", 304, "Not Modified", MimeType.APPLICATION_JAVASCRIPT,
+                new ArrayList<NameValuePair>());
+        client.getPage(pageUrl);
+        assertEquals(4, connection.getRequestCount());
+        assertEquals(1, client.getCache().getSize());
+        final Map<String, String> conditional = requestHeaders.get(3);
+        assertTrue(conditional.containsKey(HttpHeader.IF_NONE_MATCH)
+                || conditional.containsKey(HttpHeader.IF_MODIFIED_SINCE));
+
+        // the server sends new content, it replaces the stored response
+        connection.setResponse(scriptUrl, "alert('v2')", 200, "OK",
+                MimeType.APPLICATION_JAVASCRIPT, Arrays.asList(responseHeaders));
+        client.getPage(pageUrl);
+        assertEquals(6, connection.getRequestCount());
+        assertEquals(1, client.getCache().getSize());
+
+        connection.setResponse(scriptUrl, "", 304, "Not Modified", MimeType.APPLICATION_JAVASCRIPT,
+                new ArrayList<NameValuePair>());
+        client.getPage(pageUrl);
+        assertEquals(8, connection.getRequestCount());
+
+        assertEquals(new String[] {"v1", "v1", "v2", "v2"}, collectedAlerts);
+    }
+
+    /**
+     * Test for {@link Cache#isRevalidatableSubresource(WebResponse)}.
+     */
+    @Test
+    public void isRevalidatableSubresource() {
+        final Cache cache = new Cache();
+        final Map<String, String> headers = new HashMap<>();
+        final String[] contentType = {MimeType.APPLICATION_JAVASCRIPT};
+        final WebResponse response = new DummyWebResponse() {
+            @Override
+            public String getResponseHeaderValue(final String headerName) {
+                return headers.get(headerName);
+            }
+
+            @Override
+            public String getContentType() {
+                return contentType[0];
+            }
+        };
+
+        assertFalse(cache.isRevalidatableSubresource(response));
+
+        headers.put(HttpHeader.ETAG, "\"abc\"");
+        assertTrue(cache.isRevalidatableSubresource(response));
+
+        contentType[0] = MimeType.TEXT_CSS;
+        assertTrue(cache.isRevalidatableSubresource(response));
+
+        contentType[0] = "image/png";
+        assertTrue(cache.isRevalidatableSubresource(response));
+
+        contentType[0] = MimeType.TEXT_HTML;
+        assertFalse(cache.isRevalidatableSubresource(response));
+
+        contentType[0] = MimeType.APPLICATION_JAVASCRIPT;
+        headers.put(HttpHeader.CACHE_CONTROL, "max-age=0");
+        assertTrue(cache.isRevalidatableSubresource(response));
+
+        headers.put(HttpHeader.CACHE_CONTROL, "private, max-age=0");
+        assertFalse(cache.isRevalidatableSubresource(response));
+
+        headers.put(HttpHeader.CACHE_CONTROL, "no-store");
+        assertFalse(cache.isRevalidatableSubresource(response));
+
+        headers.remove(HttpHeader.CACHE_CONTROL);
+        headers.put(HttpHeader.EXPIRES, formatDate(DateUtils.addMinutes(new Date(), 5)));
+        assertFalse(cache.isRevalidatableSubresource(response));
+    }
+
+    /**
+     * If the stored response gets evicted while the conditional request is on the way,
+     * the <tt>304 Not Modified</tt> response can't be used; the request is repeated
+     * without the conditional headers.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void revalidateEvictedEntry() throws Exception {
+        final String html = "<html><head><title>page 1</title>\n"
+            + "<script src='foo.js' type='text/javascript'></script>\n"
+            + "</head><body>abc</body></html>";
+
+        final URL pageUrl = new URL(URL_FIRST, "page1.html");
+        final URL scriptUrl = new URL(URL_FIRST, "foo.js");
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.ETAG, "\"v1\""));
+
+        final WebClient client = getWebClient();
+        final List<Map<String, String>> requestHeaders = new ArrayList<>();
+        final MockWebConnection connection = new MockWebConnection() {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                requestHeaders.add(new HashMap<>(request.getAdditionalHeaders()));
+                if (request.isAdditionalHeader(HttpHeader.IF_NONE_MATCH)) {
+                    client.getCache().clear();
+                    final WebResponseData data = new WebResponseData(new byte[0], 304, "Not Modified",
+                            new ArrayList<NameValuePair>());
+                    return new WebResponse(data, request, 0);
+                }
+                return super.getResponse(request);
+            }
+        };
+        client.setWebConnection(connection);
+        connection.setResponse(pageUrl, html);
+        connection.setResponse(scriptUrl, "alert('v1')", 200, "OK", MimeType.APPLICATION_JAVASCRIPT, headers);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+        client.getPage(pageUrl);
+        assertEquals(1, client.getCache().getSize());
+
+        connection.setResponse(scriptUrl, "alert('v2')", 200, "OK", MimeType.APPLICATION_JAVASCRIPT, headers);
+        client.getPage(pageUrl);
+
+        // page, script, page, conditional request for the script, unconditional retry
+        assertEquals(5, requestHeaders.size());
+        assertEquals("\"v1\"", requestHeaders.get(3).get(HttpHeader.IF_NONE_MATCH));
+        assertNull(requestHeaders.get(4).get(HttpHeader.IF_NONE_MATCH));
+        assertEquals(new String[] {"v1", "v2"}, collectedAlerts);
+    }
+
+    private static WebResponse createCacheableResponse(final WebRequest request, final int length) {
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.LAST_MODIFIED, "Sun, 15 Jul 2007 20:46:27 GMT"));
+        final WebResponseData data = new WebResponseData(new byte[length], 200, "OK", headers);
+        return new WebResponse(data, request, 0);
+    }
 }
 
 class DummyWebResponse extends WebResponse {
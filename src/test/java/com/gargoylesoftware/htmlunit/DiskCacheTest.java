@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Tests for {@link DiskCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class DiskCacheTest extends SimpleWebTestCase {
+
+    /** Provides a temporary cache directory. */
+    @Rule
+    public final TemporaryFolder tmpFolderProvider_ = new TemporaryFolder();
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void responsesSurviveRestart() throws Exception {
+        final String html = "<html><head><title>page 1</title>\n"
+            + "<script src='foo.js' type='text/javascript'></script>\n"
+            + "</head><body>abc</body></html>";
+
+        final File directory = tmpFolderProvider_.newFolder();
+
+        final URL pageUrl = new URL(URL_FIRST, "page1.html");
+        final List<NameValuePair> headers =
+            Collections.singletonList(new NameValuePair("Last-Modified", "Sun, 15 Jul 2007 20:46:27 GMT"));
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        try (WebClient client = new WebClient(getBrowserVersion())) {
+            final DiskCache cache = new DiskCache(directory);
+            client.setCache(cache);
+            client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+            final MockWebConnection connection = new MockWebConnection();
+            client.setWebConnection(connection);
+            connection.setResponse(pageUrl, html);
+            connection.setResponse(new URL(URL_FIRST, "foo.js"), "alert('foo')", 200, "OK",
+                    MimeType.APPLICATION_JAVASCRIPT, headers);
+
+            client.getPage(pageUrl);
+            assertEquals(2, connection.getRequestCount());
+            cache.close();
+        }
+
+        try (WebClient client = new WebClient(getBrowserVersion())) {
+            final DiskCache cache = new DiskCache(directory);
+            client.setCache(cache);
+            client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+            assertEquals(0, cache.getSize());
+
+            final MockWebConnection connection = new MockWebConnection();
+            client.setWebConnection(connection);
+            connection.setResponse(pageUrl, html);
+
+            client.getPage(pageUrl);
+            assertEquals(1, connection.getRequestCount());
+            assertEquals(1, cache.getSize());
+            cache.close();
+        }
+
+        assertEquals(new String[] {"foo", "foo"}, collectedAlerts);
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void purge() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder();
+
+        final WebRequest request = new WebRequest(URL_FIRST);
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair("Last-Modified", "Sun, 15 Jul 2007 20:46:27 GMT"));
+        final WebResponseData data = new WebResponseData("hello".getBytes("UTF-8"), 200, "OK", headers);
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            assertTrue(cache.cacheIfPossible(request, new WebResponse(data, request, 0), null));
+        }
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            final WebResponse response = cache.getCachedResponse(request);
+            assertNotNull(response);
+            assertEquals("hello", response.getContentAsString());
+            assertEquals("Sun, 15 Jul 2007 20:46:27 GMT", response.getResponseHeaderValue("Last-Modified"));
+
+            cache.purge();
+            assertNull(cache.getCachedResponse(request));
+        }
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            assertNull(cache.getCachedResponse(request));
+        }
+    }
+
+    /**
+     * A deserialized cache reads the index again and stores new responses on disk.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void serialization() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder();
+
+        final WebRequest request1 = new WebRequest(new URL(URL_FIRST, "a.js"));
+        final WebRequest request2 = new WebRequest(new URL(URL_FIRST, "b.js"));
+
+        final DiskCache original = new DiskCache(directory);
+        assertTrue(original.cacheIfPossible(request1, createResponse(request1, "a"), null));
+
+        // the directory is still in use by the original, the copy only caches in memory
+        try (DiskCache copy = clone(original)) {
+            assertEquals("a", copy.getCachedResponse(request1).getContentAsString());
+            assertTrue(copy.cacheIfPossible(request2, createResponse(request2, "b"), null));
+        }
+        original.close();
+
+        try (DiskCache copy = clone(original)) {
+            copy.clear();
+            assertEquals("a", copy.getCachedResponse(request1).getContentAsString());
+            assertNull(copy.getCachedResponse(request2));
+            assertTrue(copy.cacheIfPossible(request2, createResponse(request2, "b"), null));
+        }
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            assertEquals("a", cache.getCachedResponse(request1).getContentAsString());
+            assertEquals("b", cache.getCachedResponse(request2).getContentAsString());
+        }
+    }
+
+    /**
+     * The same content stored at the same time by several threads is written only once.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void concurrentStoreOfSameContent() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder();
+        final int threadCount = 8;
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<>();
+            final List<Boolean> results = Collections.synchronizedList(new ArrayList<Boolean>());
+            for (int i = 0; i < threadCount; i++) {
+                final WebRequest request = new WebRequest(new URL(URL_FIRST, i + ".js"));
+                final WebResponse response = createResponse(request, "same content");
+                final Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        results.add(cache.cacheIfPossible(request, response, null));
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(threadCount, results.size());
+        }
+
+        try (DiskCache cache = new DiskCache(directory)) {
+            for (int i = 0; i < threadCount; i++) {
+                final WebResponse response = cache.getCachedResponse(new WebRequest(new URL(URL_FIRST, i + ".js")));
+                assertEquals("same content", response.getContentAsString());
+            }
+        }
+        assertEquals(1, new File(directory, "bodies").list().length);
+    }
+
+    private static WebResponse createResponse(final WebRequest request, final String content) throws Exception {
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair("Last-Modified", "Sun, 15 Jul 2007 20:46:27 GMT"));
+        final WebResponseData data = new WebResponseData(content.getBytes("UTF-8"), 200, "OK", headers);
+        return new WebResponse(data, request, 0);
+    }
+}
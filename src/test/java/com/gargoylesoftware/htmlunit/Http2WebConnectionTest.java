@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.servlet.Servlet;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Tests for {@link Http2WebConnection}. The test server only speaks HTTP/1.1,
+ * the tests cover the fallback and the options shared with {@link HttpWebConnection}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class Http2WebConnectionTest extends WebServerTestCase {
+
+    /** A keystore with a RSA key, the DSA key of the default one is too weak for current JVMs. */
+    private static final String KEYSTORE = "insecureSSL-rsa.keystore";
+
+    private Http2WebConnection createConnection(final WebClient webClient) {
+        final Http2WebConnection connection = new Http2WebConnection(webClient);
+        webClient.setWebConnection(connection);
+        return connection;
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getPage() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        createConnection(webClient);
+
+        final Page page = webClient.getPage(URL_FIRST + "echo?a=b");
+        final WebResponse response = page.getWebResponse();
+        assertEquals(200, response.getStatusCode());
+        assertEquals("OK", response.getStatusMessage());
+        assertTrue(response.getContentAsString(), response.getContentAsString()
+                .startsWith("GET /echo a=b " + webClient.getBrowserVersion().getUserAgent()));
+        assertEquals("text/plain", response.getContentType());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void cookies() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        createConnection(webClient);
+
+        webClient.getPage(URL_FIRST + "echo");
+        assertEquals("echoed", webClient.getCookieManager().getCookie("echo").getValue());
+
+        final Page page = webClient.getPage(URL_FIRST + "echo");
+        assertTrue(page.getWebResponse().getContentAsString().endsWith(" echo=echoed"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void post() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "echo"), HttpMethod.POST);
+        request.setRequestParameters(Arrays.asList(new NameValuePair("a", "b"), new NameValuePair("c", "d e")));
+        final WebResponse response = connection.getResponse(request);
+        assertTrue(response.getContentAsString(), response.getContentAsString()
+                .startsWith("POST /echo null application/x-www-form-urlencoded a=b&c=d+e"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void postMultipart() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "echo"), HttpMethod.POST);
+        request.setEncodingType(FormEncodingType.MULTIPART);
+        final KeyDataPair file = new KeyDataPair("file", null, "data.txt", "text/plain", StandardCharsets.UTF_8);
+        file.setData("file content".getBytes(StandardCharsets.UTF_8));
+        request.setRequestParameters(Arrays.asList(new NameValuePair("a", "b"), file));
+
+        final String content = connection.getResponse(request).getContentAsString();
+        assertTrue(content, content.startsWith("POST /echo null multipart/form-data; boundary="));
+        assertTrue(content, content.contains("Content-Disposition: form-data; name=\"a\""));
+        assertTrue(content, content.contains("Content-Disposition: form-data; name=\"file\"; filename=\"data.txt\""));
+        assertTrue(content, content.contains("file content"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void responseAsync() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "echo"));
+        final WebResponse response = connection.getResponseAsync(request).get(10, TimeUnit.SECONDS);
+        assertEquals(200, response.getStatusCode());
+        assertSame(request, response.getWebRequest());
+    }
+
+    /**
+     * The request is sent to the proxy, which is the test server itself here.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void proxy() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+
+        final WebRequest request = new WebRequest(new URL("http://nowhere.invalid:" + PORT + "/echo"));
+        request.setProxyHost("localhost");
+        request.setProxyPort(PORT);
+        assertEquals(200, connection.getResponse(request).getStatusCode());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void basicAuthentication() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/protected", BasicAuthenticationServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "protected"));
+
+        assertEquals(401, connection.getResponse(request).getStatusCode());
+
+        ((DefaultCredentialsProvider) webClient.getCredentialsProvider()).addCredentials("jetty", "jetty");
+        final WebResponse response = connection.getResponse(request);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("Basic amV0dHk6amV0dHk=", response.getContentAsString());
+    }
+
+    /**
+     * With prior knowledge, plain HTTP requests speak HTTP/2 right away,
+     * which the HTTP/1.1 test server doesn't understand.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void h2cPriorKnowledge() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        webClient.getOptions().setTimeout(5000);
+        final Http2WebConnection connection = createConnection(webClient);
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "echo"));
+
+        connection.setH2cPriorKnowledge(true);
+        try {
+            connection.getResponse(request);
+            fail("HTTP/2 is not supported by the server");
+        }
+        catch (final IOException e) {
+            // expected
+        }
+
+        connection.setH2cPriorKnowledge(false);
+        assertEquals(200, connection.getResponse(request).getStatusCode());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void insecureSSL() throws Exception {
+        final InsecureHttpsServer server = new InsecureHttpsServer("<html><body>secure</body></html>", KEYSTORE);
+        server.start();
+        try {
+            final WebClient webClient = getWebClient();
+            createConnection(webClient);
+            final String url = "https://" + server.getHostName() + ':' + server.getPort() + "/";
+
+            try {
+                webClient.getPage(url);
+                fail("SSLHandshakeException expected");
+            }
+            catch (final SSLHandshakeException e) {
+                // expected
+            }
+
+            webClient.getOptions().setUseInsecureSSL(true);
+            final Page page = webClient.getPage(url);
+            assertEquals("<html><body>secure</body></html>", page.getWebResponse().getContentAsString());
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void insecureSSLClientCertificate() throws Exception {
+        final InsecureHttpsServer server = new InsecureHttpsServer("<html><body>secure</body></html>", KEYSTORE);
+        server.start();
+        try {
+            final WebClient webClient = getWebClient();
+            createConnection(webClient);
+            webClient.getOptions().setSSLClientCertificate(getClass().getClassLoader().getResource(KEYSTORE),
+                    "nopassword", "jks");
+            webClient.getOptions().setUseInsecureSSL(true);
+
+            final Page page = webClient.getPage("https://" + server.getHostName() + ':' + server.getPort() + "/");
+            assertEquals(200, page.getWebResponse().getStatusCode());
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void reinitialiseAfterClosing() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<>();
+        servlets.put("/echo", EchoServlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient webClient = getWebClient();
+        final Http2WebConnection connection = createConnection(webClient);
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "echo"));
+
+        assertEquals(200, connection.getResponse(request).getStatusCode());
+        connection.close();
+        assertEquals(200, connection.getResponse(request).getStatusCode());
+    }
+
+    /**
+     * Echoes the method, path, query, user agent or content type, body and cookies of the request;
+     * sets a cookie.
+     */
+    public static class EchoServlet extends HttpServlet {
+
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            response.setContentType("text/plain");
+            response.addCookie(new Cookie("echo", "echoed"));
+
+            final StringBuilder cookies = new StringBuilder();
+            if (request.getCookies() != null) {
+                for (final Cookie cookie : request.getCookies()) {
+                    cookies.append(' ').append(cookie.getName()).append('=').append(cookie.getValue());
+                }
+            }
+            final Writer writer = response.getWriter();
+            writer.write(request.getMethod() + " " + request.getRequestURI() + " " + request.getQueryString() + " "
+                    + request.getHeader(HttpHeader.USER_AGENT) + cookies);
+        }
+
+        @Override
+        protected void doPost(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            response.setContentType("text/plain");
+            final Writer writer = response.getWriter();
+            writer.write(request.getMethod() + " " + request.getRequestURI() + " " + request.getQueryString() + " "
+                    + request.getContentType() + " " + IOUtils.toString(request.getInputStream(), "ISO-8859-1"));
+        }
+    }
+
+    /**
+     * Asks for basic authentication, echoes the authorization header.
+     */
+    public static class BasicAuthenticationServlet extends HttpServlet {
+
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException {
+            final String authorization = request.getHeader("Authorization");
+            if (authorization == null) {
+                response.setHeader("WWW-Authenticate", "Basic realm=\"test\"");
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                return;
+            }
+            response.setContentType("text/plain");
+            response.getWriter().write(authorization);
+        }
+    }
+}
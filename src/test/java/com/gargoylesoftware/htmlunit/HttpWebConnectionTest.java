@@ -596,6 +596,78 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         assertEquals(webClient.getBrowserVersion().getUserAgent(), userAgent);
     }
 
+    /**
+     * The client is built once and reused, until the options change.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void httpClientReused() throws Exception {
+        startWebServer("./");
+
+        final WebClient webClient = getWebClient();
+        // every request has to reach the connection
+        webClient.getCache().setMaxSize(0);
+        final HttpWebConnection connection = (HttpWebConnection) webClient.getWebConnection();
+
+        webClient.getPage(URL_FIRST + "LICENSE.txt");
+        final Object httpClient = getHttpClient(connection);
+        assertNotNull(httpClient);
+
+        webClient.getPage(URL_FIRST + "LICENSE.txt");
+        assertSame(httpClient, getHttpClient(connection));
+
+        webClient.getOptions().setTimeout(webClient.getOptions().getTimeout() + 1);
+        webClient.getPage(URL_FIRST + "LICENSE.txt");
+        final Object rebuiltHttpClient = getHttpClient(connection);
+        assertNotSame(httpClient, rebuiltHttpClient);
+
+        webClient.getPage(URL_FIRST + "LICENSE.txt");
+        assertSame(rebuiltHttpClient, getHttpClient(connection));
+    }
+
+    /**
+     * All threads share the same client.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void httpClientSharedByThreads() throws Exception {
+        startWebServer("./");
+
+        final WebClient webClient = getWebClient();
+        final HttpWebConnection connection = (HttpWebConnection) webClient.getWebConnection();
+        final WebRequest request = new WebRequest(new URL(URL_FIRST, "LICENSE.txt"));
+
+        connection.getResponse(request);
+        final Object httpClient = getHttpClient(connection);
+
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    assertEquals(200, connection.getResponse(request).getStatusCode());
+                }
+                catch (final Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertSame(httpClient, getHttpClient(connection));
+    }
+
+    private static Object getHttpClient(final HttpWebConnection connection) throws Exception {
+        return get(get(connection, "httpClient_"), "httpClient_");
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> T get(final Object o, final String fieldName) throws Exception {
         final Field field = o.getClass().getDeclaredField(fieldName);
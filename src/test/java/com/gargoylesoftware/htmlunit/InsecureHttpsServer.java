@@ -43,12 +43,13 @@ public class InsecureHttpsServer {
 
     private LocalTestServer localServer_;
     private final String html_;
+    private final String keystore_;
 
     /**
      * Create a server delivering nothing.
      */
     public InsecureHttpsServer() {
-        html_ = null;
+        this(null);
     }
 
     /**
@@ -56,7 +57,17 @@ public class InsecureHttpsServer {
      * @param html the HTML content to deliver
      */
     public InsecureHttpsServer(final String html) {
+        this(html, "insecureSSL.keystore");
+    }
+
+    /**
+     * Create a server delivering the provided HTML content, using the certificate of the specified keystore.
+     * @param html the HTML content to deliver
+     * @param keystore the name of the keystore resource
+     */
+    public InsecureHttpsServer(final String html, final String keystore) {
         html_ = html;
+        keystore_ = keystore;
     }
 
     private static KeyManagerFactory createKeyManagerFactory() throws NoSuchAlgorithmException {
@@ -84,7 +95,7 @@ public class InsecureHttpsServer {
      * @throws Exception in case of exception
      */
     public void start() throws Exception {
-        final URL url = getClass().getClassLoader().getResource("insecureSSL.keystore");
+        final URL url = getClass().getClassLoader().getResource(keystore_);
         final KeyStore keystore = KeyStore.getInstance("jks");
         final char[] pwd = "nopassword".toCharArray();
         keystore.load(url.openStream(), pwd);
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Tests for {@link WebConnectionExecutor} and {@link WebConnection#getResponseAsync(WebRequest)}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class WebConnectionExecutorTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getResponseAsync() throws Exception {
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(URL_FIRST, "hello");
+
+        final CompletableFuture<WebResponse> future = connection.getResponseAsync(new WebRequest(URL_FIRST));
+        assertEquals("hello", future.get().getContentAsString());
+        assertEquals(URL_FIRST, connection.getLastWebRequest().getUrl());
+    }
+
+    /**
+     * The future is completed with the exception of the connection.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getResponseAsyncException() throws Exception {
+        final WebConnection connection = new WebConnectionWrapper(new MockWebConnection()) {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                throw new IOException("failed");
+            }
+        };
+
+        final CompletableFuture<WebResponse> future = connection.getResponseAsync(new WebRequest(URL_FIRST));
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        }
+        catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("failed", e.getCause().getMessage());
+        }
+    }
+}
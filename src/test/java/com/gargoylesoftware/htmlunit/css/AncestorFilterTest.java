@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Tests for {@link AncestorFilter}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class AncestorFilterTest extends SimpleWebTestCase {
+
+    private static final String HTML = "<html><body>\n"
+        + "<div id='outer' class='a b'><section><p id='inner'>x</p></section></div>\n"
+        + "</body></html>";
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void mayMatch() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement inner = page.getElementById("inner");
+        final AncestorFilter filter = AncestorFilter.of(inner.getParentNode());
+
+        assertTrue(filter.mayMatch(parse("p")));
+        assertTrue(filter.mayMatch(parse("div p")));
+        assertTrue(filter.mayMatch(parse("div.a.b section > p")));
+        assertTrue(filter.mayMatch(parse("#outer p")));
+        assertTrue(filter.mayMatch(parse("body div + p")));
+        assertTrue(filter.mayMatch(parse("p::before")));
+        assertTrue(filter.mayMatch(parse("p.c")));
+
+        assertFalse(filter.mayMatch(parse("table p")));
+        assertFalse(filter.mayMatch(parse("div.c p")));
+        assertFalse(filter.mayMatch(parse("#other > p")));
+        assertFalse(filter.mayMatch(parse("ul div + p")));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void pushPop() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        final DomElement inner = page.getElementById("inner");
+        final AncestorFilter filter = AncestorFilter.of(page.getBody());
+
+        assertFalse(filter.mayMatch(parse("#outer p")));
+        filter.push(page.getElementById("outer"));
+        assertTrue(filter.mayMatch(parse("#outer p")));
+        filter.push(inner);
+        filter.pop();
+        assertTrue(filter.mayMatch(parse("#outer p")));
+        assertFalse(filter.mayMatch(parse("#inner p")));
+        filter.pop();
+        assertFalse(filter.mayMatch(parse("#outer p")));
+    }
+
+    /**
+     * The results of querySelectorAll() are not changed by the filter.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void querySelectorAll() throws Exception {
+        final HtmlPage page = loadPage(HTML);
+        assertEquals(1, page.querySelectorAll("div.a p").size());
+        assertEquals(1, page.querySelectorAll("body > div section p, ul p").size());
+        assertEquals(0, page.querySelectorAll("div.c p").size());
+        assertEquals(1, page.getElementById("outer").querySelectorAll("body p").size());
+        assertEquals("inner", page.getElementById("outer").<DomElement>querySelector("section > *").getId());
+    }
+
+    private static Selector parse(final String selector) throws Exception {
+        return new CSSOMParser(new CSS3Parser()).parseSelectors(selector).get(0);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.css;
+
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.css.parser.CSSException;
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Tests for {@link SelectorListCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class SelectorListCacheTest extends SimpleWebTestCase {
+
+    /**
+     * The parsed selectors are reused.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void reused() throws Exception {
+        final String html = "<html><body><div class='foo'><span id='s1'></span></div></body></html>";
+        final HtmlPage page = loadPage(html);
+
+        final String selector = "div.foo > span#s1[id='s" + System.nanoTime() + "'], div.foo span";
+        final SelectorListCache cache = SelectorListCache.getInstance();
+        final long hits = cache.getHitCount();
+
+        assertEquals(1, page.querySelectorAll(selector).size());
+        assertEquals(1, page.querySelectorAll(selector).size());
+        assertNotNull(page.querySelector(selector));
+
+        assertTrue(cache.getHitCount() >= hits + 2);
+    }
+
+    /**
+     * Invalid selectors are still rejected.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void invalid() throws Exception {
+        final HtmlPage page = loadPage("<html><body></body></html>");
+        for (int i = 0; i < 2; i++) {
+            try {
+                page.querySelectorAll("div:foo()");
+                fail("CSSException expected");
+            }
+            catch (final CSSException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Setting the max size to 0 disables the cache.
+     */
+    @Test
+    public void maxSize() {
+        final SelectorListCache cache = SelectorListCache.getInstance();
+        final int maxSize = cache.getMaxSize();
+        try {
+            cache.setMaxSize(0);
+            assertEquals(0, cache.getSize());
+        }
+        finally {
+            cache.setMaxSize(maxSize);
+        }
+    }
+}
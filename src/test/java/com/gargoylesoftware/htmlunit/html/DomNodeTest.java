@@ -16,9 +16,11 @@ package com.gargoylesoftware.htmlunit.html;
 
 import static org.junit.Assert.fail;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.xml.sax.helpers.AttributesImpl;
@@ -764,6 +766,65 @@ public class DomNodeTest extends SimpleWebTestCase {
         page.removeDomChangeListener(listener);
     }
 
+    /**
+     * The streaming variants write the same content as the string variants,
+     * also if the text is larger than the internal buffers.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void writeToWriter() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><title>streaming</title></head><body>\n");
+        for (int i = 0; i < 2_000; i++) {
+            html.append("<div>line ").append(i).append(" <span>  with   blanks  </span></div>\n");
+            html.append("<p>paragraph<br>").append(i).append("</p><pre>  pre\n  ").append(i).append("</pre>\n");
+        }
+        html.append("</body></html>");
+
+        final HtmlPage page = loadPage(html.toString());
+
+        StringWriter writer = new StringWriter();
+        page.asXml(writer);
+        assertEquals(page.asXml(), writer.toString());
+
+        writer = new StringWriter();
+        page.getBody().asXml(writer);
+        assertEquals(page.getBody().asXml(), writer.toString());
+
+        writer = new StringWriter();
+        page.asText(writer);
+        assertEquals(page.asText(), writer.toString());
+
+        writer = new StringWriter();
+        page.getBody().getVisibleText(writer);
+        assertEquals(page.getBody().getVisibleText(), writer.toString());
+    }
+
+    /**
+     * The text is written while the new line at its end is still buffered; a block separator
+     * trims this new line right at the border of the part already written.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void writeToWriterFlushAtNewLine() throws Exception {
+        for (final int length : new int[] {8_190, 8_192, 8_200}) {
+            final String text = StringUtils.repeat('x', length);
+            final String html = "<html><head></head><body>"
+                + "<div>" + text + "<br> </div><div>y</div>"
+                + "<pre>" + text + "\n</pre> <pre>z</pre>"
+                + "</body></html>";
+
+            final HtmlPage page = loadPage(html);
+
+            StringWriter writer = new StringWriter();
+            page.asText(writer);
+            assertEquals(page.asText(), writer.toString());
+
+            writer = new StringWriter();
+            page.getBody().getVisibleText(writer);
+            assertEquals(page.getBody().getVisibleText(), writer.toString());
+        }
+    }
+
     /**
      * @throws Exception if the test fails
      */
@@ -884,4 +945,49 @@ public class DomNodeTest extends SimpleWebTestCase {
         assertTrue(elem1.isDisplayed());
         assertTrue(elem2.isDisplayed());
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void querySelectorById() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='outer'><span id='x' class='a'>1</span><p id='x'>2</p></div>\n"
+            + "<span id='x'>3</span>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final DomElement outer = page.getElementById("outer");
+
+        assertEquals(3, page.querySelectorAll("#x").size());
+        assertEquals(2, outer.querySelectorAll("#x").size());
+        assertEquals(1, outer.querySelectorAll("p#x").size());
+        assertEquals(1, outer.querySelectorAll("div > span#x.a").size());
+        assertEquals(0, outer.querySelectorAll("#outer").size());
+        assertEquals("1", outer.<DomElement>querySelector("#x").getTextContent());
+        assertEquals("2", page.<DomElement>querySelector("p#x").getTextContent());
+        assertNull(outer.querySelector("#unknown"));
+
+        // detached nodes are not part of the id map
+        final DomElement div = page.createElement("div");
+        final DomElement span = page.createElement("span");
+        span.setAttribute("id", "detached");
+        div.appendChild(span);
+        assertEquals(1, div.querySelectorAll("#detached").size());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void querySelectorFirstMatch() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div><p class='a'>1</p></div><p class='a'>2</p>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        assertEquals("1", page.<DomElement>querySelector("p.a, div").getTextContent().substring(0, 1));
+        assertEquals("1", page.<DomElement>querySelector("p.a").getTextContent());
+        assertNull(page.querySelector("p.b"));
+    }
 }
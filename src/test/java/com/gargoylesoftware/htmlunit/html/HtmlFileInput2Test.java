@@ -45,11 +45,13 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -264,16 +266,13 @@ public class HtmlFileInput2Test extends WebServerTestCase {
             throws NoSuchMethodException, IllegalAccessException,
             InvocationTargetException {
         final Method makeHttpMethod = HttpWebConnection.class.getDeclaredMethod("makeHttpMethod",
-                WebRequest.class, HttpClientBuilder.class);
+                WebRequest.class, HttpContext.class);
         makeHttpMethod.setAccessible(true);
 
         final HttpWebConnection con = new HttpWebConnection(client);
 
-        final Method getHttpClientBuilderMethod = HttpWebConnection.class.getDeclaredMethod("getHttpClientBuilder");
-        getHttpClientBuilderMethod.setAccessible(true);
-        final HttpClientBuilder builder = (HttpClientBuilder) getHttpClientBuilderMethod.invoke(con);
-
-        final HttpPost httpPost = (HttpPost) makeHttpMethod.invoke(con, webConnection.getLastWebRequest(), builder);
+        final HttpPost httpPost = (HttpPost) makeHttpMethod.invoke(con, webConnection.getLastWebRequest(),
+                new HttpClientContext());
         final HttpEntity httpEntity = httpPost.getEntity();
         return httpEntity;
     }
@@ -1944,4 +1944,124 @@ public class HtmlPageTest extends SimpleWebTestCase {
         page = loadPage(getBrowserVersion(), html, null, new URL(URL_FIRST.toString() + path));
         assertEquals(URL_FIRST.toExternalForm() + path, page.getBaseURL().toExternalForm());
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void indexedElements() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='d1' class='a b'><p class='b'>1</p><P>2</P></div>\n"
+            + "<div id='d2'><p class='a'>3</p></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final DomElement d1 = page.getElementById("d1");
+        final DomElement d2 = page.getElementById("d2");
+
+        assertEquals(3, page.getIndexedElementsByTagName(page, "p").size());
+        assertEquals(2, page.getIndexedElementsByTagName(d1, "P").size());
+        assertEquals(0, page.getIndexedElementsByTagName(d1, "div").size());
+        assertEquals(2, page.getIndexedElementsByClassName(page, "a").size());
+        assertEquals(1, page.getIndexedElementsByClassName(d1, "b").size());
+        assertNull(page.getIndexedElementsByClassName(page, "a b"));
+
+        // document order
+        final List<DomElement> paragraphs = page.getIndexedElementsByTagName(page, "p");
+        assertEquals("1", paragraphs.get(0).getTextContent());
+        assertEquals("2", paragraphs.get(1).getTextContent());
+        assertEquals("3", paragraphs.get(2).getTextContent());
+
+        // class changes
+        final DomElement p3 = d2.getFirstElementChild();
+        p3.setAttribute("class", "b");
+        assertEquals(1, page.getIndexedElementsByClassName(page, "a").size());
+        assertEquals(3, page.getIndexedElementsByClassName(page, "b").size());
+        p3.removeAttribute("class");
+        assertEquals(2, page.getIndexedElementsByClassName(page, "b").size());
+
+        // tree changes
+        d1.remove();
+        assertEquals(1, page.getIndexedElementsByTagName(page, "p").size());
+        assertEquals(0, page.getIndexedElementsByClassName(page, "b").size());
+        assertNull(page.getIndexedElementsByTagName(d1, "p"));
+
+        d2.appendChild(d1);
+        assertEquals(3, page.getIndexedElementsByTagName(page, "p").size());
+        assertEquals(3, page.getIndexedElementsByTagName(d2, "p").size());
+        assertEquals(2, page.getIndexedElementsByClassName(page, "b").size());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void duplicateIdsInDocumentOrder() throws Exception {
+        final String html = "<html><body><div id='x' name='n'>1</div></body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final DomElement first = page.getElementById("x");
+
+        // inserted later but before the existing one
+        final DomElement second = page.createElement("span");
+        second.setAttribute("id", "x");
+        page.getBody().insertBefore(second, first);
+        final DomElement third = page.createElement("span");
+        third.setAttribute("id", "x");
+        page.getBody().appendChild(third);
+
+        assertSame(second, page.getElementById("x"));
+        assertEquals(Arrays.asList(second, first, third), page.getElementsById("x"));
+        assertEquals(Arrays.asList(second, first, third), page.getElementsByIdAndOrName("x"));
+
+        second.remove();
+        assertSame(first, page.getElementById("x"));
+        third.remove();
+        assertEquals(Arrays.asList(first), page.getElementsById("x"));
+        assertSame(first, page.getElementByName("n"));
+
+        first.setAttribute("id", "y");
+        assertNull(page.getElementById("x"));
+        assertSame(first, page.getElementById("y"));
+        assertNull(page.getElementById(null));
+    }
+
+    /**
+     * The indexed elements are returned in document order, independent of the order they were added.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void indexedElementsDocumentOrder() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='d1'><div id='d2'><span>x</span><div id='d3'></div></div></div>\n"
+            + "<div id='d4'></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final DomElement d2 = page.getElementById("d2");
+        final DomElement d4 = page.getElementById("d4");
+
+        // added in reverse document order
+        final DomElement d6 = page.createElement("div");
+        d6.setId("d6");
+        d4.appendChild(d6);
+        final DomElement d5 = page.createElement("div");
+        d5.setId("d5");
+        d4.insertBefore(d5, d6);
+        final DomElement d0 = page.createElement("div");
+        d0.setId("d0");
+        d2.insertBefore(d0, d2.getFirstChild());
+
+        final List<String> ids = new ArrayList<>();
+        for (final DomElement div : page.getIndexedElementsByTagName(page, "div")) {
+            ids.add(div.getId());
+        }
+        assertEquals(Arrays.asList("d1", "d2", "d0", "d3", "d4", "d5", "d6"), ids);
+
+        ids.clear();
+        for (final DomElement div : page.getIndexedElementsByTagName(d2, "div")) {
+            ids.add(div.getId());
+        }
+        assertEquals(Arrays.asList("d0", "d3"), ids);
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.HttpHeader;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.MimeType;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Tests for {@link PreloadScanner}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class PreloadScannerTest extends SimpleWebTestCase {
+
+    /**
+     * The preloaded scripts are requested once and executed in document order.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void scripts() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "<!-- <script src='comment.js'></script> -->\n"
+            + "<script type='text/template'><script src='template.js'></script></script>\n"
+            + "<script>alert('inline');</script>\n"
+            + "<script src='b.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final WebClient client = getWebClientWithMockWebConnection();
+        client.getOptions().setPreloadEnabled(true);
+
+        final MockWebConnection conn = getMockWebConnection();
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(new URL(URL_FIRST, "a.js"), "alert('a');", "text/javascript");
+        conn.setResponse(new URL(URL_FIRST, "b.js"), "alert('b');", "text/javascript");
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        client.getPage(URL_FIRST);
+
+        assertEquals(Arrays.asList("a", "inline", "b"), collectedAlerts);
+
+        final List<String> requestedUrls = new ArrayList<>(conn.getRequestedUrls(URL_FIRST));
+        Collections.sort(requestedUrls);
+        assertEquals(Arrays.asList("", "a.js", "b.js"), requestedUrls);
+    }
+
+    /**
+     * Without the option, nothing is loaded ahead of the parser.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void disabledByDefault() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "<script src='b.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final WebClient client = getWebClientWithMockWebConnection();
+        assertFalse(client.getOptions().isPreloadEnabled());
+
+        final MockWebConnection conn = getMockWebConnection();
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(new URL(URL_FIRST, "a.js"), "alert('a');", "text/javascript");
+        conn.setResponse(new URL(URL_FIRST, "b.js"), "alert('b');", "text/javascript");
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        client.getPage(URL_FIRST);
+
+        assertEquals(Arrays.asList("a", "b"), collectedAlerts);
+        assertEquals(Arrays.asList("", "a.js", "b.js"), conn.getRequestedUrls(URL_FIRST));
+    }
+
+    /**
+     * A preloaded response used by the parser is stored in the cache by the parser, like any other response.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void usedPreloadCached() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final URL scriptUrl = new URL(URL_FIRST, "a.js");
+        final RecordingWebConnection conn = new RecordingWebConnection();
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(scriptUrl, "alert('a');", 200, "OK", MimeType.APPLICATION_JAVASCRIPT, cacheableHeaders());
+
+        final WebClient client = getWebClient();
+        client.setWebConnection(conn);
+        client.getOptions().setPreloadEnabled(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        client.getPage(URL_FIRST);
+
+        assertEquals(Arrays.asList("a"), collectedAlerts);
+        assertEquals(Arrays.asList(URL_FIRST.toExternalForm(), scriptUrl.toExternalForm()), conn.getUrls());
+        assertEquals(1, client.getCache().getSize());
+        assertNotNull(client.getCache().getCachedResponse(new WebRequest(scriptUrl)));
+
+        // the second time the script comes from the cache and is not preloaded
+        client.getPage(URL_FIRST);
+        assertEquals(Arrays.asList("a", "a"), collectedAlerts);
+        assertEquals(3, conn.getUrls().size());
+    }
+
+    /**
+     * A redirect received by a preload is followed when the parser uses the response.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void usedPreloadRedirected() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final URL scriptUrl = new URL(URL_FIRST, "a.js");
+        final URL redirectUrl = new URL(URL_FIRST, "b.js");
+        final List<NameValuePair> redirectHeaders = new ArrayList<>();
+        redirectHeaders.add(new NameValuePair("Location", redirectUrl.toExternalForm()));
+
+        final RecordingWebConnection conn = new RecordingWebConnection();
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(scriptUrl, "", 302, "Found", MimeType.APPLICATION_JAVASCRIPT, redirectHeaders);
+        conn.setResponse(redirectUrl, "alert('b');", 200, "OK", MimeType.APPLICATION_JAVASCRIPT,
+                cacheableHeaders());
+
+        final WebClient client = getWebClient();
+        client.setWebConnection(conn);
+        client.getOptions().setPreloadEnabled(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        client.getPage(URL_FIRST);
+
+        assertEquals(Arrays.asList("b"), collectedAlerts);
+        assertEquals(Arrays.asList(URL_FIRST.toExternalForm(), scriptUrl.toExternalForm(),
+                redirectUrl.toExternalForm()), conn.getUrls());
+        assertNotNull(client.getCache().getCachedResponse(new WebRequest(redirectUrl)));
+    }
+
+    /**
+     * A preloaded response never used by the parser doesn't end up in the cache.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void unusedPreloadNotCached() throws Exception {
+        // the base written by the script changes the url of the following script
+        final URL baseUrl = new URL(URL_FIRST, "sub/");
+        final String html = "<html><head>\n"
+            + "<script>document.write(\"<base href='" + baseUrl + "'>\");</script>\n"
+            + "<script src='a.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final URL preloadedUrl = new URL(URL_FIRST, "a.js");
+        final URL usedUrl = new URL(baseUrl, "a.js");
+        final RecordingWebConnection conn = new RecordingWebConnection();
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(preloadedUrl, "alert('preloaded');", 200, "OK", MimeType.APPLICATION_JAVASCRIPT,
+                cacheableHeaders());
+        conn.setResponse(usedUrl, "alert('used');", 200, "OK", MimeType.APPLICATION_JAVASCRIPT,
+                cacheableHeaders());
+
+        final WebClient client = getWebClient();
+        client.setWebConnection(conn);
+        client.getOptions().setPreloadEnabled(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        final HtmlPage page = client.getPage(URL_FIRST);
+        assertEquals(Arrays.asList("used"), collectedAlerts);
+
+        // wait for the preload to be done
+        assertTrue(conn.awaitResponses(3));
+        final List<String> urls = conn.getUrls();
+        assertTrue(urls.contains(preloadedUrl.toExternalForm()));
+        assertTrue(urls.contains(usedUrl.toExternalForm()));
+
+        page.cleanUp();
+        assertEquals(1, client.getCache().getSize());
+        assertNotNull(client.getCache().getCachedResponse(new WebRequest(usedUrl)));
+        assertNull(client.getCache().getCachedResponse(new WebRequest(preloadedUrl)));
+    }
+
+    private static List<NameValuePair> cacheableHeaders() {
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair(HttpHeader.LAST_MODIFIED, "Sun, 15 Jul 2007 20:46:27 GMT"));
+        return headers;
+    }
+
+    /**
+     * Records the urls of all requests, including the ones made by preloads.
+     */
+    private static final class RecordingWebConnection extends MockWebConnection {
+        private final List<String> urls_ = new ArrayList<>();
+        private int responses_;
+
+        @Override
+        public WebResponse getResponse(final WebRequest request) throws IOException {
+            synchronized (this) {
+                urls_.add(request.getUrl().toExternalForm());
+            }
+            final WebResponse response = super.getResponse(request);
+            synchronized (this) {
+                responses_++;
+                notifyAll();
+            }
+            return response;
+        }
+
+        synchronized List<String> getUrls() {
+            return new ArrayList<>(urls_);
+        }
+
+        synchronized boolean awaitResponses(final int count) throws InterruptedException {
+            final long end = System.currentTimeMillis() + 5000;
+            while (responses_ < count) {
+                final long wait = end - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                wait(wait);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+
+/**
+ * Tests for {@link VisibilityEvaluator}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class VisibilityEvaluatorTest extends SimpleWebTestCase {
+
+    /**
+     * During a pass, {@link DomNode#isDisplayed()} gives the same answers as outside, in any order.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sameAsIsDisplayed() throws Exception {
+        final String html = "<html><head>\n"
+            + "<style>\n"
+            + "#d2 { display: none; }\n"
+            + "#d3 { visibility: hidden; }\n"
+            + ".visible { visibility: visible; }\n"
+            + "</style>\n"
+            + "</head><body>\n"
+            + "<div id='d1'><span id='s1'>hello</span></div>\n"
+            + "<div id='d2'><span id='s2' class='visible'>world</span></div>\n"
+            + "<div id='d3'><span id='s3'>again</span><span id='s4' class='visible'>visible</span></div>\n"
+            + "<div id='d5' hidden><span id='s5'>hidden</span></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final String[] ids = {"s4", "s3", "d3", "s2", "d2", "s1", "d1", "s5", "d5"};
+        final boolean[] expected = {true, false, false, false, false, true, true, false, false};
+
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], expected[i], page.getElementById(ids[i]).isDisplayed());
+        }
+
+        final VisibilityEvaluator previous = VisibilityEvaluator.beginPass();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], expected[i], page.getElementById(ids[i]).isDisplayed());
+            }
+        }
+        finally {
+            VisibilityEvaluator.endPass(previous);
+        }
+    }
+
+    /**
+     * The text serialization still asks subclasses overriding {@link DomNode#isDisplayed()}.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void asTextOverriddenIsDisplayed() throws Exception {
+        final String html = "<html><head></head><body>\n"
+            + "<div id='d1'>hello</div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final HtmlDivision div = new HtmlDivision(HtmlDivision.TAG_NAME, page, null) {
+            @Override
+            public boolean isDisplayed() {
+                return false;
+            }
+        };
+        div.appendChild(new DomText(page, "world"));
+        page.getBody().appendChild(div);
+
+        assertEquals("hello", page.getBody().asText());
+        assertEquals("hello", page.getBody().getVisibleText());
+    }
+
+    /**
+     * The text serialization uses the evaluator.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void asText() throws Exception {
+        final String html = "<html><head>\n"
+            + "<style>\n"
+            + "#d2 { display: none; }\n"
+            + "#d3 { visibility: hidden; }\n"
+            + ".visible { visibility: visible; }\n"
+            + "</style>\n"
+            + "</head><body>\n"
+            + "<div id='d1'><span>hello</span></div>\n"
+            + "<div id='d2'><span class='visible'>world</span></div>\n"
+            + "<div id='d3'><span>again</span><span class='visible'>visible</span></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        assertEquals("hello\nvisible", page.getBody().asText());
+        assertEquals("hello\nvisible", page.getBody().getVisibleText());
+    }
+}
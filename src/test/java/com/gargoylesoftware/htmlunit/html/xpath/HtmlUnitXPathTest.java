@@ -14,6 +14,7 @@
  */
 package com.gargoylesoftware.htmlunit.html.xpath;
 
+import static com.gargoylesoftware.htmlunit.BrowserVersionFeatures.XPATH_ATTRIBUTE_CASE_SENSITIVE;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -60,6 +61,117 @@ public class HtmlUnitXPathTest extends SimpleWebTestCase {
         assertEquals("Test page", ((DomText) page.getFirstByXPath("/html/head/title/text()")).getNodeValue());
     }
 
+    /**
+     * The same expression evaluated again sees the changes of the DOM
+     * (the compiled expression and the DTM are reused).
+     * @throws Exception if test fails
+     */
+    @Test
+    public void reevaluateAfterDomChanges() throws Exception {
+        final String content = "<html><head><title>Test page</title></head>\n"
+            + "<body><div id='d1' class='foo'>first</div></body>\n"
+            + "</html>";
+
+        final HtmlPage page = loadPage(content);
+        assertEquals(1, page.getByXPath("//div[@class='foo']").size());
+        assertEquals(1, page.getByXPath("//div[@class='foo']").size());
+
+        final HtmlDivision div = (HtmlDivision) page.createElement("div");
+        div.setAttribute("class", "foo");
+        page.getBody().appendChild(div);
+        assertEquals(2, page.getByXPath("//div[@class='foo']").size());
+
+        div.removeAttribute("class");
+        assertEquals(1, page.getByXPath("//div[@class='foo']").size());
+
+        div.appendChild(new DomText(page, "second"));
+        assertEquals("second", page.<String>getFirstByXPath("string(//div[2])"));
+
+        ((DomText) div.getFirstChild()).setData("changed");
+        assertEquals("changed", page.<String>getFirstByXPath("string(//div[2])"));
+
+        page.getBody().removeChild(div);
+        assertEquals(1, page.getByXPath("//div").size());
+
+        // detached nodes get their own DTM
+        assertEquals(0, div.getByXPath("./span").size());
+        assertEquals("changed", div.<String>getFirstByXPath("string(.)"));
+    }
+
+    /**
+     * Simple location paths are evaluated on the DOM, with the same results as Xalan.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void simpleLocationPaths() throws Exception {
+        final String content = "<html><head><title>Test page</title></head>\n"
+            + "<body>\n"
+            + "<div id='d1' class='foo bar'><span id='s1'>one</span><span id='s2' title='x'>two</span></div>\n"
+            + "<DIV id='d2'><p id='p1'>hello <b id='b1'>world</b></p><span id='s3'>three</span></DIV>\n"
+            + "<div id='d3'><div id='d4'><span id='s4'>four</span></div></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(content);
+        assertIds(page, "//span", "s1", "s2", "s3", "s4");
+        assertIds(page, "/html/body/div", "d1", "d2", "d3");
+        assertIds(page, "//div/span[2]", "s2");
+        assertIds(page, "//div[2]", "d2");
+        assertIds(page, "//div[@id='d3']//span", "s4");
+        assertIds(page, "//DIV/*[1]", "s1", "p1", "d4", "s4");
+        assertIds(page, "//span[@title]", "s2");
+        assertIds(page, "//span[text()='three']", "s3");
+        assertIds(page, "//p[.='hello world']", "p1");
+        assertIds(page, "//p[text()='hello world']");
+        assertIds(page, "//div[contains(@class, 'bar')]", "d1");
+        assertIds(page, "//*[starts-with(text(), 'hel')]", "p1");
+        assertIds(page, "//span[@id='s1'][1]", "s1");
+        assertIds(page, "//span[1][@id='s2']");
+
+        // relative paths start at the document node, like in Xalan
+        assertIds(page, "html/body/div[3]/div", "d4");
+        assertIds(page, "html/body/div[2]/p/b", "b1");
+        assertIds(page, "*/body/div[1]/span", "s1", "s2");
+        assertIds(page, "./html/body/div[@id='d1']", "d1");
+        assertIds(page, ".//div[@id='d4']", "d4");
+        assertIds(page, "body");
+        assertIds(page, "div");
+        assertIds(page, "body/div[3]/div");
+
+        final HtmlElement d1 = page.getHtmlElementById("d1");
+        assertIds(d1, "span", "s1", "s2");
+        assertIds(d1, "./span[2]", "s2");
+        assertIds(d1, ".//span", "s1", "s2");
+        assertIds(d1, "//b", "b1");
+
+        assertEquals("s3", page.<HtmlElement>getFirstByXPath("//div[2]/span").getId());
+        assertNull(page.getFirstByXPath("//span[@id='unknown']"));
+
+        assertNotNull(SimpleXPathEvaluator.parse("//div[@id='d1']/span[2]", false));
+        assertNull(SimpleXPathEvaluator.parse("//div | //span", false));
+        assertNull(SimpleXPathEvaluator.parse("//div/@id", false));
+        assertNull(SimpleXPathEvaluator.parse("count(//div)", false));
+        assertNull(SimpleXPathEvaluator.parse("//div[last()]", false));
+        assertNull(SimpleXPathEvaluator.parse("//div[@title='a@b']", false));
+        assertNull(SimpleXPathEvaluator.parse("//svg:svg", false));
+    }
+
+    /**
+     * Asserts the result of the simple evaluation and that Xalan finds the same elements.
+     */
+    private static void assertIds(final DomNode node, final String xpath, final String... expectedIds) {
+        final List<?> elements = node.getByXPath(xpath);
+        final List<String> ids = new ArrayList<>();
+        for (final Object element : elements) {
+            ids.add(((HtmlElement) element).getId());
+        }
+        assertEquals(xpath, Arrays.asList(expectedIds), ids);
+
+        final boolean caseSensitiveXpathAttributes = node.getPage().getWebClient().getBrowserVersion()
+                .hasFeature(XPATH_ATTRIBUTE_CASE_SENSITIVE);
+        assertEquals(xpath, XPathHelper.getByXPathUsingXalan(node, xpath, null, caseSensitiveXpathAttributes),
+                elements);
+    }
+
     /**
      * Test evaluation relative from elements other than the whole page.
      * @throws Exception if test fails
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * Tests for {@link CompiledScriptCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CompiledScriptCacheTest extends SimpleWebTestCase {
+
+    /**
+     * The compiled inline script has to be shared between different clients.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sharedBetweenClients() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  alert('shared ' + " + System.nanoTime() + ");\n"
+            + "</script></head><body></body></html>";
+
+        final CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        final List<String> collectedAlerts = new ArrayList<>();
+
+        final long hits = cache.getHitCount();
+        final long misses = cache.getMissCount();
+        for (int i = 0; i < 2; i++) {
+            try (WebClient client = new WebClient(getBrowserVersion())) {
+                client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+                final MockWebConnection connection = new MockWebConnection();
+                connection.setResponse(URL_FIRST, html);
+                client.setWebConnection(connection);
+
+                client.getPage(URL_FIRST);
+            }
+        }
+
+        assertEquals(2, collectedAlerts.size());
+        assertEquals(collectedAlerts.get(0), collectedAlerts.get(1));
+        assertTrue(cache.getMissCount() > misses);
+        assertTrue(cache.getHitCount() > hits);
+    }
+
+    /**
+     * Setting the max size to 0 disables the cache.
+     */
+    @Test
+    public void maxSize() {
+        final CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        final int maxSize = cache.getMaxSize();
+        try {
+            cache.setMaxSize(0);
+            assertEquals(0, cache.getSize());
+        }
+        finally {
+            cache.setMaxSize(maxSize);
+        }
+    }
+}
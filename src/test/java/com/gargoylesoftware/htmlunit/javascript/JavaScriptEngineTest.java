@@ -910,6 +910,113 @@ public class JavaScriptEngineTest extends SimpleWebTestCase {
         }
     }
 
+    /**
+     * The timeout has to be enforced also if the scripts are compiled to byte code.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void timeoutOptimized() throws Exception {
+        final WebClient client = getWebClient();
+        final long timeout = 2000;
+        final long oldTimeout = client.getJavaScriptTimeout();
+        client.setJavaScriptTimeout(timeout);
+        client.getOptions().setJavaScriptOptimized(true);
+
+        try {
+            client.getOptions().setThrowExceptionOnScriptError(false);
+
+            final String content = "<html><body><script>\n"
+                    + "function f(i) { return i + 1; }\n"
+                    + "var i = 0; while(1) { i = f(i); }\n"
+                    + "</script></body></html>";
+            final MockWebConnection webConnection = new MockWebConnection();
+            webConnection.setDefaultResponse(content);
+            client.setWebConnection(webConnection);
+
+            final Exception[] exceptions = {null};
+            final Thread runner = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        client.getPage(URL_FIRST);
+                    }
+                    catch (final Exception e) {
+                        exceptions[0] = e;
+                    }
+                }
+            };
+
+            runner.start();
+
+            runner.join(timeout * 2);
+            if (runner.isAlive()) {
+                runner.interrupt();
+                fail("Script was still running after timeout");
+            }
+            assertNull(exceptions[0]);
+        }
+        finally {
+            client.setJavaScriptTimeout(oldTimeout);
+            client.getOptions().setJavaScriptOptimized(false);
+        }
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"55", "function"})
+    public void optimized() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var sum = 0;\n"
+            + "  for (var i = 1; i <= 10; i++) { sum += i; }\n"
+            + "  alert(sum);\n"
+            + "  alert(typeof document.getElementById);\n"
+            + "</script></head><body></body></html>";
+
+        getWebClientWithMockWebConnection().getOptions().setJavaScriptOptimized(true);
+        loadPageWithAlerts(html);
+    }
+
+    /**
+     * Host classes set up on first access have to behave like all the others.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"true", "true", "true", "true"})
+    public void lazyPrototypes() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var rect = document.createElementNS('http://www.w3.org/2000/svg', 'rect');\n"
+            + "  alert('SVGElement' in window);\n"
+            + "  alert(Object.getPrototypeOf(rect) === SVGRectElement.prototype);\n"
+            + "  alert(SVGElement.prototype.isPrototypeOf(rect));\n"
+            + "  alert(Element.prototype.isPrototypeOf(rect));\n"
+            + "</script></head><body></body></html>";
+
+        loadPageWithAlerts(html);
+    }
+
+    /**
+     * The property descriptor of a host class set up on first access has to be available
+     * without any other lookup before.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts(DEFAULT = {"object", "function", "false", "true", "true"},
+            IE = {"object", "object", "false", "true", "true"})
+    public void lazyPrototypesOwnPropertyDescriptor() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var desc = Object.getOwnPropertyDescriptor(window, 'SVGElement');\n"
+            + "  alert(typeof desc);\n"
+            + "  alert(typeof desc.value);\n"
+            + "  alert(desc.enumerable);\n"
+            + "  alert(desc.writable);\n"
+            + "  alert(desc.value === SVGElement);\n"
+            + "</script></head><body></body></html>";
+
+        loadPageWithAlerts(html);
+    }
+
     private static final class CountingJavaScriptEngine extends JavaScriptEngine {
         private int scriptExecutionCount_ = 0;
         private int scriptCallCount_ = 0;
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Tests for {@link JavaScriptClock}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class JavaScriptClockTest extends SimpleWebTestCase {
+
+    /**
+     * In virtual time mode, long timers run without waiting.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTime() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var count = 0;\n"
+            + "  var id = setInterval(function() {\n"
+            + "    if (++count == 3) { clearInterval(id); alert('interval'); }\n"
+            + "  }, 10000);\n"
+            + "  setTimeout(function() { alert('timeout'); }, 60000);\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        client.getJavaScriptClock().setVirtual(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(URL_FIRST, html);
+        client.setWebConnection(connection);
+
+        final long start = System.currentTimeMillis();
+        client.getPage(URL_FIRST);
+        assertEquals(0, client.waitForBackgroundJavaScriptStartingBefore(120_000));
+
+        assertEquals(new String[] {"interval", "timeout"}, collectedAlerts);
+        assertTrue(System.currentTimeMillis() - start < 10_000);
+        assertTrue(client.getJavaScriptClock().getOffset() >= 59_000);
+    }
+
+    /**
+     * In virtual time mode, the clock doesn't move while the page is parsed.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTimeNotDuringParsing() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>setTimeout(function() { alert('timeout'); }, 60000);</script>\n"
+            + "<script src='slow.js'></script>\n"
+            + "<script>alert('parsed');</script>\n"
+            + "</head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        final JavaScriptClock clock = client.getJavaScriptClock();
+        clock.setVirtual(true);
+
+        final List<String> collectedAlerts = new ArrayList<>();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(URL_FIRST, html);
+        connection.setResponse(URL_SECOND, "<html><body></body></html>");
+        connection.setResponse(new URL(URL_FIRST, "slow.js"), "", "text/javascript");
+        final List<Long> offsets = new ArrayList<>();
+        client.setWebConnection(new WebConnectionWrapper(connection) {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                if (request.getUrl().getPath().endsWith("slow.js")) {
+                    try {
+                        Thread.sleep(500);
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    offsets.add(clock.getOffset());
+                }
+                return super.getResponse(request);
+            }
+        });
+
+        // the event loop is already running for the window
+        client.getPage(URL_SECOND);
+        client.getPage(URL_FIRST);
+        assertEquals(1, offsets.size());
+        assertEquals(0L, offsets.get(0).longValue());
+        assertEquals(0, client.waitForBackgroundJavaScriptStartingBefore(120_000));
+        assertEquals(new String[] {"parsed", "timeout"}, collectedAlerts);
+    }
+
+    /**
+     * In virtual time mode, the timeout of waitForJobs() is measured with the clock.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTimeWaitForJobs() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  setInterval(function() {}, 1000);\n"
+            + "</script></head><body></body></html>";
+
+        final WebClient client = getWebClient();
+        client.getJavaScriptClock().setVirtual(true);
+
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(URL_FIRST, html);
+        client.setWebConnection(connection);
+
+        final long start = System.currentTimeMillis();
+        client.getPage(URL_FIRST);
+        assertTrue(client.waitForBackgroundJavaScript(60_000) > 0);
+        assertTrue(System.currentTimeMillis() - start < 30_000);
+        assertTrue(client.getJavaScriptClock().getOffset() >= 59_000);
+    }
+
+    /**
+     * Without virtual time mode the clock follows the system time.
+     */
+    @Test
+    public void advanceToIgnoredIfNotVirtual() {
+        final JavaScriptClock clock = new JavaScriptClock();
+        clock.advanceTo(System.currentTimeMillis() + 10_000);
+        assertEquals(0L, clock.getOffset());
+    }
+}
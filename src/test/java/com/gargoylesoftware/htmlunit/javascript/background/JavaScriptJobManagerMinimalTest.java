@@ -144,6 +144,54 @@ public class JavaScriptJobManagerMinimalTest {
         assertEquals(1, count.intValue());
     }
 
+    /**
+     * The idle event loop has to be woken up by a new job, without waiting for the next poll.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void addJob_wakesUpEventLoop() throws Exception {
+        // give the event loop the chance to fall asleep
+        Thread.sleep(100);
+
+        final MutableInt delay = new MutableInt(-1);
+        final long start = System.currentTimeMillis();
+        final JavaScriptJob job = new BasicJavaScriptJob(0, null) {
+            @Override
+            public void run() {
+                delay.setValue(System.currentTimeMillis() - start);
+            }
+        };
+        manager_.addJob(job, page_);
+        manager_.waitForJobs(2000);
+        assertTrue("Job not executed", delay.intValue() >= 0);
+        assertTrue("Job executed after " + delay.intValue() + "ms", delay.intValue() < 500);
+    }
+
+    /**
+     * A job must not start while a script holds the page; it runs as soon as the page is idle again.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void addJob_pageBusy() throws Exception {
+        final MutableInt count = new MutableInt(0);
+        final JavaScriptJob job = new BasicJavaScriptJob(0, null) {
+            @Override
+            public void run() {
+                count.increment();
+            }
+        };
+        manager_.pageBusy();
+        manager_.addJob(job, page_);
+        Thread.sleep(300);
+        assertEquals(0, count.intValue());
+        assertEquals(1, manager_.getJobCount());
+
+        manager_.pageIdle();
+        manager_.waitForJobs(1000);
+        assertEquals(1, count.intValue());
+        assertEquals(0, manager_.getJobCount());
+    }
+
     /**
      * @throws Exception if an error occurs
      */
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * Tests for {@link SharedJavaScriptExecutor}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class SharedJavaScriptExecutorTest extends SimpleWebTestCase {
+
+    /**
+     * The jobs of many clients are processed in order by the shared scheduler.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void manyClients() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  setTimeout(function() { alert('second'); }, 20);\n"
+            + "  setTimeout(function() { alert('first'); }, 5);\n"
+            + "  var count = 0;\n"
+            + "  var id = setInterval(function() {\n"
+            + "    if (++count == 3) { clearInterval(id); alert('interval'); }\n"
+            + "  }, 10);\n"
+            + "</script></head><body></body></html>";
+
+        final BackgroundJavaScriptFactory oldFactory = BackgroundJavaScriptFactory.theFactory();
+        BackgroundJavaScriptFactory.setFactory(new BackgroundJavaScriptFactory() {
+            @Override
+            public JavaScriptExecutor createJavaScriptExecutor(final WebClient webClient) {
+                return new SharedJavaScriptExecutor(webClient);
+            }
+        });
+
+        final List<WebClient> clients = new ArrayList<>();
+        final List<List<String>> alerts = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                final WebClient client = new WebClient(getBrowserVersion());
+                clients.add(client);
+
+                final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+                alerts.add(collectedAlerts);
+                client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+                final MockWebConnection connection = new MockWebConnection();
+                connection.setResponse(URL_FIRST, html);
+                client.setWebConnection(connection);
+
+                client.getPage(URL_FIRST);
+            }
+
+            for (final WebClient client : clients) {
+                assertEquals(0, client.waitForBackgroundJavaScript(2_000));
+            }
+            for (final List<String> collectedAlerts : alerts) {
+                assertEquals(new String[] {"first", "second", "interval"}, collectedAlerts);
+            }
+        }
+        finally {
+            for (final WebClient client : clients) {
+                client.close();
+            }
+            BackgroundJavaScriptFactory.setFactory(oldFactory);
+        }
+    }
+}
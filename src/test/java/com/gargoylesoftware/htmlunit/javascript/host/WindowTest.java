@@ -1578,4 +1578,76 @@ public class WindowTest extends SimpleWebTestCase {
         final HtmlPage page = loadPageWithAlerts(html);
         assertEquals("hello", page.getTitleText());
     }
+
+    /**
+     * Changes of the class and id attributes only evict the computed styles if a selector is affected.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"block", "block", "none", "none", "block", "inline", "none", "inline", "none"})
+    public void getComputedStyle_classAndIdChanges() throws Exception {
+        final String html
+            = "<html><head><style>\n"
+            + "  .hidden { display: none; }\n"
+            + "  #special span { display: none; }\n"
+            + "  [class~=gone] { display: none; }\n"
+            + "</style><script>\n"
+            + "function test() {\n"
+            + "  var d = document.getElementById('d');\n"
+            + "  var s = document.getElementById('s');\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "  d.className = 'unused';\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "  d.className = 'hidden';\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "  d.className = 'unused hidden';\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "  d.className = '';\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  d.id = 'special';\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  d.id = 'other';\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  d.className = 'gone';\n"
+            + "  alert(getComputedStyle(d, null).display);\n"
+            + "}\n"
+            + "</script></head><body onload='test()'>\n"
+            + "<div id='d'><span id='s'>x</span></div>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts(html);
+    }
+
+    /**
+     * Changes of the class attribute used on the left side of a sibling combinator evict the siblings.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({"inline", "none", "none", "inline", "inline"})
+    public void getComputedStyle_classChangeSiblings() throws Exception {
+        final String html
+            = "<html><head><style>\n"
+            + "  .a + span { display: none; }\n"
+            + "  .b ~ p span { display: none; }\n"
+            + "</style><script>\n"
+            + "function test() {\n"
+            + "  var d = document.getElementById('d');\n"
+            + "  var s = document.getElementById('s');\n"
+            + "  var t = document.getElementById('t');\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  d.className = 'a';\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  d.className = 'b';\n"
+            + "  alert(getComputedStyle(t, null).display);\n"
+            + "  d.className = '';\n"
+            + "  alert(getComputedStyle(s, null).display);\n"
+            + "  alert(getComputedStyle(t, null).display);\n"
+            + "}\n"
+            + "</script></head><body onload='test()'>\n"
+            + "<div id='d'></div><span id='s'>x</span><p><span id='t'>y</span></p>\n"
+            + "</body></html>";
+
+        loadPageWithAlerts(html);
+    }
 }
@@ -239,4 +239,32 @@ public class CSSStyleSheet2Test extends SimpleWebTestCase {
         assertEquals("CSSStyleDeclaration for ''", style.toString());
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void getAffectedElements() throws Exception {
+        final String html = "<html><head><style>\n"
+            + ".x { color: red; }\n"
+            + "#i span { color: red; }\n"
+            + ".a + b { color: red; }\n"
+            + "</style></head><body></body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final HtmlStyle node = (HtmlStyle) page.getElementsByTagName("style").item(0);
+        final CSSStyleSheet sheet = ((HTMLStyleElement) node.getScriptableObject()).getSheet();
+
+        assertEquals(CSSStyleSheet.AFFECTS_SUBTREE, sheet.getAffectedElements("class", "", "y x"));
+        assertEquals(CSSStyleSheet.AFFECTS_SUBTREE, sheet.getAffectedElements("id", "i", "j"));
+        assertEquals(CSSStyleSheet.AFFECTS_SIBLINGS, sheet.getAffectedElements("class", "a", ""));
+        assertEquals(CSSStyleSheet.AFFECTS_SUBTREE | CSSStyleSheet.AFFECTS_SIBLINGS,
+                sheet.getAffectedElements("class", "a", "x"));
+        assertEquals(0, sheet.getAffectedElements("class", "y", "z b"));
+        assertEquals(0, sheet.getAffectedElements("id", "j", "k"));
+
+        // the cached dependencies are discarded when the rules change
+        sheet.insertRule(".y ~ p { color: red; }", 0);
+        assertEquals(CSSStyleSheet.AFFECTS_SIBLINGS, sheet.getAffectedElements("class", "y", "z"));
+    }
+
 }
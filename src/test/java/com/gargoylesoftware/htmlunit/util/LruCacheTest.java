@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2002-2019 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.util;
+
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+
+/**
+ * Tests for {@link LruCache}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LruCacheTest extends SimpleWebTestCase {
+
+    /**
+     * The least recently used entry is removed first.
+     */
+    @Test
+    public void leastRecentlyUsedRemoved() {
+        final LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+
+        cache.put("c", "C");
+        assertEquals(2, cache.getSize());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+
+        assertEquals(3L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+    }
+
+    /**
+     * The supplier is only called for missing entries; {@code null} values are not cached.
+     */
+    @Test
+    public void supplier() {
+        final LruCache<String, String> cache = new LruCache<>(10);
+        assertEquals("A", cache.get("a", () -> "A"));
+        assertEquals("A", cache.get("a", () -> "other"));
+        assertNull(cache.get("b", () -> null));
+        assertEquals(1, cache.getSize());
+    }
+
+    /**
+     * Setting the max size to 0 disables the cache.
+     */
+    @Test
+    public void maxSize() {
+        final LruCache<String, String> cache = new LruCache<>(10);
+        cache.put("a", "A");
+        cache.setMaxSize(0);
+        assertEquals(0, cache.getSize());
+
+        cache.put("b", "B");
+        assertNull(cache.get("b"));
+    }
+}